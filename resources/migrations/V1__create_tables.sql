@@ -1,9 +1,12 @@
 /*
 *	Vergeet niet de constants in de DbManager class aan te passen.
 *	Sla daar je MySQL username en password op, net als je database naam (default: LMS_DB)
+*
+*	Dit script wordt bij het opstarten automatisch uitgevoerd door de
+*	SchemaMigrator; pas het niet meer aan, maar voeg een nieuwe versie toe.
 */
 
-CREATE TABLE customers(
+CREATE TABLE IF NOT EXISTS customers(
 	customer_id INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
 	name VARCHAR(50) NOT NULL,
 	address VARCHAR(75) NOT NULL,
@@ -12,7 +15,7 @@ CREATE TABLE customers(
 	phone_number VARCHAR(25) NOT NULL UNIQUE
 );
 
-CREATE TABLE logs(
+CREATE TABLE IF NOT EXISTS logs(
 	log_id INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
 	username VARCHAR(15) NOT NULL,
 	user_role VARCHAR(20) NOT NULL,
@@ -20,7 +23,7 @@ CREATE TABLE logs(
 	log_message VARCHAR(100) NOT NULL
 );
 
-CREATE TABLE luggage(
+CREATE TABLE IF NOT EXISTS luggage(
 	luggage_id INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
     brand_name VARCHAR(20),
 	color VARCHAR(25),
@@ -31,9 +34,9 @@ CREATE TABLE luggage(
     date_entered DATE
 );
 
-CREATE TABLE users(
+CREATE TABLE IF NOT EXISTS users(
 	user_id INT NOT NULL AUTO_INCREMENT PRIMARY KEY, 
 	username VARCHAR(15) NOT NULL UNIQUE,
 	password VARCHAR(25) NOT NULL,
 	user_role VARCHAR(20) NOT NULL
-) ENGINE=InnoDB DEFAULT CHARSET=utf8
\ No newline at end of file
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
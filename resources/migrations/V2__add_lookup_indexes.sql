@@ -0,0 +1,18 @@
+/*
+*	Indexes for the columns the application filters and orders on
+*/
+
+-- Luggage per status and month (GraphUtil), and per status alone
+CREATE INDEX idx_luggage_status_date ON luggage (status, date_entered);
+
+-- Luggage registered in a date range
+CREATE INDEX idx_luggage_date_entered ON luggage (date_entered);
+
+-- Luggage belonging to a customer
+CREATE INDEX idx_luggage_customer_id ON luggage (customer_id);
+
+-- Logs per user (LogViewer filter)
+CREATE INDEX idx_logs_username ON logs (username);
+
+-- Logs ordered or filtered by moment
+CREATE INDEX idx_logs_date_time ON logs (date_time);
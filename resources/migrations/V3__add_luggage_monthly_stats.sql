@@ -0,0 +1,20 @@
+/*
+*	Rollup of the amount of luggage per month and status, so charts read one
+*	row per month and status instead of scanning luggage. Kept up to date by
+*	every luggage write made through the Luggage model (LuggageStatistics)
+*/
+
+CREATE TABLE IF NOT EXISTS luggage_monthly_stats(
+	stat_year INT NOT NULL,
+	stat_month INT NOT NULL,
+	status VARCHAR(25) NOT NULL,
+	luggage_count INT NOT NULL DEFAULT 0,
+	PRIMARY KEY (stat_year, stat_month, status)
+);
+
+-- Count the luggage registered before the rollup existed
+INSERT INTO luggage_monthly_stats (stat_year, stat_month, status, luggage_count)
+	SELECT YEAR(date_entered), MONTH(date_entered), LOWER(status), COUNT(*)
+	FROM luggage
+	WHERE date_entered IS NOT NULL AND status IS NOT NULL
+	GROUP BY YEAR(date_entered), MONTH(date_entered), LOWER(status);
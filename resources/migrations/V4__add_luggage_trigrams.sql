@@ -0,0 +1,17 @@
+/*
+*	Trigram index over the luggage's free text columns, so searching luggage
+*	for a text reads the luggage sharing its trigrams instead of scanning
+*	luggage with LIKE '%text%'. Every trigram is packed into a number, so the
+*	index does not depend on the collation. Kept up to date by every luggage
+*	write made through the Luggage model, and filled on the first start by
+*	LuggageSearchIndex
+*/
+
+CREATE TABLE IF NOT EXISTS luggage_trigrams(
+	trigram BIGINT NOT NULL,
+	luggage_id INT NOT NULL,
+	PRIMARY KEY (trigram, luggage_id)
+);
+
+-- Removing a piece of luggage's entries when it is changed or deleted
+CREATE INDEX idx_luggage_trigrams_luggage_id ON luggage_trigrams (luggage_id);
@@ -0,0 +1,252 @@
+package corendonlmsv2.connectivity;
+
+import corendonlmsv2.main.util.MiscUtil;
+import corendonlmsv2.model.ActionLog;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes action logs to the database in the background, so screens don't wait
+ * on the database just to audit what the user did. Logs are queued in memory
+ * and a writer thread inserts them in batches. When the queue is full, callers
+ * wait briefly for room and eventually write their log themselves, which slows
+ * them down rather than losing the log
+ *
+ * @author Emile Pels
+ */
+public final class ActionLogWriter
+{
+
+    /**
+     * Logs waiting to be written
+     */
+    private static final BlockingQueue<ActionLog> QUEUE
+            = new ArrayBlockingQueue<>(DbConfig.AUDIT_QUEUE_CAPACITY);
+
+    /**
+     * Thread writing the queued logs
+     */
+    private static Thread _writer;
+
+    /**
+     * Indicates whether the writer thread should keep running
+     */
+    private static volatile boolean _running;
+
+    /**
+     * Indicates whether the writer has been shut down for good
+     */
+    private static boolean _shutDown;
+
+    private ActionLogWriter()
+    {
+    }
+
+    /**
+     * Queues a log to be written to the database, starting the writer thread
+     * if needed. If the writer has been shut down, or the queue stays full for
+     * longer than DbConfig.AUDIT_OFFER_TIMEOUT_MILLIS, the log is written on
+     * the calling thread instead
+     *
+     * @param log Log to write
+     */
+    public static void append(ActionLog log)
+    {
+        if (start())
+        {
+            try
+            {
+                if (QUEUE.offer(log, DbConfig.AUDIT_OFFER_TIMEOUT_MILLIS,
+                        TimeUnit.MILLISECONDS))
+                {
+                    return;
+                }
+            } catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        log.insert();
+    }
+
+    /**
+     * Stops the writer thread, letting it finish the batch it is writing, and
+     * writes every log still in the queue. Should be called before the
+     * application exits
+     */
+    public static void shutdown()
+    {
+        Thread writer;
+
+        synchronized (ActionLogWriter.class)
+        {
+            _shutDown = true;
+            _running = false;
+            writer = _writer;
+            _writer = null;
+        }
+
+        if (writer != null)
+        {
+            //The writer is not interrupted, as that would abort a batch it
+            //is writing; it notices the flag within a flush interval
+            try
+            {
+                writer.join(DbConfig.AUDIT_FLUSH_INTERVAL_MILLIS * 2
+                        + DbConfig.QUERY_TIMEOUT_SECONDS * 1000L);
+            } catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        //Write whatever the writer did not get to
+        List<ActionLog> remaining = new ArrayList<>();
+        while (QUEUE.drainTo(remaining, DbConfig.AUDIT_BATCH_SIZE) > 0)
+        {
+            write(remaining);
+            remaining.clear();
+        }
+    }
+
+    /**
+     * Gets the amount of logs waiting to be written
+     *
+     * @return Amount of logs waiting to be written
+     */
+    public static int getQueueSize()
+    {
+        return QUEUE.size();
+    }
+
+    /**
+     * Starts the writer thread if it is not running yet
+     *
+     * @return Boolean indicating whether the writer thread is running. False
+     * once it has been shut down
+     */
+    private static synchronized boolean start()
+    {
+        if (_shutDown)
+        {
+            return false;
+        }
+
+        if (_writer == null)
+        {
+            _running = true;
+            _writer = MiscUtil.createDaemonThreadFactory("action-log-writer")
+                    .newThread(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            writeLoop();
+                        }
+                    });
+            _writer.start();
+        }
+
+        return true;
+    }
+
+    /**
+     * Waits for logs to arrive and writes them in batches. A batch is written
+     * once it holds DbConfig.AUDIT_BATCH_SIZE logs, or once its first log has
+     * waited for DbConfig.AUDIT_FLUSH_INTERVAL_MILLIS
+     */
+    private static void writeLoop()
+    {
+        List<ActionLog> batch = new ArrayList<>();
+
+        while (_running)
+        {
+            try
+            {
+                //Wait a limited time, so a shutdown is noticed without an
+                //interrupt
+                ActionLog first = QUEUE.poll(
+                        DbConfig.AUDIT_FLUSH_INTERVAL_MILLIS,
+                        TimeUnit.MILLISECONDS);
+
+                if (first == null)
+                {
+                    continue;
+                }
+
+                batch.add(first);
+
+                long deadline = System.currentTimeMillis()
+                        + DbConfig.AUDIT_FLUSH_INTERVAL_MILLIS;
+                long remaining;
+
+                while (batch.size() < DbConfig.AUDIT_BATCH_SIZE
+                        && (remaining = deadline
+                        - System.currentTimeMillis()) > 0)
+                {
+                    ActionLog next = QUEUE.poll(remaining,
+                            TimeUnit.MILLISECONDS);
+
+                    if (next == null)
+                    {
+                        break;
+                    }
+
+                    batch.add(next);
+                    QUEUE.drainTo(batch,
+                            DbConfig.AUDIT_BATCH_SIZE - batch.size());
+                }
+            } catch (InterruptedException ex)
+            {
+                //Not used to stop the writer; write what we have and go on
+            }
+
+            if (!batch.isEmpty())
+            {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Inserts a batch of logs, reporting any log which could not be written
+     *
+     * @param batch Logs to insert
+     */
+    private static void write(List<ActionLog> batch)
+    {
+        BatchResult result;
+
+        try
+        {
+            result = DbManager.insertAll(batch);
+        } catch (DatabaseUnavailableException ex)
+        {
+            System.err.printf("%d action logs could not be written: %s\n",
+                    batch.size(), ex.getMessage());
+
+            return;
+        }
+
+        for (int i = 0; i < result.size(); i++)
+        {
+            if (!result.isInserted(i))
+            {
+                ActionLog log = batch.get(i);
+
+                System.err.printf("Action log could not be written (%s, %s:"
+                        + " %s): %s\n", log.getDateTime(),
+                        log.getUserAccount().getUsername(), log.getMessage(),
+                        result.getFailure(i));
+            } else
+            {
+                batch.get(i).setLogId(result.getId(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package corendonlmsv2.connectivity;
+
+/**
+ * Holds the outcome of a batch insert: for every row, in the order in which
+ * the rows were passed, either the ID the database generated for it or the
+ * reason it was not inserted
+ *
+ * @author Emile Pels
+ */
+public class BatchResult
+{
+
+    private final String[] ids, failures;
+
+    /**
+     * Initializes a new BatchResult in which no row has an outcome yet
+     *
+     * @param size Amount of rows in the batch
+     */
+    BatchResult(int size)
+    {
+        ids = new String[size];
+        failures = new String[size];
+    }
+
+    /**
+     * Records the ID the database generated for a row
+     *
+     * @param index Index of the row in the batch
+     * @param id ID the database generated for the row
+     */
+    void setId(int index, String id)
+    {
+        ids[index] = id;
+        failures[index] = null;
+    }
+
+    /**
+     * Records why a row was not inserted
+     *
+     * @param index Index of the row in the batch
+     * @param reason Reason the row was not inserted
+     */
+    void setFailure(int index, String reason)
+    {
+        ids[index] = null;
+        failures[index] = reason == null ? "Unknown error" : reason;
+    }
+
+    /**
+     * Gets the amount of rows in the batch
+     *
+     * @return Amount of rows in the batch
+     */
+    public int size()
+    {
+        return ids.length;
+    }
+
+    /**
+     * Gets the ID the database generated for a row
+     *
+     * @param index Index of the row in the batch
+     * @return ID the database generated for the row. Null if the row was not
+     * inserted
+     */
+    public String getId(int index)
+    {
+        return ids[index];
+    }
+
+    /**
+     * Gets the reason a row was not inserted
+     *
+     * @param index Index of the row in the batch
+     * @return Reason the row was not inserted. Null if it was inserted
+     */
+    public String getFailure(int index)
+    {
+        return failures[index];
+    }
+
+    /**
+     * Checks whether a row was inserted
+     *
+     * @param index Index of the row in the batch
+     * @return Boolean indicating whether the row was inserted
+     */
+    public boolean isInserted(int index)
+    {
+        return ids[index] != null;
+    }
+
+    /**
+     * Gets the amount of rows which were inserted
+     *
+     * @return Amount of rows which were inserted
+     */
+    public int getInsertedCount()
+    {
+        int count = 0;
+
+        for (String id : ids)
+        {
+            if (id != null)
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets the amount of rows which were not inserted
+     *
+     * @return Amount of rows which were not inserted
+     */
+    public int getFailureCount()
+    {
+        return size() - getInsertedCount();
+    }
+}
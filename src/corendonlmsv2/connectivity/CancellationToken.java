@@ -0,0 +1,152 @@
+package corendonlmsv2.connectivity;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Lets another thread cancel the query a thread is running, such as a read
+ * for a search which was replaced before its results arrived. A thread enters
+ * a token before doing its work; every query it then runs through DbManager
+ * is attached to the token while it executes, and cancel asks the database to
+ * stop it through Statement.cancel. Queries the thread starts after the token
+ * was cancelled fail straight away.
+ *
+ * Only queries are attached: an update which was sent is left to finish, as
+ * the caller can not tell whether it was applied
+ *
+ * @author Emile Pels
+ */
+public final class CancellationToken
+{
+
+    /**
+     * SQL state reported for a query which was cancelled before it ran
+     */
+    private static final String CANCELLED_SQL_STATE = "HY008";
+
+    /**
+     * Token the current thread entered. Null if it entered none
+     */
+    private static final ThreadLocal<CancellationToken> CURRENT
+            = new ThreadLocal<>();
+
+    /**
+     * Statement executing for the thread which entered this token. Null while
+     * none is
+     */
+    private Statement statement;
+
+    private boolean cancelled;
+
+    /**
+     * Makes this token the current thread's, so the queries it runs can be
+     * cancelled through it. Must be followed by exit, on the same thread
+     */
+    public void enter()
+    {
+        CURRENT.set(this);
+    }
+
+    /**
+     * Stops the current thread's queries from being attached to this token
+     */
+    public void exit()
+    {
+        CURRENT.remove();
+    }
+
+    /**
+     * Cancels the statement executing for the thread which entered this
+     * token, and every query the thread runs after it. Asking the database to
+     * stop a statement may take a round trip (MySQL opens a connection for
+     * it), so this should not be called on the event dispatch thread
+     */
+    public synchronized void cancel()
+    {
+        cancelled = true;
+
+        if (statement == null)
+        {
+            return;
+        }
+
+        try
+        {
+            statement.cancel();
+        } catch (SQLException ex)
+        {
+            System.err.println("SQL exception: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Gets whether this token was cancelled
+     *
+     * @return Boolean indicating whether this token was cancelled
+     */
+    public synchronized boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Attaches a statement which is about to execute to the current thread's
+     * token, if it entered one
+     *
+     * @param statement Statement about to execute
+     * @throws SQLException Exception thrown if the token was cancelled
+     * already, so the statement must not execute
+     */
+    static void attach(Statement statement) throws SQLException
+    {
+        CancellationToken token = CURRENT.get();
+
+        if (token == null)
+        {
+            return;
+        }
+
+        synchronized (token)
+        {
+            if (token.cancelled)
+            {
+                throw new SQLException("The query was cancelled.",
+                        CANCELLED_SQL_STATE);
+            }
+
+            token.statement = statement;
+        }
+    }
+
+    /**
+     * Detaches the statement which finished executing from the current
+     * thread's token, so cancelling the token can no longer reach the
+     * connection once it runs something else
+     */
+    static void detach()
+    {
+        CancellationToken token = CURRENT.get();
+
+        if (token != null)
+        {
+            synchronized (token)
+            {
+                token.statement = null;
+            }
+        }
+    }
+
+    /**
+     * Gets whether the current thread's token was cancelled, so the failure
+     * of its query is expected rather than an error
+     *
+     * @return Boolean indicating whether the current thread entered a token
+     * which was cancelled
+     */
+    static boolean isCurrentCancelled()
+    {
+        CancellationToken token = CURRENT.get();
+
+        return token != null && token.isCancelled();
+    }
+}
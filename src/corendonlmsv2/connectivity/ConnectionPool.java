@@ -0,0 +1,702 @@
+package corendonlmsv2.connectivity;
+
+import corendonlmsv2.main.util.MiscUtil;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a bounded set of database connections which callers borrow for the
+ * duration of a single query or update, so concurrent callers no longer share
+ * (and wait on) one connection. Connections are validated when borrowed, and
+ * connections which sit idle for too long are closed in the background.
+ * A background heartbeat checks whether the database is still reachable. When
+ * it is not, borrowing fails immediately with a DatabaseUnavailableException
+ * while the pool reconnects in the background, backing off exponentially
+ *
+ * @author Emile Pels
+ */
+public class ConnectionPool implements ConnectionPoolMXBean
+{
+
+    private final String url, username, password;
+    private final int minSize, maxSize, validationTimeout, statementCacheSize;
+    private final long borrowTimeout, idleTimeout, reconnectMinDelay,
+            reconnectMaxDelay;
+
+    /**
+     * Connections which are open but not borrowed. The most recently returned
+     * connection is at the head, so the tail holds the longest idle ones
+     */
+    private final BlockingDeque<ManagedConnection> idle
+            = new LinkedBlockingDeque<>();
+
+    /**
+     * Limits the amount of connections which can be borrowed at once
+     */
+    private final Semaphore permits;
+
+    /**
+     * Closes connections which have been idle for too long
+     */
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * Runs the heartbeat and the attempts to reconnect, off the callers'
+     * threads
+     */
+    private final ScheduledExecutorService monitor;
+
+    /**
+     * Indicates whether the database is believed to be reachable
+     */
+    private final AtomicBoolean available = new AtomicBoolean(true);
+
+    /**
+     * Delay before the next attempt to reconnect. Reset when the database
+     * becomes unreachable, then only used on the monitor thread
+     */
+    private long reconnectDelay;
+
+    private final AtomicInteger openCount = new AtomicInteger();
+
+    /**
+     * Time borrowers waited for a connection
+     */
+    private final LatencyHistogram waits = new LatencyHistogram();
+
+    private final AtomicLong timeoutCount = new AtomicLong(),
+            createdCount = new AtomicLong(),
+            destroyedCount = new AtomicLong(),
+            outageCount = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * Initializes a new ConnectionPool and opens its minimum amount of
+     * connections
+     *
+     * @param url URL for the database connections
+     * @param username Username for the database connections
+     * @param password Password for the database connections
+     * @param minSize Minimum amount of connections to keep open
+     * @param maxSize Maximum amount of connections to open at once
+     * @param borrowTimeout Maximum amount of milliseconds to wait for a free
+     * connection
+     * @param idleTimeout Amount of milliseconds after which an idle connection
+     * is closed
+     * @param evictionInterval Interval in milliseconds at which idle
+     * connections are evicted
+     * @param validationTimeout Amount of seconds a connection gets to validate
+     * when it is borrowed
+     * @param statementCacheSize Maximum amount of prepared statements to keep
+     * open per connection
+     * @param heartbeatInterval Interval in milliseconds at which the database
+     * is checked to still be reachable
+     * @param reconnectMinDelay Amount of milliseconds before the first attempt
+     * to reconnect to an unreachable database
+     * @param reconnectMaxDelay Maximum amount of milliseconds between two
+     * attempts to reconnect
+     */
+    public ConnectionPool(String url, String username, String password,
+            int minSize, int maxSize, long borrowTimeout, long idleTimeout,
+            long evictionInterval, int validationTimeout,
+            int statementCacheSize, long heartbeatInterval,
+            long reconnectMinDelay, long reconnectMaxDelay)
+    {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+        {
+            throw new IllegalArgumentException("The pool's minimum size must"
+                    + " be between 0 and its maximum size.");
+        }
+
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeout = borrowTimeout;
+        this.idleTimeout = idleTimeout;
+        this.validationTimeout = validationTimeout;
+        this.statementCacheSize = statementCacheSize;
+        this.reconnectMinDelay = reconnectMinDelay;
+        this.reconnectMaxDelay = reconnectMaxDelay;
+
+        permits = new Semaphore(maxSize, true);
+
+        evictor = Executors.newSingleThreadScheduledExecutor(
+                MiscUtil.createDaemonThreadFactory("db-pool-evictor"));
+        evictor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                evictIdleConnections();
+            }
+        }, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+
+        monitor = Executors.newSingleThreadScheduledExecutor(
+                MiscUtil.createDaemonThreadFactory("db-pool-monitor"));
+        monitor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                heartbeat();
+            }
+        }, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+
+        fillToMinimum();
+    }
+
+    /**
+     * Borrows a connection from the pool. Every borrowed connection must be
+     * handed back through release, preferably in a finally block
+     *
+     * @return A validated connection
+     * @throws DatabaseUnavailableException Exception thrown if the database is
+     * unreachable
+     * @throws SQLException Exception thrown if no connection became available
+     * in time
+     */
+    ManagedConnection borrow() throws SQLException
+    {
+        if (closed)
+        {
+            throw new SQLException("The connection pool has been closed.");
+        }
+
+        if (!available.get())
+        {
+            throw new DatabaseUnavailableException("The database is "
+                    + "unreachable; reconnecting in the background.");
+        }
+
+        long start = System.nanoTime();
+
+        try
+        {
+            if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS))
+            {
+                timeoutCount.incrementAndGet();
+
+                throw new SQLException(String.format("Timed out after %d ms"
+                        + " waiting for a database connection.",
+                        borrowTimeout));
+            }
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new SQLException("Interrupted while waiting for a database"
+                    + " connection.");
+        }
+
+        try
+        {
+            ManagedConnection connection;
+
+            while ((connection = idle.pollFirst()) != null)
+            {
+                if (connection.isValid(validationTimeout))
+                {
+                    break;
+                }
+
+                destroy(connection);
+            }
+
+            if (connection == null)
+            {
+                try
+                {
+                    connection = create();
+                } catch (SQLException ex)
+                {
+                    markUnavailable(ex);
+
+                    throw new DatabaseUnavailableException("The database is "
+                            + "unreachable: " + ex.getMessage(), ex);
+                }
+            }
+
+            connection.touch();
+            recordWait(System.nanoTime() - start);
+
+            return connection;
+        } catch (RuntimeException ex)
+        {
+            permits.release();
+
+            throw ex;
+        }
+    }
+
+    /**
+     * Hands a borrowed connection back to the pool. Passing null is allowed
+     * and does nothing, so this can be called from finally blocks
+     * unconditionally
+     *
+     * @param connection Connection to hand back
+     */
+    void release(ManagedConnection connection)
+    {
+        if (connection == null)
+        {
+            return;
+        }
+
+        try
+        {
+            connection.reset();
+            connection.touch();
+
+            if (closed || connection.getConnection().isClosed())
+            {
+                destroy(connection);
+            } else
+            {
+                idle.offerFirst(connection);
+            }
+        } catch (SQLException ex)
+        {
+            //Connection is broken; don't hand it out again
+            destroy(connection);
+        } finally
+        {
+            permits.release();
+        }
+    }
+
+    /**
+     * Reports a failed query or update. If the failure indicates the
+     * connection to the database was lost, the database is marked as
+     * unreachable until the pool manages to reconnect
+     *
+     * @param ex Exception the query or update failed with
+     * @return Boolean indicating whether the connection to the database was
+     * lost
+     */
+    boolean reportFailure(SQLException ex)
+    {
+        if (!isConnectionFailure(ex))
+        {
+            return false;
+        }
+
+        markUnavailable(ex);
+
+        return true;
+    }
+
+    /**
+     * Closes every idle connection and stops the background eviction.
+     * Connections which are still borrowed are closed when they are returned
+     */
+    public void close()
+    {
+        closed = true;
+        evictor.shutdownNow();
+        monitor.shutdownNow();
+
+        ManagedConnection connection;
+        while ((connection = idle.pollFirst()) != null)
+        {
+            destroy(connection);
+        }
+    }
+
+    /**
+     * Opens a new connection
+     *
+     * @return Newly opened connection
+     * @throws SQLException Exception thrown if the connection can not be
+     * opened
+     */
+    private ManagedConnection create() throws SQLException
+    {
+        ManagedConnection connection = new ManagedConnection(
+                DriverManager.getConnection(url, username, password),
+                statementCacheSize);
+
+        openCount.incrementAndGet();
+        createdCount.incrementAndGet();
+
+        return connection;
+    }
+
+    /**
+     * Closes a connection and forgets about it
+     *
+     * @param connection Connection to close
+     */
+    private void destroy(ManagedConnection connection)
+    {
+        connection.close();
+
+        openCount.decrementAndGet();
+        destroyedCount.incrementAndGet();
+    }
+
+    /**
+     * Closes connections which have been idle for longer than the idle timeout
+     * while the pool is above its minimum size, and tops the pool back up to
+     * its minimum size
+     */
+    private void evictIdleConnections()
+    {
+        if (!available.get())
+        {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Iterator<ManagedConnection> iterator = idle.descendingIterator();
+
+        while (iterator.hasNext() && openCount.get() > minSize)
+        {
+            ManagedConnection connection = iterator.next();
+
+            if (now - connection.getLastUsed() >= idleTimeout
+                    && idle.remove(connection))
+            {
+                destroy(connection);
+            }
+        }
+
+        fillToMinimum();
+    }
+
+    /**
+     * Opens idle connections until the pool holds its minimum size
+     */
+    private void fillToMinimum()
+    {
+        try
+        {
+            while (!closed && openCount.get() < minSize)
+            {
+                idle.offerLast(create());
+            }
+        } catch (SQLException ex)
+        {
+            markUnavailable(ex);
+        }
+    }
+
+    /**
+     * Validates the least recently used idle connection, so a lost database is
+     * noticed by the pool rather than by a user. If no connection is idle,
+     * borrowers are using them and will notice any failure themselves
+     */
+    private void heartbeat()
+    {
+        if (closed || !available.get())
+        {
+            return;
+        }
+
+        ManagedConnection connection = idle.pollLast();
+
+        if (connection == null)
+        {
+            return;
+        }
+
+        if (connection.isValid(validationTimeout))
+        {
+            idle.offerLast(connection);
+
+            return;
+        }
+
+        destroy(connection);
+
+        //One broken connection may just have timed out; only a failure to
+        //open a new one means the database itself is gone
+        try
+        {
+            idle.offerLast(create());
+        } catch (SQLException ex)
+        {
+            markUnavailable(ex);
+        }
+    }
+
+    /**
+     * Marks the database as unreachable, closes the idle connections (which
+     * are likely broken) and starts reconnecting in the background. Does
+     * nothing if the database was already marked as unreachable
+     *
+     * @param cause Failure which showed the database is unreachable
+     */
+    private void markUnavailable(SQLException cause)
+    {
+        if (closed || !available.compareAndSet(true, false))
+        {
+            return;
+        }
+
+        outageCount.incrementAndGet();
+        System.err.println("Database unreachable, reconnecting in the "
+                + "background: " + cause.getMessage());
+
+        ManagedConnection connection;
+        while ((connection = idle.pollFirst()) != null)
+        {
+            destroy(connection);
+        }
+
+        reconnectDelay = reconnectMinDelay;
+        scheduleReconnect();
+    }
+
+    /**
+     * Schedules the next attempt to reconnect after the current delay
+     */
+    private void scheduleReconnect()
+    {
+        try
+        {
+            monitor.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    reconnect();
+                }
+            }, reconnectDelay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex)
+        {
+            //The pool was closed in the meantime
+        }
+    }
+
+    /**
+     * Attempts to open a connection to an unreachable database. On success the
+     * database is marked as reachable again, otherwise the next attempt is
+     * scheduled after twice the delay
+     */
+    private void reconnect()
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        try
+        {
+            idle.offerFirst(create());
+        } catch (SQLException ex)
+        {
+            reconnectDelay = Math.min(reconnectDelay * 2, reconnectMaxDelay);
+            scheduleReconnect();
+
+            return;
+        }
+
+        available.set(true);
+        System.out.println("Database reachable again");
+
+        fillToMinimum();
+    }
+
+    /**
+     * Checks whether a failure means the connection to the database was lost
+     *
+     * @param ex Failure to check
+     * @return Boolean indicating whether the connection was lost
+     */
+    private static boolean isConnectionFailure(SQLException ex)
+    {
+        //SQL state class 08 is "connection exception"
+        return ex instanceof SQLRecoverableException
+                || ex instanceof SQLNonTransientConnectionException
+                || ex instanceof SQLTransientConnectionException
+                || (ex.getSQLState() != null
+                && ex.getSQLState().startsWith("08"));
+    }
+
+    /**
+     * Adds a borrower's waiting time to the metrics
+     *
+     * @param waitNanos Amount of nanoseconds the borrower waited
+     */
+    private void recordWait(long waitNanos)
+    {
+        waits.record(waitNanos);
+    }
+
+    /**
+     * Gets whether the database is believed to be reachable
+     *
+     * @return Boolean indicating whether the database is believed to be
+     * reachable
+     */
+    @Override
+    public boolean isAvailable()
+    {
+        return available.get();
+    }
+
+    /**
+     * Gets the amount of times the database became unreachable since the pool
+     * was created
+     *
+     * @return Amount of times the database became unreachable
+     */
+    @Override
+    public long getOutageCount()
+    {
+        return outageCount.get();
+    }
+
+    /**
+     * Gets the amount of connections currently borrowed
+     *
+     * @return Amount of connections currently borrowed
+     */
+    @Override
+    public int getActiveCount()
+    {
+        return maxSize - permits.availablePermits();
+    }
+
+    /**
+     * Gets the amount of connections currently open but not borrowed
+     *
+     * @return Amount of connections currently open but not borrowed
+     */
+    @Override
+    public int getIdleCount()
+    {
+        return idle.size();
+    }
+
+    /**
+     * Gets the amount of connections currently open
+     *
+     * @return Amount of connections currently open
+     */
+    @Override
+    public int getOpenCount()
+    {
+        return openCount.get();
+    }
+
+    /**
+     * Gets the amount of callers currently waiting for a connection
+     *
+     * @return Amount of callers currently waiting for a connection
+     */
+    @Override
+    public int getWaitingCount()
+    {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Gets the amount of connections handed out since the pool was created
+     *
+     * @return Amount of connections handed out since the pool was created
+     */
+    @Override
+    public long getBorrowCount()
+    {
+        return waits.getCount();
+    }
+
+    /**
+     * Gets the average amount of milliseconds callers waited for a connection
+     *
+     * @return Average amount of milliseconds callers waited for a connection
+     */
+    @Override
+    public double getAverageWaitMillis()
+    {
+        return waits.getAverageMillis();
+    }
+
+    @Override
+    public double getWaitP95Millis()
+    {
+        return waits.getPercentileMillis(0.95);
+    }
+
+    @Override
+    public double getWaitP99Millis()
+    {
+        return waits.getPercentileMillis(0.99);
+    }
+
+    /**
+     * Gets the longest amount of milliseconds a caller waited for a connection
+     *
+     * @return Longest amount of milliseconds a caller waited for a connection
+     */
+    @Override
+    public double getMaxWaitMillis()
+    {
+        return waits.getMaxMillis();
+    }
+
+    /**
+     * Gets the amount of callers which gave up waiting for a connection
+     *
+     * @return Amount of callers which gave up waiting for a connection
+     */
+    @Override
+    public long getTimeoutCount()
+    {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Gets the amount of connections opened since the pool was created
+     *
+     * @return Amount of connections opened since the pool was created
+     */
+    @Override
+    public long getCreatedCount()
+    {
+        return createdCount.get();
+    }
+
+    /**
+     * Gets the amount of connections closed since the pool was created
+     *
+     * @return Amount of connections closed since the pool was created
+     */
+    @Override
+    public long getDestroyedCount()
+    {
+        return destroyedCount.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("ConnectionPool [available=%b, open=%d, "
+                + "active=%d, idle=%d, waiting=%d, borrows=%d, "
+                + "avgWait=%.2fms, p95Wait=%.2fms, maxWait=%.2fms, "
+                + "timeouts=%d, created=%d, destroyed=%d, outages=%d]",
+                isAvailable(), getOpenCount(), getActiveCount(),
+                getIdleCount(), getWaitingCount(), getBorrowCount(),
+                getAverageWaitMillis(), getWaitP95Millis(), getMaxWaitMillis(),
+                getTimeoutCount(), getCreatedCount(), getDestroyedCount(),
+                getOutageCount());
+    }
+}
@@ -0,0 +1,112 @@
+package corendonlmsv2.connectivity;
+
+/**
+ * Management interface publishing a connection pool's state, waiting times and
+ * connection churn over JMX
+ *
+ * @author Emile Pels
+ */
+public interface ConnectionPoolMXBean
+{
+
+    /**
+     * Gets whether the database is believed to be reachable
+     *
+     * @return Boolean indicating whether the database is believed to be
+     * reachable
+     */
+    boolean isAvailable();
+
+    /**
+     * Gets the amount of times the database became unreachable
+     *
+     * @return Amount of times the database became unreachable
+     */
+    long getOutageCount();
+
+    /**
+     * Gets the amount of connections currently borrowed
+     *
+     * @return Amount of connections currently borrowed
+     */
+    int getActiveCount();
+
+    /**
+     * Gets the amount of connections currently open but not borrowed
+     *
+     * @return Amount of connections currently open but not borrowed
+     */
+    int getIdleCount();
+
+    /**
+     * Gets the amount of connections currently open
+     *
+     * @return Amount of connections currently open
+     */
+    int getOpenCount();
+
+    /**
+     * Gets the amount of callers currently waiting for a connection
+     *
+     * @return Amount of callers currently waiting for a connection
+     */
+    int getWaitingCount();
+
+    /**
+     * Gets the amount of connections handed out
+     *
+     * @return Amount of connections handed out
+     */
+    long getBorrowCount();
+
+    /**
+     * Gets the average amount of milliseconds callers waited for a connection
+     *
+     * @return Average amount of milliseconds callers waited for a connection
+     */
+    double getAverageWaitMillis();
+
+    /**
+     * Gets the 95th percentile of the milliseconds callers waited for a
+     * connection
+     *
+     * @return 95th percentile of the milliseconds callers waited
+     */
+    double getWaitP95Millis();
+
+    /**
+     * Gets the 99th percentile of the milliseconds callers waited for a
+     * connection
+     *
+     * @return 99th percentile of the milliseconds callers waited
+     */
+    double getWaitP99Millis();
+
+    /**
+     * Gets the longest amount of milliseconds a caller waited for a connection
+     *
+     * @return Longest amount of milliseconds a caller waited for a connection
+     */
+    double getMaxWaitMillis();
+
+    /**
+     * Gets the amount of callers which gave up waiting for a connection
+     *
+     * @return Amount of callers which gave up waiting for a connection
+     */
+    long getTimeoutCount();
+
+    /**
+     * Gets the amount of connections opened
+     *
+     * @return Amount of connections opened
+     */
+    long getCreatedCount();
+
+    /**
+     * Gets the amount of connections closed
+     *
+     * @return Amount of connections closed
+     */
+    long getDestroyedCount();
+}
@@ -0,0 +1,145 @@
+package corendonlmsv2.connectivity;
+
+import corendonlmsv2.model.IStorable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Persistence contract of the application's database. DbManager forwards every
+ * query and update to an implementation of this interface, so the engine
+ * behind it can be swapped (e.g. a MySQL server or an embedded database)
+ * without changing any of its callers. The contract only consists of
+ * operations; how an implementation pools its connections or caches its
+ * results stays internal to it
+ *
+ * @author Emile Pels
+ */
+public interface Database
+{
+
+    /**
+     * Opens the database's connections. Calling this on a connected database
+     * does nothing
+     */
+    void connect();
+
+    /**
+     * Closes the database's connections
+     */
+    void close();
+
+    /**
+     * Gets the name of the database's engine, for logging and benchmarks
+     *
+     * @return Name of the database's engine
+     */
+    String getName();
+
+    /**
+     * Gets whether the database is believed to be reachable, connecting first
+     * if this has not happened yet
+     *
+     * @return Boolean indicating whether the database is believed to be
+     * reachable
+     */
+    boolean isAvailable();
+
+    /**
+     * Executes a query and copies its results into a disconnected result set
+     *
+     * @param options Settings for this call, such as its timeout
+     * @param query SQL query to execute, with a ? placeholder for each
+     * parameter
+     * @param parameters Values to bind to the query's placeholders, in order
+     * @return ResultSet object containing the query's results. Empty if the
+     * query failed
+     * @throws DatabaseUnavailableException Exception thrown if the database
+     * is unreachable
+     */
+    ResultSet executeQuery(QueryOptions options, String query,
+            Object... parameters);
+
+    /**
+     * Executes a query and converts every row of its results through a row
+     * mapper
+     *
+     * @param <T> Type of the objects the rows are converted into
+     * @param options Settings for this call, such as its timeout
+     * @param query SQL query to execute, with a ? placeholder for each
+     * parameter
+     * @param mapper Converts each row into an object
+     * @param parameters Values to bind to the query's placeholders, in order
+     * @return Objects for every row, in the order of the results. Empty if the
+     * query failed
+     * @throws DatabaseUnavailableException Exception thrown if the database
+     * is unreachable
+     */
+    <T> List<T> query(QueryOptions options, String query, RowMapper<T> mapper,
+            Object... parameters);
+
+    /**
+     * Executes a query and streams its results through a row handler, one row
+     * at a time
+     *
+     * @param options Settings for this call, such as its timeout
+     * @param query SQL query to execute, with a ? placeholder for each
+     * parameter
+     * @param handler Handles each row
+     * @param parameters Values to bind to the query's placeholders, in order
+     * @return Amount of rows handled. -1 if the query failed
+     * @throws DatabaseUnavailableException Exception thrown if the database
+     * is unreachable
+     */
+    int forEachRow(QueryOptions options, String query, RowHandler handler,
+            Object... parameters);
+
+    /**
+     * Executes an update
+     *
+     * @param options Settings for this call, such as its timeout
+     * @param update SQL update to execute, with a ? placeholder for each
+     * parameter
+     * @param parameters Values to bind to the update's placeholders, in order
+     * @return Amount of rows affected by the update. -1 if the update failed
+     * @throws DatabaseUnavailableException Exception thrown if the database
+     * is unreachable
+     */
+    int executeUpdate(QueryOptions options, String update,
+            Object... parameters);
+
+    /**
+     * Adds an instance of IStorable to the database
+     *
+     * @param value Instance of IStorable to add to the database
+     * @return Primary key the database generated for the new row. Null if the
+     * row could not be inserted
+     * @throws DatabaseUnavailableException Exception thrown if the database
+     * is unreachable
+     */
+    String insert(IStorable value);
+
+    /**
+     * Adds a collection of IStorable instances to the database in a single
+     * transaction
+     *
+     * @param values Instances of IStorable to add to the database
+     * @return Outcome for every row, in the order of the collection
+     * @throws DatabaseUnavailableException Exception thrown if the database
+     * is unreachable
+     */
+    BatchResult insertAll(Collection<? extends IStorable> values);
+
+    /**
+     * Starts a unit of work, grouping several writes into one transaction
+     *
+     * @return Unit of work holding a connection until it is committed or
+     * closed
+     * @throws DatabaseUnavailableException Exception thrown if the database
+     * is unreachable
+     * @throws SQLException Exception thrown if no connection is available or
+     * the transaction can not be started
+     */
+    UnitOfWork beginUnitOfWork() throws SQLException;
+}
@@ -0,0 +1,38 @@
+package corendonlmsv2.connectivity;
+
+/**
+ * Thrown when the database is unreachable, either because a connection is
+ * requested while it is known to be or because the connection was lost while
+ * a statement ran. The connection pool keeps trying to reconnect in the
+ * background, so callers fail immediately instead of each waiting for the
+ * database to time out. It is unchecked so it passes through the model to the
+ * user interface, which tells the user rather than showing an empty result
+ *
+ * @author Emile Pels
+ */
+public class DatabaseUnavailableException extends RuntimeException
+{
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Initializes a new DatabaseUnavailableException
+     *
+     * @param message Message describing the failure
+     */
+    public DatabaseUnavailableException(String message)
+    {
+        super(message);
+    }
+
+    /**
+     * Initializes a new DatabaseUnavailableException
+     *
+     * @param message Message describing the failure
+     * @param cause Failure which made the database unreachable
+     */
+    public DatabaseUnavailableException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,290 @@
+package corendonlmsv2.connectivity;
+
+/**
+ * Holds the tunable settings for the database layer. Every setting has a
+ * sensible default and can be overridden at startup through a system property,
+ * e.g. -Dlms.pool.maxSize=20
+ *
+ * @author Emile Pels
+ */
+public final class DbConfig
+{
+
+    /**
+     * Minimum amount of connections the pool keeps open, even when idle
+     */
+    public static final int POOL_MIN_SIZE
+            = Integer.getInteger("lms.pool.minSize", 2);
+
+    /**
+     * Maximum amount of connections the pool opens at once
+     */
+    public static final int POOL_MAX_SIZE
+            = Integer.getInteger("lms.pool.maxSize", 10);
+
+    /**
+     * Maximum amount of milliseconds a caller waits for a free connection
+     * before the request fails
+     */
+    public static final long POOL_BORROW_TIMEOUT_MILLIS
+            = Long.getLong("lms.pool.borrowTimeoutMillis", 5000);
+
+    /**
+     * Amount of milliseconds a connection may sit idle before it is closed,
+     * as long as the pool stays at or above its minimum size
+     */
+    public static final long POOL_IDLE_TIMEOUT_MILLIS
+            = Long.getLong("lms.pool.idleTimeoutMillis", 300000);
+
+    /**
+     * Interval in milliseconds at which idle connections are evicted
+     */
+    public static final long POOL_EVICTION_INTERVAL_MILLIS
+            = Long.getLong("lms.pool.evictionIntervalMillis", 60000);
+
+    /**
+     * Amount of seconds a connection gets to prove it is still alive when it
+     * is borrowed from the pool
+     */
+    public static final int POOL_VALIDATION_TIMEOUT_SECONDS
+            = Integer.getInteger("lms.pool.validationTimeoutSeconds", 2);
+
+    /**
+     * Interval in milliseconds at which an idle connection is checked to
+     * detect an unreachable database before a user runs into it
+     */
+    public static final long POOL_HEARTBEAT_INTERVAL_MILLIS
+            = Long.getLong("lms.pool.heartbeatIntervalMillis", 5000);
+
+    /**
+     * Amount of milliseconds before the first attempt to reconnect to an
+     * unreachable database. The delay doubles after every failed attempt
+     */
+    public static final long POOL_RECONNECT_MIN_DELAY_MILLIS
+            = Long.getLong("lms.pool.reconnectMinDelayMillis", 500);
+
+    /**
+     * Maximum amount of milliseconds between two attempts to reconnect to an
+     * unreachable database
+     */
+    public static final long POOL_RECONNECT_MAX_DELAY_MILLIS
+            = Long.getLong("lms.pool.reconnectMaxDelayMillis", 30000);
+
+    /**
+     * Maximum amount of milliseconds opening a connection may take before the
+     * database is considered unreachable
+     */
+    public static final int CONNECT_TIMEOUT_MILLIS
+            = Integer.getInteger("lms.connectTimeoutMillis", 3000);
+
+    /**
+     * Maximum amount of prepared statements each pooled connection keeps
+     * open for reuse
+     */
+    public static final int STATEMENT_CACHE_SIZE
+            = Integer.getInteger("lms.statementCacheSize", 50);
+
+    /**
+     * Amount of rows fetched from the database per round trip while a query's
+     * results are streamed, so large tables are not materialised at once
+     */
+    public static final int FETCH_SIZE
+            = Integer.getInteger("lms.fetchSize", 500);
+
+    /**
+     * Maximum amount of seconds a query or update may run before the driver
+     * cancels it, unless the call sets its own timeout. 0 for no limit
+     */
+    public static final int QUERY_TIMEOUT_SECONDS
+            = Integer.getInteger("lms.queryTimeoutSeconds", 30);
+
+    /**
+     * Maximum amount of seconds a substring search through
+     * DbManager.getResultSet may run
+     */
+    public static final int SEARCH_TIMEOUT_SECONDS
+            = Integer.getInteger("lms.searchTimeoutSeconds", 10);
+
+    /**
+     * Amount of milliseconds a search field waits for the user to stop typing
+     * before it searches
+     */
+    public static final int SEARCH_DEBOUNCE_MILLIS
+            = Integer.getInteger("lms.searchDebounceMillis", 250);
+
+    /**
+     * Maximum amount of customers a type-ahead lookup in the customer index
+     * returns
+     */
+    public static final int TYPE_AHEAD_LIMIT
+            = Integer.getInteger("lms.typeAheadLimit", 20);
+
+    /**
+     * Maximum amount of milliseconds the customer index is used after it was
+     * read, as it misses the changes made by other clients of the database.
+     * After it, searches use SQL only until the index is read again
+     */
+    public static final long CUSTOMER_INDEX_TTL_MILLIS
+            = Long.getLong("lms.customerIndex.ttlMillis", 300000);
+
+    /**
+     * Maximum amount of customers the customer index collects for a word of
+     * a name lookup of several words. A lookup whose every word matches more
+     * customers finds nothing, and searches use SQL only
+     */
+    public static final int CUSTOMER_INDEX_COLLECT_LIMIT
+            = Integer.getInteger("lms.customerIndex.collectLimit", 1000);
+
+    /**
+     * Amount of milliseconds after which a query or update is written to the
+     * slow query log. Negative to disable the log
+     */
+    public static final long SLOW_QUERY_THRESHOLD_MILLIS
+            = Long.getLong("lms.slowQuery.thresholdMillis", 500);
+
+    /**
+     * File name pattern for the slow query log; %g is replaced by the number
+     * of the file in the rotation
+     */
+    public static final String SLOW_QUERY_LOG_FILENAME
+            = System.getProperty("lms.slowQuery.fileName",
+                    "slow-queries.%g.log");
+
+    /**
+     * Maximum size in bytes of one of the database layer's log files (slow
+     * queries, metrics) before the log rotates to the next file
+     */
+    public static final int LOG_FILE_LIMIT_BYTES
+            = Integer.getInteger("lms.log.limitBytes", 1024 * 1024);
+
+    /**
+     * Amount of files kept in the rotation of each of the database layer's
+     * logs
+     */
+    public static final int LOG_FILE_COUNT
+            = Integer.getInteger("lms.log.fileCount", 5);
+
+    /**
+     * Interval in milliseconds at which a snapshot of the database metrics is
+     * written to the metrics log. 0 to disable the snapshots
+     */
+    public static final long METRICS_DUMP_INTERVAL_MILLIS
+            = Long.getLong("lms.metrics.dumpIntervalMillis", 300000);
+
+    /**
+     * File name pattern for the metrics log; %g is replaced by the number of
+     * the file in the rotation
+     */
+    public static final String METRICS_LOG_FILENAME
+            = System.getProperty("lms.metrics.fileName", "db-metrics.%g.log");
+
+    /**
+     * Amount of rows read per page by a PageQuery, unless it sets its own
+     */
+    public static final int PAGE_SIZE
+            = Integer.getInteger("lms.pageSize", 100);
+
+    /**
+     * Maximum amount of pages a lazily loaded table keeps in memory. Pages
+     * which were not viewed recently are read again when scrolled back to
+     */
+    public static final int TABLE_CACHED_PAGES
+            = Integer.getInteger("lms.table.cachedPages", 10);
+
+    /**
+     * Maximum amount of query results kept in the query cache. 0 disables the
+     * cache
+     */
+    public static final int QUERY_CACHE_SIZE
+            = Integer.getInteger("lms.queryCache.size", 200);
+
+    /**
+     * Maximum amount of milliseconds a query result is served from the query
+     * cache. Writes made by this application remove results right away; this
+     * bounds how long writes by other clients go unnoticed
+     */
+    public static final long QUERY_CACHE_TTL_MILLIS
+            = Long.getLong("lms.queryCache.ttlMillis", 30000);
+
+    /**
+     * Maximum amount of rows a query result may have to be cached, so large
+     * results do not crowd out the cache's memory
+     */
+    public static final int QUERY_CACHE_MAX_ROWS
+            = Integer.getInteger("lms.queryCache.maxRows", 500);
+
+    /**
+     * Maximum estimated amount of bytes each entity cache (of customers and
+     * of luggage looked up by ID) holds. 0 disables the caches
+     */
+    public static final long ENTITY_CACHE_MAX_BYTES
+            = Long.getLong("lms.entityCache.maxBytes", 1024 * 1024);
+
+    /**
+     * Maximum amount of milliseconds an entity is served from an entity
+     * cache. Writes made by this application remove entities right away; this
+     * bounds how long writes by other clients go unnoticed
+     */
+    public static final long ENTITY_CACHE_TTL_MILLIS
+            = Long.getLong("lms.entityCache.ttlMillis", 60000);
+
+    /**
+     * Amount of bits a unique value filter reserves per value. 10 bits keep
+     * the false positive rate near 1%; every extra 5 bits divide it by ten
+     */
+    public static final int UNIQUE_FILTER_BITS_PER_ENTRY
+            = Integer.getInteger("lms.uniqueFilter.bitsPerEntry", 10);
+
+    /**
+     * Maximum amount of rows sent to the database in a single JDBC batch by
+     * DbManager.insertAll
+     */
+    public static final int BATCH_SIZE
+            = Integer.getInteger("lms.batchSize", 100);
+
+    /**
+     * Maximum amount of action logs waiting to be written in the background
+     */
+    public static final int AUDIT_QUEUE_CAPACITY
+            = Integer.getInteger("lms.audit.queueCapacity", 1000);
+
+    /**
+     * Maximum amount of action logs written in a single batch
+     */
+    public static final int AUDIT_BATCH_SIZE
+            = Integer.getInteger("lms.audit.batchSize", 50);
+
+    /**
+     * Maximum amount of milliseconds an action log waits in the queue before
+     * it is written
+     */
+    public static final long AUDIT_FLUSH_INTERVAL_MILLIS
+            = Long.getLong("lms.audit.flushIntervalMillis", 1000);
+
+    /**
+     * Amount of milliseconds a caller waits for room in a full action log
+     * queue before it writes its log itself
+     */
+    public static final long AUDIT_OFFER_TIMEOUT_MILLIS
+            = Long.getLong("lms.audit.offerTimeoutMillis", 100);
+
+    /**
+     * Database engine the application stores its data in: "mysql" for the
+     * MySQL server, or "embedded" for the in-process database. The embedded
+     * database runs on H2, whose jar is not shipped in resources; add it to
+     * the classpath before selecting it, or connecting fails
+     */
+    public static final String DATABASE_BACKEND
+            = System.getProperty("lms.db.backend", "mysql");
+
+    /**
+     * Path of the file the embedded database keeps its data in. If empty, the
+     * embedded database only keeps its data in memory
+     */
+    public static final String EMBEDDED_DATABASE_PATH
+            = System.getProperty("lms.db.embeddedPath", "data/LMS_DB");
+
+    private DbConfig()
+    {
+    }
+}
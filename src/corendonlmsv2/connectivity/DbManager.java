@@ -3,15 +3,17 @@ package corendonlmsv2.connectivity;
 import corendonlmsv2.main.util.StringUtil;
 import corendonlmsv2.model.DatabaseTables;
 import corendonlmsv2.model.IStorable;
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 /**
- * Maintains a connection to the application's underlying database connection
- * and acts as a pipeline for outgoing SQL queries and updates
+ * Acts as a pipeline for outgoing SQL queries and updates. Every call is
+ * forwarded to the Database selected through DbConfig.DATABASE_BACKEND (or set
+ * through setDatabase), so callers do not depend on the engine behind it
  *
  * @author Emile Pels
  */
@@ -26,7 +28,10 @@ public class DbManager
     /**
      * URL for the database connection
      */
-    private static final String DATABASE_URL = "jdbc:mysql://localhost/LMS_DB";
+    private static final String DATABASE_URL = "jdbc:mysql://localhost/LMS_DB"
+            + "?useServerPrepStmts=true&useCursorFetch=true"
+            + "&rewriteBatchedStatements=true"
+            + "&connectTimeout=" + DbConfig.CONNECT_TIMEOUT_MILLIS;
 
     /**
      * Username for the database connection
@@ -34,141 +39,345 @@ public class DbManager
     private static final String DATABASE_USERNAME = "root";
 
     /**
-     * Indicates whether the database is currently connected
+     * Clause making the escape character of containsPattern's patterns known
+     * to LIKE. Backslashes are not used, as engines treat them differently
      */
-    private static boolean _connected;
+    static final String LIKE_ESCAPE = " ESCAPE '!'";
 
     /**
-     * Resembles the current database connection
+     * Tables whose rows must be inserted through their model's unit of work
+     * methods, as those also maintain the data derived from the rows (the
+     * luggage statistics and search index, the customer index and the phone
+     * number filter)
      */
-    private static Connection _dbConnection;
-    
+    private static final Set<DatabaseTables> MODEL_TABLES = EnumSet.of(
+            DatabaseTables.CUSTOMERS, DatabaseTables.LUGGAGE);
 
+    /**
+     * Reads the first column of a row as a string. Kept in a constant, as the
+     * query cache compares mappers through equals
+     */
+    private static final RowMapper<String> FIRST_COLUMN_MAPPER
+            = new RowMapper<String>()
+            {
+                @Override
+                public String mapRow(ResultSet results) throws SQLException
+                {
+                    return results.getString(1);
+                }
+            };
+
+    /**
+     * Database all queries and updates are forwarded to
+     */
+    private static Database _database;
 
     private DbManager()
     {
     }
 
     /**
-     * Closes the connection to the underlaying database connection
+     * Closes the database's connections
      */
-    public static void close()
+    public static synchronized void close()
     {
-        try
+        if (_database != null)
         {
-            _dbConnection.close();
-        } catch (SQLException ex)
-        {
-            System.err.println("SQL exception: " + ex.getMessage());
-            _connected = false;
+            _database.close();
         }
     }
 
     /**
-     * Opens the connection to the database, using the credentials and details
-     * as set in the constants in this class
+     * Opens the database's connections. Unless a database was set through
+     * setDatabase, the backend is chosen through DbConfig.DATABASE_BACKEND;
+     * the MySQL database uses the credentials and details as set in the
+     * constants in this class
      */
-    public static void connect()
+    public static synchronized void connect()
     {
-        try
-        {
-            Class.forName("com.mysql.jdbc.Driver");
-        } catch (ClassNotFoundException ex)
+        if (_database == null)
         {
-            System.err.println("JDBC exception: " + ex.getMessage());
+            _database = createDatabase(DbConfig.DATABASE_BACKEND);
         }
 
-        try
-        {
-            _dbConnection = DriverManager.getConnection(DATABASE_URL,
-                    DATABASE_USERNAME, DATABASE_PASSWORD);
-
-            _connected = true;
-        } catch (SQLException ex)
-        {
-            System.err.println("SQL exception: " + ex.getMessage());
-        }
+        _database.connect();
     }
 
     /**
-     * Executes a query to the database connection
+     * Gets the database all queries and updates are forwarded to, connecting
+     * first if this has not happened yet
      *
-     * @param query SQL query to execute
-     * @return ResultSet object containing the query's results
+     * @return Database all queries and updates are forwarded to
      */
-    public static ResultSet executeQuery(String query)
+    public static synchronized Database getDatabase()
     {
-        if (!_connected)
+        if (_database == null)
         {
             connect();
         }
 
-        ResultSet results = null;
-
-        try
-        {
-            Statement statement = _dbConnection.createStatement();
+        return _database;
+    }
 
-            results = statement.executeQuery(query);
-        } catch (SQLException ex)
+    /**
+     * Sets the database all queries and updates are forwarded to, closing the
+     * previous one. The new database is connected on first use
+     *
+     * @param database Database to forward all queries and updates to
+     */
+    public static synchronized void setDatabase(Database database)
+    {
+        if (database == null)
         {
-            System.err.println("SQL exception: " + ex.getMessage());
-            _connected = false;
+            throw new IllegalArgumentException("The database can not be "
+                    + "null.");
         }
 
-        return results;
+        close();
+        _database = database;
     }
 
     /**
-     * Executes a update to the database connection
+     * Creates the database for a backend name
      *
-     * @param update SQL update to execute
+     * @param backend Name of the backend: "mysql" or "embedded"
+     * @return Database for the backend
      */
-    public static void executeUpdate(String update)
+    private static Database createDatabase(String backend)
     {
-        if (!_connected)
+        switch (backend.toLowerCase())
         {
-            connect();
+            case "mysql":
+                return new MySqlDatabase(DATABASE_URL, DATABASE_USERNAME,
+                        DATABASE_PASSWORD);
+            case "embedded":
+                return new EmbeddedDatabase(DbConfig.EMBEDDED_DATABASE_PATH);
+            default:
+                throw new IllegalArgumentException("Unknown database backend: "
+                        + backend);
         }
+    }
 
-        try
-        {
-            Statement statement = _dbConnection.createStatement();
+    /**
+     * Gets whether the database is believed to be reachable. While it is not,
+     * queries and updates fail immediately and the connection pool reconnects
+     * in the background
+     *
+     * @return Boolean indicating whether the database is believed to be
+     * reachable
+     */
+    public static boolean isAvailable()
+    {
+        return getDatabase().isAvailable();
+    }
 
-            statement.executeUpdate(update);
-        } catch (SQLException ex)
-        {
-            System.err.println("SQL exception: " + ex.getMessage());
-            _connected = false;
-        }
+    /**
+     * Executes a query to the database. The query is prepared once per
+     * connection and its parameters are bound rather than formatted into the
+     * SQL. The results are copied into a disconnected row set, so the
+     * connection is back in the pool by the time this method returns. The
+     * query is cancelled after DbConfig.QUERY_TIMEOUT_SECONDS. Results are
+     * served from the query cache until a table they read from is written to
+     *
+     * @param query SQL query to execute, with a ? placeholder for each
+     * parameter
+     * @param parameters Values to bind to the query's placeholders, in order
+     * @return ResultSet object containing the query's results. Empty if the
+     * query failed
+     */
+    public static ResultSet executeQuery(String query, Object... parameters)
+    {
+        return executeQuery(QueryOptions.DEFAULT, query, parameters);
     }
 
     /**
-     * Gets the content for the last entry in a specified column
+     * Executes a query to the database with settings for this call only
+     *
+     * @param options Settings for this call, such as its timeout
+     * @param query SQL query to execute, with a ? placeholder for each
+     * parameter
+     * @param parameters Values to bind to the query's placeholders, in order
+     * @return ResultSet object containing the query's results. Empty if the
+     * query failed
+     */
+    public static ResultSet executeQuery(QueryOptions options, String query,
+            Object... parameters)
+    {
+        return getDatabase().executeQuery(options, query, parameters);
+    }
+
+    /**
+     * Executes a query and converts every row of its results through a row
+     * mapper. The statement's results are closed before this method returns.
+     * Results are served from the query cache, per mapper (compared through
+     * equals), until a table they read from is written to; keeping mappers in
+     * constants lets repeated calls share a cached result
+     *
+     * @param <T> Type of the objects the rows are converted into
+     * @param query SQL query to execute, with a ? placeholder for each
+     * parameter
+     * @param mapper Converts each row into an object
+     * @param parameters Values to bind to the query's placeholders, in order
+     * @return Objects for every row, in the order of the results. Empty if the
+     * query failed
+     */
+    public static <T> List<T> query(String query, RowMapper<T> mapper,
+            Object... parameters)
+    {
+        return query(QueryOptions.DEFAULT, query, mapper, parameters);
+    }
+
+    /**
+     * Executes a query and converts every row of its results through a row
+     * mapper, with settings for this call only
+     *
+     * @param <T> Type of the objects the rows are converted into
+     * @param options Settings for this call, such as its timeout
+     * @param query SQL query to execute, with a ? placeholder for each
+     * parameter
+     * @param mapper Converts each row into an object
+     * @param parameters Values to bind to the query's placeholders, in order
+     * @return Objects for every row, in the order of the results. Empty if the
+     * query failed
+     */
+    public static <T> List<T> query(QueryOptions options, String query,
+            RowMapper<T> mapper, Object... parameters)
+    {
+        return getDatabase().query(options, query, mapper, parameters);
+    }
+
+    /**
+     * Executes a query and streams its results through a row handler, one row
+     * at a time. Rows are fetched from the database in chunks of
+     * DbConfig.FETCH_SIZE, so the results are never held in memory at once.
+     * The statement's results are closed before this method returns, also
+     * when the handler stops early or throws
+     *
+     * @param query SQL query to execute, with a ? placeholder for each
+     * parameter
+     * @param handler Handles each row
+     * @param parameters Values to bind to the query's placeholders, in order
+     * @return Amount of rows handled. -1 if the query failed
+     */
+    public static int forEachRow(String query, RowHandler handler,
+            Object... parameters)
+    {
+        return forEachRow(QueryOptions.DEFAULT, query, handler, parameters);
+    }
+
+    /**
+     * Executes a query and streams its results through a row handler, with
+     * settings for this call only
+     *
+     * @param options Settings for this call, such as its timeout
+     * @param query SQL query to execute, with a ? placeholder for each
+     * parameter
+     * @param handler Handles each row
+     * @param parameters Values to bind to the query's placeholders, in order
+     * @return Amount of rows handled. -1 if the query failed
+     */
+    public static int forEachRow(QueryOptions options, String query,
+            RowHandler handler, Object... parameters)
+    {
+        return getDatabase().forEachRow(options, query, handler, parameters);
+    }
+
+    /**
+     * Executes a update to the database. The update is prepared once per
+     * connection and its parameters are bound rather than formatted into the
+     * SQL
+     *
+     * @param update SQL update to execute, with a ? placeholder for each
+     * parameter
+     * @param parameters Values to bind to the update's placeholders, in order
+     * @return Amount of rows affected by the update. -1 if the update failed
+     */
+    public static int executeUpdate(String update, Object... parameters)
+    {
+        return executeUpdate(QueryOptions.DEFAULT, update, parameters);
+    }
+
+    /**
+     * Executes a update to the database with settings for this call only
+     *
+     * @param options Settings for this call, such as its timeout
+     * @param update SQL update to execute, with a ? placeholder for each
+     * parameter
+     * @param parameters Values to bind to the update's placeholders, in order
+     * @return Amount of rows affected by the update. -1 if the update failed
+     */
+    public static int executeUpdate(QueryOptions options, String update,
+            Object... parameters)
+    {
+        return getDatabase().executeUpdate(options, update, parameters);
+    }
+
+    /**
+     * Gets the content for the last entry in a specified column. The last
+     * entry is the one with the highest primary key, which the database looks
+     * up through its primary key index rather than by reading the whole table
      *
      * @param table Table to search
      * @param column Column to search
-     * @return Content for the last entry in a specified column
+     * @return Content for the last entry in a specified column. Null if the
+     * table is empty
      */
     public static String getLastEntry(DatabaseTables table, String column)
     {
-        ResultSet results = getResultSet(table);
+        List<String> entries = getLastEntries(table, column, 1);
 
-        String lastEntry = null;
+        return entries.isEmpty() ? null : entries.get(0);
+    }
 
-        try
+    /**
+     * Gets the content for the last entries in a specified column, newest
+     * first. The entries are ordered by the table's primary key
+     *
+     * @param table Table to search
+     * @param column Column to search
+     * @param count Maximum amount of entries to get
+     * @return Content for the last entries in a specified column, newest first
+     */
+    public static List<String> getLastEntries(DatabaseTables table,
+            String column, int count)
+    {
+        return getLastEntries(table, column, table.getPrimaryKey(), count);
+    }
+
+    /**
+     * Gets the content for the last entries in a specified column, ordered by
+     * another (preferably indexed) column, newest first. Only the requested
+     * amount of rows is transferred
+     *
+     * @param table Table to search
+     * @param column Column to search
+     * @param orderColumn Column determining which entries are the last ones
+     * @param count Maximum amount of entries to get
+     * @return Content for the last entries in a specified column, newest first
+     */
+    public static List<String> getLastEntries(DatabaseTables table,
+            String column, String orderColumn, int count)
+    {
+        if (!table.hasColumn(column) || !table.hasColumn(orderColumn))
         {
-            while (results.next())
-            {
-                lastEntry = results.getString(column);
-            }
-        } catch (SQLException ex)
+            throw new IllegalArgumentException(String.format("The columns "
+                    + "%s and %s must belong to table %s.", column,
+                    orderColumn, table.getDatabaseIdentifier()));
+        }
+
+        if (count < 1)
         {
-            System.err.println("SQL exception: " + ex.getMessage());
-            _connected = false;
+            throw new IllegalArgumentException("The amount of entries must be"
+                    + " at least 1.");
         }
 
-        return lastEntry;
+        //The primary key breaks ties, so the order is always stable
+        String query = String.format("SELECT %s FROM %s ORDER BY %s DESC%s"
+                + " LIMIT ?", column, table.getDatabaseIdentifier(),
+                orderColumn, orderColumn.equals(table.getPrimaryKey())
+                        ? "" : ", " + table.getPrimaryKey() + " DESC");
+
+        return query(query, FIRST_COLUMN_MAPPER, count);
     }
 
     /**
@@ -182,33 +391,181 @@ public class DbManager
      * @param absolute Indicates whether only exact matches are accepted. If
      * false, the returned set will only contain results in which the query
      * string is contained (rather than content tested for equality)
+     * @param columns Columns to return, so only the data the caller needs is
+     * transferred. If none are specified, every column is returned
      * @return ResultSet object containing all database entries matching the
      * specified query
+     * @throws IllegalArgumentException Exception thrown if a column does not
+     * belong to the table
      */
     public static ResultSet getResultSet(DatabaseTables table, String query,
-            String column, boolean absolute)
+            String column, boolean absolute, String... columns)
+            throws IllegalArgumentException
     {
-        StringBuilder builder = new StringBuilder("SELECT * FROM "
-                + table.getDatabaseIdentifier());
+        return getResultSet(QueryOptions.DEFAULT, table, query, column,
+                absolute, columns);
+    }
+
+    /**
+     * Gets all the items in the respective table matching the query in the
+     * specified column, with settings for this call only
+     *
+     * @param options Settings for this call, such as whether the query cache
+     * may be used. A search which is not absolute runs with at most
+     * DbConfig.SEARCH_TIMEOUT_SECONDS
+     * @param table Database table to search
+     * @param query String query to search the specified table for. If null,
+     * every database entry is returned
+     * @param column Column to search. If null, all columns are searched
+     * @param absolute Indicates whether only exact matches are accepted. If
+     * false, the returned set will only contain results in which the query
+     * string is contained (rather than content tested for equality)
+     * @param columns Columns to return, so only the data the caller needs is
+     * transferred. If none are specified, every column is returned
+     * @return ResultSet object containing all database entries matching the
+     * specified query
+     * @throws IllegalArgumentException Exception thrown if a column does not
+     * belong to the table
+     */
+    public static ResultSet getResultSet(QueryOptions options,
+            DatabaseTables table, String query, String column,
+            boolean absolute, String... columns)
+            throws IllegalArgumentException
+    {
+        StringBuilder builder = new StringBuilder("SELECT ")
+                .append(getProjection(table, columns))
+                .append(" FROM ")
+                .append(table.getDatabaseIdentifier());
 
         if (!StringUtil.isStringNullOrWhiteSpace(query)
                 && !StringUtil.isStringNullOrWhiteSpace(column))
         {
+            validateColumns(table, column);
+
             builder.append(" WHERE ")
                     .append(column);
 
             if (absolute)
             {
-                builder.append(String.format("='%s'", query));
-            } else
+                builder.append(" = ?");
+
+                return executeQuery(options, builder.toString(), query);
+            }
+
+            //A LIKE with a leading wildcard can not use an index, so keep
+            //it from blocking the caller for the full default timeout
+            builder.append(" LIKE ?")
+                    .append(LIKE_ESCAPE);
+
+            return executeQuery(options.timeout(
+                    DbConfig.SEARCH_TIMEOUT_SECONDS), builder.toString(),
+                    containsPattern(query));
+        }
+
+        return executeQuery(options, builder.toString());
+    }
+
+    /**
+     * Creates a LIKE pattern matching every value which contains a text. The
+     * text's wildcards (% and _) are escaped, so they match literally. The
+     * pattern must be compared with LIKE_ESCAPE appended to the LIKE
+     *
+     * @param text Text the values must contain
+     * @return LIKE pattern for the text
+     */
+    static String containsPattern(String text)
+    {
+        return "%" + text.replace("!", "!!").replace("%", "!%")
+                .replace("_", "!_") + "%";
+    }
+
+    /**
+     * Checks whether a table contains at least one row with a value in a
+     * column. Only a constant is selected and the database stops at the first
+     * match, so no row data is transferred
+     *
+     * @param table Table to search
+     * @param column Column to search
+     * @param value Value to search for
+     * @return Boolean indicating whether a row with the value exists. False if
+     * the query failed
+     * @throws IllegalArgumentException Exception thrown if the column does not
+     * belong to the table
+     */
+    public static boolean exists(DatabaseTables table, String column,
+            Object value) throws IllegalArgumentException
+    {
+        validateColumns(table, column);
+
+        String query = String.format("SELECT 1 FROM %s WHERE %s = ? LIMIT 1",
+                table.getDatabaseIdentifier(), column);
+
+        return forEachRow(query, new RowHandler()
+        {
+            @Override
+            public boolean handleRow(ResultSet results)
+            {
+                return false;
+            }
+        }, value) > 0;
+    }
+
+    /**
+     * Creates the column list for a SELECT statement
+     *
+     * @param table Table the columns belong to
+     * @param columns Columns to select. If none are specified, every column
+     * is selected
+     * @return Comma separated column list, or * for every column
+     * @throws IllegalArgumentException Exception thrown if a column does not
+     * belong to the table
+     */
+    private static String getProjection(DatabaseTables table,
+            String... columns) throws IllegalArgumentException
+    {
+        if (columns == null || columns.length == 0)
+        {
+            return "*";
+        }
+
+        validateColumns(table, columns);
+
+        StringBuilder builder = new StringBuilder();
+
+        for (String column : columns)
+        {
+            if (builder.length() > 0)
             {
-                builder.append(" LIKE '%")
-                        .append(query)
-                        .append("%'");
+                builder.append(", ");
             }
+
+            builder.append(column);
         }
 
-        return DbManager.executeQuery(builder.toString());
+        return builder.toString();
+    }
+
+    /**
+     * Checks whether columns belong to a table, so only known column names
+     * are ever formatted into SQL
+     *
+     * @param table Table the columns should belong to
+     * @param columns Columns to check
+     * @throws IllegalArgumentException Exception thrown if a column does not
+     * belong to the table
+     */
+    private static void validateColumns(DatabaseTables table,
+            String... columns) throws IllegalArgumentException
+    {
+        for (String column : columns)
+        {
+            if (!table.hasColumn(column))
+            {
+                throw new IllegalArgumentException(String.format("The column"
+                        + " %s does not belong to table %s.", column,
+                        table.getDatabaseIdentifier()));
+            }
+        }
     }
 
     /**
@@ -246,34 +603,86 @@ public class DbManager
         } catch (SQLException ex)
         {
             System.err.println("SQL exception: " + ex.getMessage());
-            _connected = false;
         }
 
         return count;
     }
 
     /**
-     * Adds an instance of IStorable to the database
+     * Adds an instance of IStorable to the database in a single round trip
      *
      * @param value Instance of IStorable to add to the database
-     * @return Boolean indicating whether the amount of rows in this database
-     * was succesfully incremented by 1 (one) throughout the execution of this
-     * method
+     * @return Primary key the database generated for the new row. Null if the
+     * row could not be inserted
+     * @throws IllegalArgumentException Exception thrown if the row belongs to
+     * a table in MODEL_TABLES
      */
-    public static boolean insert(IStorable value)
+    public static String insert(IStorable value)
+            throws IllegalArgumentException
     {
-        DatabaseTables table = value.getTable();
+        checkDirectInsert(value);
 
-        //Get the amount of rows before executing the update
-        int beforeCount = getRowLength(table);
+        return getDatabase().insert(value);
+    }
+
+    /**
+     * Adds a collection of IStorable instances to the database at once. The
+     * rows are grouped by table (and update string), sent in JDBC batches of
+     * at most DbConfig.BATCH_SIZE rows and committed in a single transaction.
+     * Rows whose update can not be created (e.g. because they would violate a
+     * uniqueness check) are skipped and reported as failed. If the database
+     * rejects any row, the whole transaction is rolled back and every row is
+     * reported as failed
+     *
+     * @param values Instances of IStorable to add to the database
+     * @return Outcome for every row, in the order of the collection
+     * @throws IllegalArgumentException Exception thrown if any of the rows
+     * belongs to a table in MODEL_TABLES
+     */
+    public static BatchResult insertAll(Collection<? extends IStorable> values)
+            throws IllegalArgumentException
+    {
+        for (IStorable value : values)
+        {
+            checkDirectInsert(value);
+        }
 
-        //Execute the update
-        executeUpdate(value.getUpdate());
+        return getDatabase().insertAll(values);
+    }
 
-        //Get the amount of rows after executing the update
-        int afterCount = getRowLength(table);
+    /**
+     * Rejects a row which would bypass the data its model derives from it if
+     * it were inserted directly. Luggage and customers are inserted through
+     * Luggage.insert(UnitOfWork) and Customer.insert(UnitOfWork) instead
+     *
+     * @param value Instance of IStorable to add to the database
+     * @throws IllegalArgumentException Exception thrown if the row belongs to
+     * a table in MODEL_TABLES
+     */
+    private static void checkDirectInsert(IStorable value)
+            throws IllegalArgumentException
+    {
+        if (MODEL_TABLES.contains(value.getTable()))
+        {
+            throw new IllegalArgumentException(String.format("Rows of table "
+                    + "%s must be inserted through their model.",
+                    value.getTable().getDatabaseIdentifier()));
+        }
+    }
 
-        //Base success on whether the amount of rows in the table increased by 1
-        return afterCount == beforeCount + 1;
+    /**
+     * Starts a unit of work, grouping several writes and their action logs
+     * into one transaction with a single commit. The unit of work must be
+     * closed, preferably through try-with-resources; closing it without
+     * committing rolls every write back
+     *
+     * @return Unit of work holding a connection until it is committed or
+     * closed
+     * @throws SQLException Exception thrown if no connection is available or
+     * the transaction can not be started
+     */
+    public static UnitOfWork beginUnitOfWork() throws SQLException
+    {
+        return getDatabase().beginUnitOfWork();
     }
 }
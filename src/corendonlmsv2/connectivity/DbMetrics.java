@@ -0,0 +1,489 @@
+package corendonlmsv2.connectivity;
+
+import corendonlmsv2.main.util.MiscUtil;
+import corendonlmsv2.model.DatabaseTables;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.FileHandler;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects statistics for every statement sent through the database layer,
+ * keyed by table and kind of statement, and publishes them (along with the
+ * connection pool's and the caches') as JMX MBeans under the corendonlmsv2
+ * domain. A snapshot of all statistics is also written to a rotating log file
+ * periodically
+ *
+ * @author Emile Pels
+ */
+public final class DbMetrics
+{
+
+    /**
+     * Kinds of statements the statistics are kept for
+     */
+    public enum Operation
+    {
+
+        /**
+         * SELECT statements
+         */
+        QUERY,
+        /**
+         * UPDATE and DELETE statements
+         */
+        UPDATE,
+        /**
+         * Single row INSERT statements
+         */
+        INSERT,
+        /**
+         * INSERT statements sent in a JDBC batch
+         */
+        BATCH_INSERT
+    }
+
+    /**
+     * JMX domain the MBeans are registered under
+     */
+    private static final String JMX_DOMAIN = "corendonlmsv2";
+
+    /**
+     * Name for the statistics of tables outside DatabaseTables
+     */
+    private static final String OTHER_TABLE = "other";
+
+    /**
+     * Finds the first table a statement reads from or writes to
+     */
+    private static final Pattern TABLE_PATTERN = Pattern.compile(
+            "\\b(?:FROM|INTO|UPDATE|JOIN)\\s+`?(\\w+)",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Maximum amount of statements whose table is remembered
+     */
+    private static final int MAX_CACHED_STATEMENTS = 1000;
+
+    private static final Map<DatabaseTables, Map<Operation, QueryStats>> STATS
+            = new EnumMap<>(DatabaseTables.class);
+
+    private static final Map<Operation, QueryStats> OTHER_STATS
+            = new EnumMap<>(Operation.class);
+
+    /**
+     * Tables of previously seen statements, so each statement is only parsed
+     * once
+     */
+    private static final Map<String, String> STATEMENT_TABLES
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Unique value filters whose state is included in the snapshots
+     */
+    private static final List<UniqueValueFilter> FILTERS
+            = new CopyOnWriteArrayList<>();
+
+    /**
+     * Entity caches whose state is included in the snapshots
+     */
+    private static final List<EntityCache<?>> ENTITY_CACHES
+            = new CopyOnWriteArrayList<>();
+
+    private static final Logger LOGGER
+            = Logger.getLogger(DbMetrics.class.getName());
+
+    private static ScheduledExecutorService _reporter;
+
+    /**
+     * Connection pool and query cache whose state is included in the
+     * snapshots. Null until the database is connected
+     */
+    private static volatile ConnectionPool _pool;
+    private static volatile QueryCache _queryCache;
+
+    static
+    {
+        //Every key exists up front, so recording never has to lock
+        for (DatabaseTables table : DatabaseTables.values())
+        {
+            Map<Operation, QueryStats> operations
+                    = new EnumMap<>(Operation.class);
+
+            for (Operation operation : Operation.values())
+            {
+                operations.put(operation, createStats(
+                        table.getDatabaseIdentifier(), operation));
+            }
+
+            STATS.put(table, operations);
+        }
+
+        for (Operation operation : Operation.values())
+        {
+            OTHER_STATS.put(operation, createStats(OTHER_TABLE, operation));
+        }
+    }
+
+    private DbMetrics()
+    {
+    }
+
+    /**
+     * Records a finished statement
+     *
+     * @param operation Kind of statement
+     * @param sql SQL of the statement, used to determine its table
+     * @param nanos Duration of the statement in nanoseconds
+     * @param rows Amount of rows returned or affected. -1 if the statement
+     * failed
+     */
+    static void record(Operation operation, String sql, long nanos, int rows)
+    {
+        getStats(findTable(sql), operation).record(nanos, rows);
+    }
+
+    /**
+     * Gets the statistics for a kind of statement on a table
+     *
+     * @param table Table the statements ran against. Null for tables outside
+     * DatabaseTables
+     * @param operation Kind of statement
+     * @return Statistics for the kind of statement on the table
+     */
+    public static QueryStats getStats(DatabaseTables table,
+            Operation operation)
+    {
+        return table == null ? OTHER_STATS.get(operation)
+                : STATS.get(table).get(operation);
+    }
+
+    /**
+     * Forgets every recorded statement
+     */
+    public static void reset()
+    {
+        for (Map<Operation, QueryStats> operations : STATS.values())
+        {
+            for (QueryStats stats : operations.values())
+            {
+                stats.reset();
+            }
+        }
+
+        for (QueryStats stats : OTHER_STATS.values())
+        {
+            stats.reset();
+        }
+    }
+
+    /**
+     * Creates a snapshot of the connection pool's state, the query and entity
+     * caches' hit ratios, the unique value filters' false positive rates and
+     * the statistics of every kind of statement which ran at least once
+     *
+     * @return Snapshot of the statistics, one line per pool, cache, filter or
+     * kind of statement
+     */
+    public static String getSnapshot()
+    {
+        StringBuilder builder = new StringBuilder("Database metrics")
+                .append(System.lineSeparator())
+                .append(_pool)
+                .append(System.lineSeparator())
+                .append(_queryCache);
+
+        for (UniqueValueFilter filter : FILTERS)
+        {
+            builder.append(System.lineSeparator())
+                    .append(filter);
+        }
+
+        for (EntityCache<?> cache : ENTITY_CACHES)
+        {
+            builder.append(System.lineSeparator())
+                    .append(cache);
+        }
+
+        for (Map<Operation, QueryStats> operations : STATS.values())
+        {
+            appendStats(builder, operations);
+        }
+
+        appendStats(builder, OTHER_STATS);
+
+        return builder.toString();
+    }
+
+    /**
+     * Starts writing a snapshot to the metrics log every
+     * DbConfig.METRICS_DUMP_INTERVAL_MILLIS. Does nothing if the snapshots
+     * are disabled or already being written
+     */
+    public static synchronized void startReporting()
+    {
+        long interval = DbConfig.METRICS_DUMP_INTERVAL_MILLIS;
+
+        if (_reporter != null || interval <= 0)
+        {
+            return;
+        }
+
+        if (LOGGER.getHandlers().length == 0)
+        {
+            openLog();
+        }
+
+        _reporter = Executors.newSingleThreadScheduledExecutor(
+                MiscUtil.createDaemonThreadFactory("db-metrics-reporter"));
+        _reporter.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                LOGGER.info(getSnapshot());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops writing snapshots, writing a last one first
+     */
+    public static synchronized void stopReporting()
+    {
+        if (_reporter == null)
+        {
+            return;
+        }
+
+        _reporter.shutdownNow();
+        _reporter = null;
+
+        LOGGER.info(getSnapshot());
+    }
+
+    /**
+     * Opens the metrics log file
+     */
+    private static void openLog()
+    {
+        LOGGER.setUseParentHandlers(false);
+
+        try
+        {
+            FileHandler handler = new FileHandler(
+                    DbConfig.METRICS_LOG_FILENAME,
+                    DbConfig.LOG_FILE_LIMIT_BYTES,
+                    DbConfig.LOG_FILE_COUNT, true);
+            handler.setFormatter(new LineFormatter());
+
+            LOGGER.addHandler(handler);
+        } catch (IOException | SecurityException ex)
+        {
+            System.err.println("Could not open the metrics log: "
+                    + ex.getMessage());
+
+            //Fall back to the error stream rather than losing the snapshots
+            LOGGER.setUseParentHandlers(true);
+        }
+    }
+
+    /**
+     * Publishes a connection pool over JMX, replacing any previously published
+     * pool
+     *
+     * @param pool Connection pool to publish
+     */
+    static void registerPool(ConnectionPool pool)
+    {
+        _pool = pool;
+
+        register(pool, "type=ConnectionPool");
+    }
+
+    /**
+     * Publishes a query cache over JMX, replacing any previously published
+     * cache
+     *
+     * @param cache Query cache to publish
+     */
+    static void registerQueryCache(QueryCache cache)
+    {
+        _queryCache = cache;
+
+        register(cache, "type=QueryCache");
+    }
+
+    /**
+     * Publishes an entity cache over JMX and includes it in the snapshots
+     *
+     * @param cache Entity cache to publish
+     */
+    static void registerEntityCache(EntityCache<?> cache)
+    {
+        ENTITY_CACHES.add(cache);
+
+        register(cache, "type=EntityCache,table=" + cache.getTable());
+    }
+
+    /**
+     * Publishes a unique value filter over JMX and includes it in the
+     * snapshots
+     *
+     * @param filter Unique value filter to publish
+     */
+    static void registerUniqueValueFilter(UniqueValueFilter filter)
+    {
+        FILTERS.add(filter);
+
+        register(filter, String.format("type=UniqueValueFilter,table=%s,"
+                + "column=%s", filter.getTable(), filter.getColumn()));
+    }
+
+    /**
+     * Removes the connection pool from JMX
+     */
+    static void unregisterPool()
+    {
+        _pool = null;
+
+        try
+        {
+            ObjectName name = createName("type=ConnectionPool");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+            if (server.isRegistered(name))
+            {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException ex)
+        {
+            System.err.println("JMX exception: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Creates the statistics for a kind of statement on a table and publishes
+     * them over JMX
+     *
+     * @param table Name of the table
+     * @param operation Kind of statement
+     * @return Statistics for the kind of statement on the table
+     */
+    private static QueryStats createStats(String table, Operation operation)
+    {
+        QueryStats stats = new QueryStats(table, operation.name());
+
+        register(stats, String.format("type=QueryStats,table=%s,operation=%s",
+                table, operation.name().toLowerCase()));
+
+        return stats;
+    }
+
+    /**
+     * Publishes an MBean under the application's JMX domain, replacing any
+     * MBean published under the same name
+     *
+     * @param bean MBean to publish
+     * @param properties Key properties of the MBean's name
+     */
+    private static void register(Object bean, String properties)
+    {
+        try
+        {
+            ObjectName name = createName(properties);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+            if (server.isRegistered(name))
+            {
+                server.unregisterMBean(name);
+            }
+
+            server.registerMBean(bean, name);
+        } catch (JMException ex)
+        {
+            System.err.println("JMX exception: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Creates an MBean name under the application's JMX domain
+     *
+     * @param properties Key properties of the name
+     * @return MBean name
+     * @throws JMException Exception thrown if the properties are malformed
+     */
+    private static ObjectName createName(String properties)
+            throws JMException
+    {
+        return new ObjectName(JMX_DOMAIN + ":" + properties);
+    }
+
+    /**
+     * Appends the statistics of every kind of statement which ran at least
+     * once to a snapshot
+     *
+     * @param builder Snapshot to append to
+     * @param operations Statistics per kind of statement
+     */
+    private static void appendStats(StringBuilder builder,
+            Map<Operation, QueryStats> operations)
+    {
+        for (QueryStats stats : operations.values())
+        {
+            if (stats.getCallCount() > 0)
+            {
+                builder.append(System.lineSeparator())
+                        .append(stats);
+            }
+        }
+    }
+
+    /**
+     * Determines the table a statement reads from or writes to
+     *
+     * @param sql SQL of the statement
+     * @return Table the statement runs against. Null if it is not one of
+     * DatabaseTables
+     */
+    private static DatabaseTables findTable(String sql)
+    {
+        String table = STATEMENT_TABLES.get(sql);
+
+        if (table == null)
+        {
+            Matcher matcher = TABLE_PATTERN.matcher(sql);
+            table = matcher.find() ? matcher.group(1).toLowerCase()
+                    : OTHER_TABLE;
+
+            //Statements with literals in them would fill the cache forever
+            if (STATEMENT_TABLES.size() < MAX_CACHED_STATEMENTS)
+            {
+                STATEMENT_TABLES.put(sql, table);
+            }
+        }
+
+        for (DatabaseTables candidate : DatabaseTables.values())
+        {
+            if (candidate.getDatabaseIdentifier().equals(table))
+            {
+                return candidate;
+            }
+        }
+
+        return null;
+    }
+}
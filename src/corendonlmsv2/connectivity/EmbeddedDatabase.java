@@ -0,0 +1,92 @@
+package corendonlmsv2.connectivity;
+
+import corendonlmsv2.main.util.StringUtil;
+import java.io.File;
+
+/**
+ * Database running inside the application's own process, on the H2 engine in
+ * its MySQL compatibility mode. It needs no server, so it suits offline
+ * stations and reproducible load tests. The data is kept in a file, or only in
+ * memory if no file is specified. The schema is created by the SchemaMigrator
+ * like on any other database. The H2 driver is not shipped with the
+ * application; add its jar to the classpath to use this database
+ *
+ * @author Emile Pels
+ */
+public class EmbeddedDatabase extends JdbcDatabase
+{
+
+    /**
+     * Fully qualified name of the H2 JDBC driver's class
+     */
+    private static final String DRIVER_CLASS_NAME = "org.h2.Driver";
+
+    /**
+     * Settings appended to every URL. DB_CLOSE_DELAY keeps an in-memory
+     * database alive while the pool has no connections open
+     */
+    private static final String URL_SETTINGS = ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    /**
+     * Name of the in-memory database
+     */
+    private static final String MEMORY_DATABASE_NAME = "LMS_DB";
+
+    /**
+     * Username for the database connections
+     */
+    private static final String DATABASE_USERNAME = "sa";
+
+    /**
+     * Password for the database connections
+     */
+    private static final String DATABASE_PASSWORD = "";
+
+    /**
+     * Initializes a new EmbeddedDatabase
+     *
+     * @param path Path of the file to keep the data in, without extension. If
+     * null or empty, the data is only kept in memory
+     */
+    public EmbeddedDatabase(String path)
+    {
+        super(DRIVER_CLASS_NAME, createUrl(path), DATABASE_USERNAME,
+                DATABASE_PASSWORD);
+    }
+
+    /**
+     * Initializes a new EmbeddedDatabase keeping its data in memory only
+     */
+    public EmbeddedDatabase()
+    {
+        this(null);
+    }
+
+    @Override
+    public String getName()
+    {
+        return "H2 (embedded)";
+    }
+
+    /**
+     * Creates the URL for a database file
+     *
+     * @param path Path of the file to keep the data in. If null or empty, an
+     * in-memory database is used
+     * @return URL for the database's connections
+     */
+    private static String createUrl(String path)
+    {
+        if (StringUtil.isStringNullOrWhiteSpace(path))
+        {
+            return "jdbc:h2:mem:" + MEMORY_DATABASE_NAME + URL_SETTINGS;
+        }
+
+        //H2 refuses plain relative paths, so anchor them to the working
+        //directory like the application's other resources
+        String file = new File(path).isAbsolute() || path.startsWith(".")
+                || path.startsWith("~") ? path : "./" + path;
+
+        return "jdbc:h2:file:" + file + URL_SETTINGS;
+    }
+}
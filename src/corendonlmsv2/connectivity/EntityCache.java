@@ -0,0 +1,358 @@
+package corendonlmsv2.connectivity;
+
+import corendonlmsv2.main.util.StringUtil;
+import corendonlmsv2.model.DatabaseTables;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-through cache of the entities of a table, keyed by their primary key,
+ * so looking up the same row by ID again does not query the database. The
+ * cache is bounded by the estimated size of its entities rather than their
+ * amount, removing the least recently used entities once it would hold more
+ * than its maximum weight. Entities are removed once they outlive
+ * DbConfig.ENTITY_CACHE_TTL_MILLIS, which bounds how long changes made by
+ * other clients of the database go unnoticed.
+ *
+ * Writers invalidate the entities they change or delete once their
+ * transaction is committed. A lookup which starts before an invalidation and
+ * finishes after it may have read the old row, so its entity is returned but
+ * not cached. The cached entities are shared and must not be changed
+ *
+ * @author Emile Pels
+ * @param <T> Type of the cached entities
+ */
+public class EntityCache<T> implements EntityCacheMXBean
+{
+
+    /**
+     * Estimated amount of bytes a cache entry takes up besides its entity,
+     * for the map entry, the key and the bookkeeping
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final DatabaseTables table;
+    private final RowMapper<T> mapper;
+    private final Weigher<T> weigher;
+    private final long maxWeight, ttlMillis;
+    private final String query;
+    private final Map<String, CachedEntity<T>> entities;
+
+    /**
+     * Incremented on every invalidation, so entities read before a write
+     * finished are never cached
+     */
+    private long version;
+
+    private long weight;
+
+    private long hitCount, missCount, evictionCount, expirationCount,
+            invalidationCount;
+
+    /**
+     * Initializes a new EntityCache and publishes it over JMX
+     *
+     * @param table Table the entities are read from
+     * @param columns Columns the mapper reads, which are the only ones
+     * selected
+     * @param mapper Converts a row of the table into an entity
+     * @param weigher Estimates the size of an entity
+     * @param maxWeight Maximum estimated amount of bytes to keep. 0 disables
+     * the cache
+     * @param ttlMillis Maximum amount of milliseconds an entity is kept
+     */
+    public EntityCache(DatabaseTables table, String[] columns,
+            RowMapper<T> mapper, Weigher<T> weigher, long maxWeight,
+            long ttlMillis)
+    {
+        this.table = table;
+        this.mapper = mapper;
+        this.weigher = weigher;
+        this.maxWeight = Math.max(0, maxWeight);
+        this.ttlMillis = ttlMillis;
+        this.query = String.format("SELECT %s FROM %s WHERE %s = ?",
+                StringUtil.joinString(", ", columns),
+                table.getDatabaseIdentifier(), table.getPrimaryKey());
+
+        //Access order makes the eldest entry the least recently used
+        this.entities = new LinkedHashMap<>(16, 0.75f, true);
+
+        DbMetrics.registerEntityCache(this);
+    }
+
+    /**
+     * Estimates the amount of bytes strings take up, to help weigh entities
+     *
+     * @param values Strings to weigh. Null values are counted as references
+     * only
+     * @return Estimated amount of bytes of the strings and references to them
+     */
+    public static int estimateSize(String... values)
+    {
+        //Object header and fields of the entity itself
+        int size = 16;
+
+        for (String value : values)
+        {
+            size += 8;
+
+            if (value != null)
+            {
+                //String and char array headers, plus two bytes per character
+                size += 40 + value.length() * 2;
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Gets an entity by its primary key, reading it from the database if it is
+     * not cached
+     *
+     * @param id Primary key of the entity
+     * @return Entity with the primary key. Null if no row has the key or it
+     * could not be read
+     */
+    public T get(String id)
+    {
+        long readVersion;
+
+        synchronized (this)
+        {
+            CachedEntity<T> entry = entities.get(id);
+
+            if (entry != null && System.currentTimeMillis() > entry.expiresAt)
+            {
+                remove(id);
+                expirationCount++;
+                entry = null;
+            }
+
+            if (entry != null)
+            {
+                hitCount++;
+
+                return entry.value;
+            }
+
+            missCount++;
+            readVersion = version;
+        }
+
+        //The query cache would only hold a second copy of the row
+        List<T> rows = DbManager.query(QueryOptions.FRESH, query, mapper, id);
+        T value = rows.isEmpty() ? null : rows.get(0);
+
+        if (value != null)
+        {
+            put(id, value, readVersion);
+        }
+
+        return value;
+    }
+
+    /**
+     * Removes an entity which was changed or deleted
+     *
+     * @param id Primary key of the entity
+     */
+    public synchronized void invalidate(String id)
+    {
+        version++;
+
+        if (remove(id))
+        {
+            invalidationCount++;
+        }
+    }
+
+    /**
+     * Removes every entity, as after a write to rows whose primary keys are
+     * not known
+     */
+    public synchronized void invalidateAll()
+    {
+        version++;
+        invalidationCount += entities.size();
+
+        entities.clear();
+        weight = 0;
+    }
+
+    /**
+     * Caches an entity, unless the cache is disabled, the entity alone is
+     * heavier than the cache or it was invalidated while it was being read.
+     * The least recently used entities are removed until the cache is within
+     * its maximum weight again
+     *
+     * @param id Primary key of the entity
+     * @param value Entity to cache
+     * @param readVersion Value of version before the entity was read
+     */
+    private synchronized void put(String id, T value, long readVersion)
+    {
+        int entryWeight = ENTRY_OVERHEAD + weigher.weigh(value);
+
+        if (readVersion != version || entryWeight > maxWeight)
+        {
+            return;
+        }
+
+        remove(id);
+
+        entities.put(id, new CachedEntity<>(value, entryWeight,
+                System.currentTimeMillis() + ttlMillis));
+        weight += entryWeight;
+
+        for (Iterator<CachedEntity<T>> iterator = entities.values().iterator();
+                weight > maxWeight && iterator.hasNext();)
+        {
+            weight -= iterator.next().weight;
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Removes an entity and subtracts its weight
+     *
+     * @param id Primary key of the entity
+     * @return Boolean indicating whether the entity was cached
+     */
+    private boolean remove(String id)
+    {
+        CachedEntity<T> entry = entities.remove(id);
+
+        if (entry == null)
+        {
+            return false;
+        }
+
+        weight -= entry.weight;
+
+        return true;
+    }
+
+    @Override
+    public String getTable()
+    {
+        return table.getDatabaseIdentifier();
+    }
+
+    @Override
+    public synchronized int getSize()
+    {
+        return entities.size();
+    }
+
+    @Override
+    public synchronized long getWeight()
+    {
+        return weight;
+    }
+
+    @Override
+    public long getMaxWeight()
+    {
+        return maxWeight;
+    }
+
+    @Override
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    @Override
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    @Override
+    public synchronized double getHitRatio()
+    {
+        long total = hitCount + missCount;
+
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public synchronized long getEvictionCount()
+    {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized long getExpirationCount()
+    {
+        return expirationCount;
+    }
+
+    @Override
+    public synchronized long getInvalidationCount()
+    {
+        return invalidationCount;
+    }
+
+    @Override
+    public synchronized void clear()
+    {
+        version++;
+
+        entities.clear();
+        weight = 0;
+    }
+
+    @Override
+    public synchronized void resetStatistics()
+    {
+        hitCount = 0;
+        missCount = 0;
+        evictionCount = 0;
+        expirationCount = 0;
+        invalidationCount = 0;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("EntityCache [%s size=%d weight=%d/%d hits=%d "
+                + "misses=%d ratio=%.2f evictions=%d expirations=%d "
+                + "invalidations=%d]", table.getDatabaseIdentifier(),
+                entities.size(), weight, maxWeight, hitCount, missCount,
+                getHitRatio(), evictionCount, expirationCount,
+                invalidationCount);
+    }
+
+    /**
+     * Cached entity with its estimated size and expiry time
+     *
+     * @param <T> Type of the entity
+     */
+    private static class CachedEntity<T>
+    {
+
+        private final T value;
+        private final int weight;
+        private final long expiresAt;
+
+        /**
+         * Initializes a new CachedEntity
+         *
+         * @param value Cached entity
+         * @param weight Estimated amount of bytes of the entry
+         * @param expiresAt Time in milliseconds after which the entity is no
+         * longer served
+         */
+        private CachedEntity(T value, int weight, long expiresAt)
+        {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package corendonlmsv2.connectivity;
+
+/**
+ * Management interface publishing an entity cache's size and hit ratio over
+ * JMX
+ *
+ * @author Emile Pels
+ */
+public interface EntityCacheMXBean
+{
+
+    /**
+     * Gets the name of the table the cached entities are read from
+     *
+     * @return Name of the table
+     */
+    String getTable();
+
+    /**
+     * Gets the amount of entities in the cache
+     *
+     * @return Amount of entities in the cache
+     */
+    int getSize();
+
+    /**
+     * Gets the estimated amount of bytes the cached entities take up
+     *
+     * @return Estimated amount of bytes in the cache
+     */
+    long getWeight();
+
+    /**
+     * Gets the maximum estimated amount of bytes the cache holds
+     *
+     * @return Maximum amount of bytes in the cache. 0 if the cache is disabled
+     */
+    long getMaxWeight();
+
+    /**
+     * Gets the amount of lookups answered from the cache
+     *
+     * @return Amount of lookups answered from the cache
+     */
+    long getHitCount();
+
+    /**
+     * Gets the amount of lookups which had to read the entity from the
+     * database
+     *
+     * @return Amount of lookups sent to the database
+     */
+    long getMissCount();
+
+    /**
+     * Gets the fraction of lookups answered from the cache
+     *
+     * @return Fraction of lookups answered from the cache, from 0 to 1
+     */
+    double getHitRatio();
+
+    /**
+     * Gets the amount of entities removed to stay within the maximum weight
+     *
+     * @return Amount of entities removed to make room
+     */
+    long getEvictionCount();
+
+    /**
+     * Gets the amount of entities removed because they outlived
+     * DbConfig.ENTITY_CACHE_TTL_MILLIS
+     *
+     * @return Amount of entities removed because they expired
+     */
+    long getExpirationCount();
+
+    /**
+     * Gets the amount of entities removed because they were changed or
+     * deleted
+     *
+     * @return Amount of entities removed because of writes
+     */
+    long getInvalidationCount();
+
+    /**
+     * Removes every entity from the cache
+     */
+    void clear();
+
+    /**
+     * Sets every counter back to 0
+     */
+    void resetStatistics();
+}
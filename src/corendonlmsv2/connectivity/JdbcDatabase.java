@@ -0,0 +1,812 @@
+package corendonlmsv2.connectivity;
+
+import corendonlmsv2.connectivity.DbMetrics.Operation;
+import corendonlmsv2.model.DatabaseTables;
+import corendonlmsv2.model.IStorable;
+import java.sql.BatchUpdateException;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * Implements the Database contract on top of plain JDBC: queries and updates
+ * are prepared on connections borrowed from a ConnectionPool. Subclasses only
+ * supply the driver and connection details of their engine, so everything
+ * engine specific is kept out of the SQL pipeline
+ *
+ * @author Emile Pels
+ */
+public abstract class JdbcDatabase implements Database
+{
+
+    private final String driverClassName, url, username, password;
+
+    /**
+     * Pool handing out the connections for all queries and updates
+     */
+    private ConnectionPool pool;
+
+    /**
+     * Factory for the disconnected row sets returned by executeQuery
+     */
+    private RowSetFactory rowSetFactory;
+
+    /**
+     * Cache the results of executeQuery and query are served from
+     */
+    private final QueryCache queryCache = new QueryCache(
+            DbConfig.QUERY_CACHE_SIZE, DbConfig.QUERY_CACHE_TTL_MILLIS,
+            DbConfig.QUERY_CACHE_MAX_ROWS);
+
+    /**
+     * Initializes a new JdbcDatabase
+     *
+     * @param driverClassName Fully qualified name of the JDBC driver's class
+     * @param url URL for the database connections
+     * @param username Username for the database connections
+     * @param password Password for the database connections
+     */
+    protected JdbcDatabase(String driverClassName, String url, String username,
+            String password)
+    {
+        this.driverClassName = driverClassName;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * Loads the JDBC driver and opens the connection pool, using the pool
+     * settings in DbConfig
+     *
+     * @throws IllegalStateException Exception thrown if the JDBC driver is not
+     * on the classpath
+     */
+    @Override
+    public synchronized void connect() throws IllegalStateException
+    {
+        try
+        {
+            Class.forName(driverClassName);
+        } catch (ClassNotFoundException ex)
+        {
+            //Without its driver, the pool would only keep failing to reconnect
+            throw new IllegalStateException(String.format("The JDBC driver %s "
+                    + "for the %s database is not on the classpath.",
+                    driverClassName, getName()), ex);
+        }
+
+        try
+        {
+            rowSetFactory = RowSetProvider.newFactory();
+        } catch (SQLException ex)
+        {
+            System.err.println("SQL exception: " + ex.getMessage());
+        }
+
+        //Drivers which do not take a connect timeout in their URL honour this
+        DriverManager.setLoginTimeout(Math.max(1,
+                DbConfig.CONNECT_TIMEOUT_MILLIS / 1000));
+
+        if (pool == null)
+        {
+            pool = new ConnectionPool(url, username, password,
+                    DbConfig.POOL_MIN_SIZE, DbConfig.POOL_MAX_SIZE,
+                    DbConfig.POOL_BORROW_TIMEOUT_MILLIS,
+                    DbConfig.POOL_IDLE_TIMEOUT_MILLIS,
+                    DbConfig.POOL_EVICTION_INTERVAL_MILLIS,
+                    DbConfig.POOL_VALIDATION_TIMEOUT_SECONDS,
+                    DbConfig.STATEMENT_CACHE_SIZE,
+                    DbConfig.POOL_HEARTBEAT_INTERVAL_MILLIS,
+                    DbConfig.POOL_RECONNECT_MIN_DELAY_MILLIS,
+                    DbConfig.POOL_RECONNECT_MAX_DELAY_MILLIS);
+
+            DbMetrics.registerPool(pool);
+            DbMetrics.registerQueryCache(queryCache);
+        }
+    }
+
+    /**
+     * Closes the connection pool and all connections in it, and empties the
+     * query cache, as the data may change while the database is closed
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (pool != null)
+        {
+            DbMetrics.unregisterPool();
+
+            pool.close();
+            pool = null;
+        }
+
+        queryCache.clear();
+    }
+
+    @Override
+    public boolean isAvailable()
+    {
+        return getConnectionPool().isAvailable();
+    }
+
+    /**
+     * Gets the connection pool, connecting first if this has not happened yet
+     *
+     * @return Connection pool handing out the database's connections
+     */
+    private synchronized ConnectionPool getConnectionPool()
+    {
+        if (pool == null)
+        {
+            connect();
+        }
+
+        return pool;
+    }
+
+    /**
+     * Gets the URL the database's connections are opened with
+     *
+     * @return URL the database's connections are opened with
+     */
+    public String getUrl()
+    {
+        return url;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s [%s]", getName(), url);
+    }
+
+    /**
+     * Executes a query to the database connection. The query is prepared once
+     * per connection and its parameters are bound rather than formatted into
+     * the SQL. The results are copied into a disconnected row set, so the
+     * connection is back in the pool by the time this method returns. Unless
+     * the options bypass it, the results are served from the query cache if
+     * they are in it
+     *
+     * @param options Settings for this call, such as its timeout
+     * @param query SQL query to execute, with a ? placeholder for each
+     * parameter
+     * @param parameters Values to bind to the query's placeholders, in order
+     * @return ResultSet object containing the query's results. Empty if the
+     * query failed
+     */
+    @Override
+    public ResultSet executeQuery(QueryOptions options, String query,
+            Object... parameters)
+    {
+        List<Object> key = null;
+        long readVersion = 0;
+
+        if (queryCache.isEnabled())
+        {
+            key = QueryCache.createKey(query, CachedRowSet.class, parameters);
+
+            if (options.isCached())
+            {
+                CachedRowSet cached = (CachedRowSet) queryCache.get(key);
+
+                //Every caller gets its own copy to move the cursor of
+                if (cached != null)
+                {
+                    try
+                    {
+                        return cached.createCopy();
+                    } catch (SQLException ex)
+                    {
+                        System.err.println("SQL exception: "
+                                + ex.getMessage());
+                    }
+                }
+            }
+
+            readVersion = queryCache.getVersion();
+        }
+
+        ConnectionPool pool = getConnectionPool();
+        ManagedConnection connection = null;
+        long start = System.nanoTime();
+        int rows = -1;
+
+        try
+        {
+            connection = pool.borrow();
+
+            PreparedStatement statement = connection.prepare(query);
+            statement.setQueryTimeout(options.getTimeoutSeconds());
+            bindParameters(statement, parameters);
+            CancellationToken.attach(statement);
+
+            try (ResultSet results = statement.executeQuery())
+            {
+                CachedRowSet rowSet = rowSetFactory.createCachedRowSet();
+                rowSet.populate(results);
+                rows = rowSet.size();
+
+                if (key != null)
+                {
+                    queryCache.put(key, query, rowSet.createCopy(), rows,
+                            readVersion);
+                }
+
+                return rowSet;
+            }
+        } catch (SQLException ex)
+        {
+            handleFailure(pool, ex);
+        } finally
+        {
+            CancellationToken.detach();
+            pool.release(connection);
+            recordStatement(Operation.QUERY, query, start, rows);
+        }
+
+        return createEmptyRowSet();
+    }
+
+    /**
+     * Executes a query and converts every row of its results through a row
+     * mapper. The statement's results are closed before this method returns.
+     * Unless the options bypass it, the results are served from the query
+     * cache if the same query was read through an equal mapper before. A
+     * cached result's objects are shared by every caller, so they must not be
+     * changed
+     *
+     * @param <T> Type of the objects the rows are converted into
+     * @param options Settings for this call, such as its timeout
+     * @param query SQL query to execute, with a ? placeholder for each
+     * parameter
+     * @param mapper Converts each row into an object
+     * @param parameters Values to bind to the query's placeholders, in order
+     * @return Objects for every row, in the order of the results. Empty if the
+     * query failed
+     */
+    @Override
+    public <T> List<T> query(QueryOptions options, String query,
+            final RowMapper<T> mapper, Object... parameters)
+    {
+        List<Object> key = null;
+        long readVersion = 0;
+
+        if (queryCache.isEnabled())
+        {
+            key = QueryCache.createKey(query, mapper, parameters);
+
+            if (options.isCached())
+            {
+                @SuppressWarnings("unchecked")
+                List<T> cached = (List<T>) queryCache.get(key);
+
+                if (cached != null)
+                {
+                    return new ArrayList<>(cached);
+                }
+            }
+
+            readVersion = queryCache.getVersion();
+        }
+
+        final List<T> rows = new ArrayList<>();
+
+        int count = forEachRow(options, query, new RowHandler()
+        {
+            @Override
+            public boolean handleRow(ResultSet results) throws SQLException
+            {
+                rows.add(mapper.mapRow(results));
+
+                return true;
+            }
+        }, parameters);
+
+        if (key != null && count >= 0)
+        {
+            queryCache.put(key, query, new ArrayList<>(rows), count,
+                    readVersion);
+        }
+
+        return rows;
+    }
+
+    /**
+     * Executes a query and streams its results through a row handler, one row
+     * at a time. Rows are fetched from the database in chunks of
+     * DbConfig.FETCH_SIZE, so the results are never held in memory at once.
+     * The statement's results are closed before this method returns, also
+     * when the handler stops early or throws
+     *
+     * @param options Settings for this call, such as its timeout
+     * @param query SQL query to execute, with a ? placeholder for each
+     * parameter
+     * @param handler Handles each row
+     * @param parameters Values to bind to the query's placeholders, in order
+     * @return Amount of rows handled. -1 if the query failed
+     */
+    @Override
+    public int forEachRow(QueryOptions options, String query,
+            RowHandler handler, Object... parameters)
+    {
+        ConnectionPool pool = getConnectionPool();
+        ManagedConnection connection = null;
+        long start = System.nanoTime();
+        int count = 0;
+
+        try
+        {
+            connection = pool.borrow();
+
+            PreparedStatement statement = connection.prepare(query);
+            statement.setFetchSize(DbConfig.FETCH_SIZE);
+            statement.setQueryTimeout(options.getTimeoutSeconds());
+            bindParameters(statement, parameters);
+            CancellationToken.attach(statement);
+
+            try (ResultSet results = statement.executeQuery())
+            {
+                while (results.next())
+                {
+                    count++;
+
+                    if (!handler.handleRow(results))
+                    {
+                        break;
+                    }
+                }
+            }
+        } catch (SQLException ex)
+        {
+            handleFailure(pool, ex);
+            count = -1;
+        } finally
+        {
+            CancellationToken.detach();
+            pool.release(connection);
+            recordStatement(Operation.QUERY, query, start, count);
+        }
+
+        return count;
+    }
+
+    /**
+     * Executes a update to the database connection. The update is prepared
+     * once per connection and its parameters are bound rather than formatted
+     * into the SQL. Cached query results which read from the updated table are
+     * removed
+     *
+     * @param options Settings for this call, such as its timeout
+     * @param update SQL update to execute, with a ? placeholder for each
+     * parameter
+     * @param parameters Values to bind to the update's placeholders, in order
+     * @return Amount of rows affected by the update. -1 if the update failed
+     */
+    @Override
+    public int executeUpdate(QueryOptions options, String update,
+            Object... parameters)
+    {
+        ConnectionPool pool = getConnectionPool();
+        ManagedConnection connection = null;
+        long start = System.nanoTime();
+        int rows = -1;
+
+        try
+        {
+            connection = pool.borrow();
+
+            PreparedStatement statement = connection.prepare(update);
+            statement.setQueryTimeout(options.getTimeoutSeconds());
+            bindParameters(statement, parameters);
+
+            rows = statement.executeUpdate();
+
+            queryCache.invalidateWrite(update);
+        } catch (SQLException ex)
+        {
+            handleFailure(pool, ex);
+        } finally
+        {
+            pool.release(connection);
+            recordStatement(Operation.UPDATE, update, start, rows);
+        }
+
+        return rows;
+    }
+
+    /**
+     * Binds values to a prepared statement's placeholders
+     *
+     * @param statement Statement to bind the values to
+     * @param parameters Values to bind, in the order of the placeholders
+     * @throws SQLException Exception thrown if a value can not be bound
+     */
+    static void bindParameters(PreparedStatement statement,
+            Object[] parameters) throws SQLException
+    {
+        if (parameters == null)
+        {
+            return;
+        }
+
+        for (int i = 0; i < parameters.length; i++)
+        {
+            Object parameter = parameters[i];
+
+            if (parameter == null)
+            {
+                statement.setNull(i + 1, Types.VARCHAR);
+            } else if (parameter instanceof Enum)
+            {
+                statement.setString(i + 1, parameter.toString());
+            } else
+            {
+                statement.setObject(i + 1, parameter);
+            }
+        }
+    }
+
+    /**
+     * Adds an instance of IStorable to the database in a single round trip
+     *
+     * @param value Instance of IStorable to add to the database
+     * @return Primary key the database generated for the new row. Null if the
+     * row could not be inserted
+     */
+    @Override
+    public String insert(IStorable value)
+    {
+        ConnectionPool pool = getConnectionPool();
+        ManagedConnection connection = null;
+
+        try
+        {
+            connection = pool.borrow();
+
+            String id = insertRow(connection, value);
+
+            queryCache.invalidate(value.getTable().getDatabaseIdentifier());
+
+            return id;
+        } catch (SQLException ex)
+        {
+            handleFailure(pool, ex);
+        } finally
+        {
+            pool.release(connection);
+        }
+
+        return null;
+    }
+
+    /**
+     * Inserts a single row on a connection and reads back its generated key
+     *
+     * @param connection Connection to insert the row on
+     * @param value Instance of IStorable to add to the database
+     * @return Primary key the database generated for the new row. Null if no
+     * row was inserted
+     * @throws SQLException Exception thrown if the database rejects the row
+     */
+    static String insertRow(ManagedConnection connection, IStorable value)
+            throws SQLException
+    {
+        String update = value.getUpdate();
+        long start = System.nanoTime();
+        int rows = -1;
+
+        try
+        {
+            PreparedStatement statement = connection.prepareInsert(update);
+            statement.setQueryTimeout(DbConfig.QUERY_TIMEOUT_SECONDS);
+            bindParameters(statement, value.getParameters());
+
+            rows = statement.executeUpdate();
+
+            if (rows != 1)
+            {
+                return null;
+            }
+
+            try (ResultSet keys = statement.getGeneratedKeys())
+            {
+                return keys.next() ? keys.getString(1) : null;
+            }
+        } finally
+        {
+            recordStatement(Operation.INSERT, update, start, rows);
+        }
+    }
+
+    @Override
+    public UnitOfWork beginUnitOfWork() throws SQLException
+    {
+        ConnectionPool pool = getConnectionPool();
+
+        return new UnitOfWork(pool, pool.borrow(), queryCache);
+    }
+
+    /**
+     * Adds a collection of IStorable instances to the database at once. The
+     * rows are grouped by table (and update string), sent in JDBC batches of
+     * at most DbConfig.BATCH_SIZE rows and committed in a single transaction.
+     * Rows whose update can not be created (e.g. because they would violate a
+     * uniqueness check) are skipped and reported as failed. If the database
+     * rejects any row, the whole transaction is rolled back and every row is
+     * reported as failed
+     *
+     * @param values Instances of IStorable to add to the database
+     * @return Outcome for every row, in the order of the collection
+     */
+    @Override
+    public BatchResult insertAll(Collection<? extends IStorable> values)
+    {
+        List<IStorable> rows = new ArrayList<>(values);
+        BatchResult result = new BatchResult(rows.size());
+
+        //Indices of the rows to insert, grouped by table and update string
+        Map<DatabaseTables, Map<String, List<Integer>>> groups
+                = new EnumMap<>(DatabaseTables.class);
+        List<Integer> pending = new ArrayList<>();
+
+        for (int i = 0; i < rows.size(); i++)
+        {
+            IStorable row = rows.get(i);
+            String update;
+
+            try
+            {
+                update = row.getUpdate();
+            } catch (IllegalArgumentException ex)
+            {
+                result.setFailure(i, ex.getMessage());
+                continue;
+            }
+
+            Map<String, List<Integer>> updates = groups.get(row.getTable());
+            if (updates == null)
+            {
+                updates = new LinkedHashMap<>();
+                groups.put(row.getTable(), updates);
+            }
+
+            List<Integer> indices = updates.get(update);
+            if (indices == null)
+            {
+                indices = new ArrayList<>();
+                updates.put(update, indices);
+            }
+
+            indices.add(i);
+            pending.add(i);
+        }
+
+        if (pending.isEmpty())
+        {
+            return result;
+        }
+
+        ConnectionPool pool = getConnectionPool();
+        ManagedConnection connection = null;
+
+        try
+        {
+            connection = pool.borrow();
+            connection.getConnection().setAutoCommit(false);
+
+            for (Map<String, List<Integer>> updates : groups.values())
+            {
+                for (Map.Entry<String, List<Integer>> entry
+                        : updates.entrySet())
+                {
+                    insertBatch(connection, entry.getKey(), entry.getValue(),
+                            rows, result);
+                }
+            }
+
+            connection.getConnection().commit();
+
+            for (DatabaseTables table : groups.keySet())
+            {
+                queryCache.invalidate(table.getDatabaseIdentifier());
+            }
+        } catch (SQLException ex)
+        {
+            //Any row which did not fail itself was rolled back along with it
+            for (int index : pending)
+            {
+                if (result.getFailure(index) == null)
+                {
+                    result.setFailure(index, "Rolled back: " + ex.getMessage());
+                }
+            }
+
+            rollback(connection);
+            handleFailure(pool, ex);
+        } finally
+        {
+            pool.release(connection);
+        }
+
+        return result;
+    }
+
+    /**
+     * Inserts rows sharing the same update string in chunks of
+     * DbConfig.BATCH_SIZE, and records their generated IDs
+     *
+     * @param connection Connection to insert the rows on
+     * @param update Update string shared by the rows
+     * @param indices Indices of the rows to insert
+     * @param rows All rows in the batch
+     * @param result Result to record the outcome in
+     * @throws SQLException Exception thrown if the database rejects a row. The
+     * failing row is recorded in the result before it is thrown
+     */
+    private void insertBatch(ManagedConnection connection,
+            String update, List<Integer> indices, List<IStorable> rows,
+            BatchResult result) throws SQLException
+    {
+        PreparedStatement statement = connection.prepareInsert(update);
+        statement.setQueryTimeout(DbConfig.QUERY_TIMEOUT_SECONDS);
+
+        for (int start = 0; start < indices.size();
+                start += DbConfig.BATCH_SIZE)
+        {
+            List<Integer> chunk = indices.subList(start,
+                    Math.min(start + DbConfig.BATCH_SIZE, indices.size()));
+
+            for (int index : chunk)
+            {
+                statement.clearParameters();
+                bindParameters(statement, rows.get(index).getParameters());
+                statement.addBatch();
+            }
+
+            long executeStart = System.nanoTime();
+            int inserted = -1;
+
+            try
+            {
+                statement.executeBatch();
+                inserted = chunk.size();
+            } catch (BatchUpdateException ex)
+            {
+                int[] counts = ex.getUpdateCounts();
+
+                //The driver either stops at the failing row, or reports it
+                //as EXECUTE_FAILED and carries on
+                for (int i = 0; i < chunk.size(); i++)
+                {
+                    if (i >= counts.length
+                            || counts[i] == Statement.EXECUTE_FAILED)
+                    {
+                        result.setFailure(chunk.get(i), ex.getMessage());
+                        break;
+                    }
+                }
+
+                throw ex;
+            } finally
+            {
+                //The statement is cached, so never leave rows behind in it
+                statement.clearBatch();
+                recordStatement(Operation.BATCH_INSERT, update, executeStart,
+                        inserted);
+            }
+
+            try (ResultSet keys = statement.getGeneratedKeys())
+            {
+                for (int index : chunk)
+                {
+                    if (!keys.next())
+                    {
+                        break;
+                    }
+
+                    result.setId(index, keys.getString(1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Records a finished statement in the metrics and, if it was slow, in the
+     * slow query log
+     *
+     * @param operation Kind of statement
+     * @param sql SQL of the statement
+     * @param startNanos Value of System.nanoTime when the statement started
+     * @param rows Amount of rows returned or affected. -1 if the statement
+     * failed
+     */
+    static void recordStatement(Operation operation, String sql,
+            long startNanos, int rows)
+    {
+        long nanos = System.nanoTime() - startNanos;
+
+        DbMetrics.record(operation, sql, nanos, rows);
+        SlowQueryLog.record(sql, nanos, rows);
+    }
+
+    /**
+     * Logs a failed query or update and reports it to the pool, so a lost
+     * database is noticed. Queries which were cancelled through a
+     * CancellationToken are not logged
+     *
+     * @param pool Pool the failing connection was borrowed from
+     * @param ex Exception the query or update failed with
+     * @throws DatabaseUnavailableException Exception thrown if the failure
+     * was the connection to the database being lost, so the caller does not
+     * mistake it for an empty result
+     */
+    private static void handleFailure(ConnectionPool pool, SQLException ex)
+    {
+        //A cancelled query failing is expected, as nobody wants its results
+        if (!CancellationToken.isCurrentCancelled())
+        {
+            System.err.println("SQL exception: " + ex.getMessage());
+        }
+
+        if (pool.reportFailure(ex))
+        {
+            throw new DatabaseUnavailableException("The connection to the "
+                    + "database was lost: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Creates an empty row set, returned in place of the results of a failed
+     * query so callers can iterate it like any other
+     *
+     * @return Empty row set. Null if no row set could be created
+     */
+    private ResultSet createEmptyRowSet()
+    {
+        try
+        {
+            return rowSetFactory.createCachedRowSet();
+        } catch (SQLException ex)
+        {
+            System.err.println("SQL exception: " + ex.getMessage());
+
+            return null;
+        }
+    }
+
+    /**
+     * Rolls back the current transaction on a connection, logging rather than
+     * throwing any failure
+     *
+     * @param connection Connection to roll back. May be null
+     */
+    private void rollback(ManagedConnection connection)
+    {
+        if (connection == null)
+        {
+            return;
+        }
+
+        try
+        {
+            connection.getConnection().rollback();
+        } catch (SQLException ex)
+        {
+            System.err.println("SQL exception: " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package corendonlmsv2.connectivity;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in buckets from one microsecond up to about half a minute,
+ * so percentiles can be estimated in constant memory without locking. Every
+ * power of two is split into four buckets, so an estimated percentile (the
+ * upper bound of the bucket it falls in) is at most 25% above the actual value
+ *
+ * @author Emile Pels
+ */
+class LatencyHistogram
+{
+
+    /**
+     * Amount of buckets each power of two is split into
+     */
+    private static final int SUB_BUCKETS = 4;
+
+    /**
+     * Amount of buckets. The last bucket holds everything longer than about
+     * half a minute
+     */
+    private static final int BUCKET_COUNT = 97;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong count = new AtomicLong(),
+            totalNanos = new AtomicLong(),
+            maxNanos = new AtomicLong();
+
+    /**
+     * Adds a duration to the histogram
+     *
+     * @param nanos Duration in nanoseconds
+     */
+    void record(long nanos)
+    {
+        buckets.incrementAndGet(getBucket(Math.max(0, nanos / 1000)));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+
+        long max;
+        while (nanos > (max = maxNanos.get())
+                && !maxNanos.compareAndSet(max, nanos))
+        {
+            //Retry until the maximum is updated or no longer exceeded
+        }
+    }
+
+    /**
+     * Gets the amount of recorded durations
+     *
+     * @return Amount of recorded durations
+     */
+    long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Gets the average recorded duration in milliseconds
+     *
+     * @return Average recorded duration in milliseconds. 0 if nothing was
+     * recorded
+     */
+    double getAverageMillis()
+    {
+        long recorded = count.get();
+
+        return recorded == 0
+                ? 0 : totalNanos.get() / (double) recorded / 1000000;
+    }
+
+    /**
+     * Gets the longest recorded duration in milliseconds
+     *
+     * @return Longest recorded duration in milliseconds
+     */
+    double getMaxMillis()
+    {
+        return maxNanos.get() / 1000000d;
+    }
+
+    /**
+     * Estimates a percentile of the recorded durations
+     *
+     * @param percentile Percentile to estimate, between 0 and 1
+     * @return Estimated percentile in milliseconds. 0 if nothing was recorded
+     */
+    double getPercentileMillis(double percentile)
+    {
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT];
+
+        //Copy first, so the buckets add up while others keep recording
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        if (total == 0)
+        {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += counts[i];
+
+            if (seen >= rank)
+            {
+                //Never report more than was actually measured
+                return Math.min(getUpperBound(i) / 1000d, getMaxMillis());
+            }
+        }
+
+        return getMaxMillis();
+    }
+
+    /**
+     * Forgets every recorded duration
+     */
+    void reset()
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            buckets.set(i, 0);
+        }
+
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * Gets the bucket a duration falls in
+     *
+     * @param micros Duration in microseconds
+     * @return Index of the bucket
+     */
+    private static int getBucket(long micros)
+    {
+        if (micros < SUB_BUCKETS)
+        {
+            return (int) micros;
+        }
+
+        //Durations in [2^exponent, 2^(exponent + 1)) share four buckets
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >> (exponent - 2)) & (SUB_BUCKETS - 1);
+
+        return Math.min(BUCKET_COUNT - 1,
+                (exponent - 1) * SUB_BUCKETS + subBucket);
+    }
+
+    /**
+     * Gets the (exclusive) upper bound of a bucket
+     *
+     * @param bucket Index of the bucket
+     * @return Upper bound of the bucket in microseconds
+     */
+    private static long getUpperBound(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket + 1;
+        }
+
+        int exponent = bucket / SUB_BUCKETS + 1;
+        int subBucket = bucket % SUB_BUCKETS;
+
+        return (1L << exponent) + (subBucket + 1) * (1L << (exponent - 2));
+    }
+}
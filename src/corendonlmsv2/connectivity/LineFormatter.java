@@ -0,0 +1,27 @@
+package corendonlmsv2.connectivity;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+/**
+ * Formats every log entry as a single line, prefixed with its time. Used for
+ * the database layer's own log files
+ *
+ * @author Emile Pels
+ */
+class LineFormatter extends Formatter
+{
+
+    private final SimpleDateFormat dateFormat
+            = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+    @Override
+    public synchronized String format(LogRecord record)
+    {
+        return String.format("%s | %s%n",
+                dateFormat.format(new Date(record.getMillis())),
+                formatMessage(record));
+    }
+}
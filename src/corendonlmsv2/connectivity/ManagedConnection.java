@@ -0,0 +1,184 @@
+package corendonlmsv2.connectivity;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Wraps a physical database connection owned by a ConnectionPool, keeps track
+ * of when it was last handed out and caches its prepared statements
+ *
+ * @author Emile Pels
+ */
+class ManagedConnection
+{
+
+    /**
+     * Prefix for the cache keys of statements returning generated keys
+     */
+    private static final String GENERATED_KEYS_PREFIX = "keys:";
+
+    /**
+     * Underlying JDBC connection
+     */
+    private final Connection connection;
+
+    /**
+     * Statements prepared on this connection, reused across borrowers
+     */
+    private final StatementCache statements;
+
+    /**
+     * Time in milliseconds at which this connection was last borrowed or
+     * returned
+     */
+    private volatile long lastUsed;
+
+    /**
+     * Initializes a new ManagedConnection
+     *
+     * @param connection JDBC connection to wrap
+     * @param statementCacheSize Maximum amount of prepared statements to keep
+     * open on this connection
+     */
+    ManagedConnection(Connection connection, int statementCacheSize)
+    {
+        this.connection = connection;
+        this.statements = new StatementCache(statementCacheSize);
+        touch();
+    }
+
+    /**
+     * Gets the underlying JDBC connection
+     *
+     * @return Underlying JDBC connection
+     */
+    Connection getConnection()
+    {
+        return connection;
+    }
+
+    /**
+     * Gets a prepared statement for the SQL, reusing a previously prepared
+     * statement when possible. The returned statement is owned by the cache
+     * and must not be closed by the caller, but the result sets it produces
+     * must be
+     *
+     * @param sql SQL with ? placeholders for its parameters
+     * @return Prepared statement for the SQL
+     * @throws SQLException Exception thrown if the statement can not be
+     * prepared
+     */
+    PreparedStatement prepare(String sql) throws SQLException
+    {
+        PreparedStatement statement = statements.get(sql);
+
+        if (statement == null || statement.isClosed())
+        {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        } else
+        {
+            statement.clearParameters();
+        }
+
+        return statement;
+    }
+
+    /**
+     * Gets a prepared statement for an insert whose generated keys should be
+     * returned, reusing a previously prepared statement when possible. The
+     * same ownership rules as for prepare apply
+     *
+     * @param sql SQL with ? placeholders for its parameters
+     * @return Prepared statement for the SQL, returning generated keys
+     * @throws SQLException Exception thrown if the statement can not be
+     * prepared
+     */
+    PreparedStatement prepareInsert(String sql) throws SQLException
+    {
+        //Keyed separately, as the statement is prepared differently
+        String key = GENERATED_KEYS_PREFIX + sql;
+        PreparedStatement statement = statements.get(key);
+
+        if (statement == null || statement.isClosed())
+        {
+            statement = connection.prepareStatement(sql,
+                    Statement.RETURN_GENERATED_KEYS);
+            statements.put(key, statement);
+        } else
+        {
+            statement.clearParameters();
+        }
+
+        return statement;
+    }
+
+    /**
+     * Gets the time in milliseconds at which this connection was last used
+     *
+     * @return Time in milliseconds at which this connection was last used
+     */
+    long getLastUsed()
+    {
+        return lastUsed;
+    }
+
+    /**
+     * Marks this connection as used just now
+     */
+    void touch()
+    {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Checks whether the connection is still usable
+     *
+     * @param timeoutSeconds Amount of seconds the driver gets to validate the
+     * connection
+     * @return Boolean indicating whether the connection is still usable
+     */
+    boolean isValid(int timeoutSeconds)
+    {
+        try
+        {
+            return connection.isValid(timeoutSeconds);
+        } catch (SQLException ex)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Restores the connection's defaults so the next borrower gets a clean
+     * connection
+     *
+     * @throws SQLException Exception thrown if the connection is broken
+     */
+    void reset() throws SQLException
+    {
+        if (!connection.getAutoCommit())
+        {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Closes the underlying connection
+     */
+    void close()
+    {
+        statements.closeAll();
+
+        try
+        {
+            connection.close();
+        } catch (SQLException ex)
+        {
+            System.err.println("SQL exception: " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package corendonlmsv2.connectivity;
+
+/**
+ * Database running on a MySQL server, accessed through MySQL Connector/J
+ *
+ * @author Emile Pels
+ */
+public class MySqlDatabase extends JdbcDatabase
+{
+
+    /**
+     * Fully qualified name of the MySQL JDBC driver's class
+     */
+    private static final String DRIVER_CLASS_NAME = "com.mysql.jdbc.Driver";
+
+    /**
+     * Initializes a new MySqlDatabase
+     *
+     * @param url URL for the database connections
+     * @param username Username for the database connections
+     * @param password Password for the database connections
+     */
+    public MySqlDatabase(String url, String username, String password)
+    {
+        super(DRIVER_CLASS_NAME, url, username, password);
+    }
+
+    @Override
+    public String getName()
+    {
+        return "MySQL";
+    }
+}
@@ -0,0 +1,100 @@
+package corendonlmsv2.connectivity;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of rows read through a PageQuery, along with the keys of its first
+ * and last row. The next and previous pages are read relative to those keys
+ * rather than by offset, so rows inserted or deleted in the meantime never
+ * shift rows between pages
+ *
+ * @param <T> Type of the objects the rows were converted into
+ * @author Emile Pels
+ */
+public class Page<T>
+{
+
+    private final List<T> items;
+    private final RowKey firstKey, lastKey;
+    private final boolean hasNext, hasPrevious;
+
+    /**
+     * Initializes a new Page
+     *
+     * @param items Rows on the page, in display order
+     * @param firstKey Key of the first row. Null if the page is empty
+     * @param lastKey Key of the last row. Null if the page is empty
+     * @param hasNext Indicates whether rows follow this page
+     * @param hasPrevious Indicates whether rows precede this page
+     */
+    Page(List<T> items, RowKey firstKey, RowKey lastKey, boolean hasNext,
+            boolean hasPrevious)
+    {
+        this.items = Collections.unmodifiableList(items);
+        this.firstKey = firstKey;
+        this.lastKey = lastKey;
+        this.hasNext = hasNext;
+        this.hasPrevious = hasPrevious;
+    }
+
+    /**
+     * Gets the rows on this page
+     *
+     * @return Rows on this page, in display order
+     */
+    public List<T> getItems()
+    {
+        return items;
+    }
+
+    /**
+     * Gets the key of the first row on this page
+     *
+     * @return Key of the first row. Null if the page is empty
+     */
+    public RowKey getFirstKey()
+    {
+        return firstKey;
+    }
+
+    /**
+     * Gets the key of the last row on this page
+     *
+     * @return Key of the last row. Null if the page is empty
+     */
+    public RowKey getLastKey()
+    {
+        return lastKey;
+    }
+
+    /**
+     * Gets whether rows follow this page
+     *
+     * @return Boolean indicating whether rows follow this page
+     */
+    public boolean hasNext()
+    {
+        return hasNext;
+    }
+
+    /**
+     * Gets whether rows precede this page
+     *
+     * @return Boolean indicating whether rows precede this page
+     */
+    public boolean hasPrevious()
+    {
+        return hasPrevious;
+    }
+
+    /**
+     * Gets whether this page contains no rows
+     *
+     * @return Boolean indicating whether this page contains no rows
+     */
+    public boolean isEmpty()
+    {
+        return items.isEmpty();
+    }
+}
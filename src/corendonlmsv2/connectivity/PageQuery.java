@@ -0,0 +1,738 @@
+package corendonlmsv2.connectivity;
+
+import corendonlmsv2.model.DatabaseTables;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a table one page at a time using keyset pagination: every page is
+ * ordered by the table's primary key and continues after (or before) the key
+ * of the last page's boundary row, instead of skipping an OFFSET. The
+ * database can seek straight to the boundary through the primary key index,
+ * so every page costs the same no matter how deep it is, and rows inserted
+ * while paging never cause a row to be skipped or shown twice. Rows may also
+ * be ordered by another column, in which case the primary key breaks ties and
+ * pages continue after the boundary row's value and key together.
+ *
+ * Pages and counts are read through the query cache, so paging back to a
+ * page which was read before (also by an earlier copy of the same query)
+ * costs no round trip until the table is written to.
+ *
+ * Instances are immutable; every setter returns a copy with the setting
+ * changed
+ *
+ * @param <T> Type of the objects the rows are converted into
+ * @author Emile Pels
+ */
+public final class PageQuery<T>
+{
+
+    /**
+     * Reads the amount of rows counted by count. A single instance, so the
+     * query cache recognizes repeated counts
+     */
+    private static final RowMapper<Integer> COUNT_MAPPER
+            = new RowMapper<Integer>()
+            {
+                @Override
+                public Integer mapRow(ResultSet results) throws SQLException
+                {
+                    return results.getInt("row_count");
+                }
+            };
+
+    /**
+     * Name of the column a key query given to whereKeyIn must select the
+     * primary keys as, so it never clashes with a column of the table
+     */
+    public static final String KEY_COLUMN = "restricted_key";
+
+    private final DatabaseTables table;
+    private final RowMapper<T> mapper;
+    private final String filterColumn;
+    private final Object filterValue;
+    private final String keyQuery;
+    private final Object[] keyParameters;
+    private final String searchText;
+    private final String[] searchColumns;
+    private final Object[] searchKeys;
+    private final String orderColumn;
+    private final boolean descending;
+    private final int pageSize;
+
+    /**
+     * Initializes a new PageQuery reading every row of a table in ascending
+     * order of its primary key, DbConfig.PAGE_SIZE rows at a time
+     *
+     * @param table Table to read
+     * @param mapper Converts each row into an object
+     */
+    public PageQuery(DatabaseTables table, RowMapper<T> mapper)
+    {
+        this(table, mapper, null, null, null, null, null, null, null, null,
+                false, DbConfig.PAGE_SIZE);
+    }
+
+    /**
+     * Initializes a new PageQuery
+     *
+     * @param table Table to read
+     * @param mapper Converts each row into an object
+     * @param filterColumn Column rows must match. Null to read every row
+     * @param filterValue Value the filter column must be equal to
+     * @param keyQuery Query selecting the primary keys rows must have. Null
+     * to read rows with any primary key
+     * @param keyParameters Values to bind to the key query's placeholders
+     * @param searchText Text one of the search columns must contain. Null to
+     * not search
+     * @param searchColumns Columns searched for the search text
+     * @param searchKeys Primary keys of rows which match the search besides
+     * the rows containing the search text. Null for none
+     * @param orderColumn Column the rows are ordered on before their primary
+     * key. Null to order on the primary key alone
+     * @param descending Indicates whether the rows are ordered from the
+     * highest value down
+     * @param pageSize Maximum amount of rows per page
+     */
+    private PageQuery(DatabaseTables table, RowMapper<T> mapper,
+            String filterColumn, Object filterValue, String keyQuery,
+            Object[] keyParameters, String searchText, String[] searchColumns,
+            Object[] searchKeys, String orderColumn, boolean descending,
+            int pageSize)
+    {
+        this.table = table;
+        this.mapper = mapper;
+        this.filterColumn = filterColumn;
+        this.filterValue = filterValue;
+        this.keyQuery = keyQuery;
+        this.keyParameters = keyParameters;
+        this.searchText = searchText;
+        this.searchColumns = searchColumns;
+        this.searchKeys = searchKeys;
+        this.orderColumn = orderColumn;
+        this.descending = descending;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Gets a copy of this query which only reads rows with a value in a
+     * column
+     *
+     * @param column Column rows must match
+     * @param value Value the column must be equal to
+     * @return Copy of this query with the filter set
+     * @throws IllegalArgumentException Exception thrown if the column does not
+     * belong to the table
+     */
+    public PageQuery<T> where(String column, Object value)
+            throws IllegalArgumentException
+    {
+        validateColumns(column);
+
+        return new PageQuery<>(table, mapper, column, value, keyQuery,
+                keyParameters, searchText, searchColumns, searchKeys,
+                orderColumn, descending, pageSize);
+    }
+
+    /**
+     * Gets a copy of this query which only reads rows whose primary key is
+     * selected by another query, such as a lookup in an index table. The
+     * table is joined to the key query's results, so the key query runs once
+     * and every row is then read through the primary key, rather than the
+     * key query being evaluated for every row of the table. The database
+     * resolves the keys, so they are never transferred
+     *
+     * @param query SQL query selecting a single column of distinct primary
+     * keys named KEY_COLUMN, with a ? placeholder for each parameter. Only
+     * constant SQL may be passed, as it is not validated
+     * @param parameters Values to bind to the query's placeholders, in order
+     * @return Copy of this query with the key restriction set
+     */
+    public PageQuery<T> whereKeyIn(String query, Object... parameters)
+    {
+        return new PageQuery<>(table, mapper, filterColumn, filterValue,
+                query, parameters.clone(), searchText, searchColumns,
+                searchKeys, orderColumn, descending, pageSize);
+    }
+
+    /**
+     * Gets a copy of this query which only reads rows where at least one of
+     * the columns contains a text. The search runs in the database, so only
+     * matching rows are transferred. The text is matched literally, so
+     * characters such as % and _ are no wildcards
+     *
+     * @param text Text to search for. Null or empty to stop searching
+     * @param columns Columns to search. If none are specified, every column is
+     * searched
+     * @return Copy of this query with the search set
+     * @throws IllegalArgumentException Exception thrown if a column does not
+     * belong to the table
+     */
+    public PageQuery<T> search(String text, String... columns)
+            throws IllegalArgumentException
+    {
+        if (text == null || text.isEmpty())
+        {
+            return new PageQuery<>(table, mapper, filterColumn, filterValue,
+                    keyQuery, keyParameters, null, null, null, orderColumn,
+                    descending, pageSize);
+        }
+
+        if (columns == null || columns.length == 0)
+        {
+            columns = table.getColumns();
+        }
+
+        validateColumns(columns);
+
+        return new PageQuery<>(table, mapper, filterColumn, filterValue,
+                keyQuery, keyParameters, text, columns.clone(), null,
+                orderColumn, descending, pageSize);
+    }
+
+    /**
+     * Gets a copy of this query whose search also matches the rows with one
+     * of several primary keys, such as the matches of an in-memory index which
+     * the literal search would miss. The rows containing the text are still
+     * matched as well
+     *
+     * @param keys Primary keys of the rows to match besides. None to only
+     * match the rows containing the text
+     * @return Copy of this query with the extra keys set
+     * @throws IllegalStateException Exception thrown if this query does not
+     * search
+     */
+    public PageQuery<T> orKeyIn(Object... keys) throws IllegalStateException
+    {
+        if (searchText == null)
+        {
+            throw new IllegalStateException("Only a query which searches can "
+                    + "match extra keys.");
+        }
+
+        return new PageQuery<>(table, mapper, filterColumn, filterValue,
+                keyQuery, keyParameters, searchText, searchColumns,
+                keys.length == 0 ? null : keys.clone(), orderColumn,
+                descending, pageSize);
+    }
+
+    /**
+     * Gets a copy of this query which orders the rows from the highest
+     * primary key down, so the newest rows come first
+     *
+     * @return Copy of this query in descending order
+     */
+    public PageQuery<T> descending()
+    {
+        return new PageQuery<>(table, mapper, filterColumn, filterValue,
+                keyQuery, keyParameters, searchText, searchColumns,
+                searchKeys, orderColumn, true, pageSize);
+    }
+
+    /**
+     * Gets a copy of this query which orders the rows on a column, and on
+     * their primary key where the column holds the same value. NULL comes
+     * before every other value, as it does in MySQL and H2. Unless the column
+     * is indexed, the database has to sort the matching rows for every page
+     *
+     * @param column Column to order the rows on
+     * @param descending Indicates whether the rows are ordered from the
+     * highest value down
+     * @return Copy of this query in the order of the column
+     * @throws IllegalArgumentException Exception thrown if the column does not
+     * belong to the table
+     */
+    public PageQuery<T> orderBy(String column, boolean descending)
+            throws IllegalArgumentException
+    {
+        validateColumns(column);
+
+        return new PageQuery<>(table, mapper, filterColumn, filterValue,
+                keyQuery, keyParameters, searchText, searchColumns,
+                searchKeys, column.equals(table.getPrimaryKey()) ? null
+                        : column, descending, pageSize);
+    }
+
+    /**
+     * Gets a copy of this query with another page size
+     *
+     * @param size Maximum amount of rows per page
+     * @return Copy of this query with the page size set
+     */
+    public PageQuery<T> pageSize(int size)
+    {
+        if (size < 1)
+        {
+            throw new IllegalArgumentException("The page size must be at least"
+                    + " 1.");
+        }
+
+        return new PageQuery<>(table, mapper, filterColumn, filterValue,
+                keyQuery, keyParameters, searchText, searchColumns,
+                searchKeys, orderColumn, descending, size);
+    }
+
+    /**
+     * Gets the maximum amount of rows per page
+     *
+     * @return Maximum amount of rows per page
+     */
+    public int getPageSize()
+    {
+        return pageSize;
+    }
+
+    /**
+     * Reads the first page
+     *
+     * @return First page. Empty if there are no rows or the query failed
+     */
+    public Page<T> first()
+    {
+        return fetch(null, true, 0);
+    }
+
+    /**
+     * Reads the page following a page
+     *
+     * @param page Page read earlier through this query
+     * @return Page following the page. Empty if there are no more rows or
+     * the query failed
+     */
+    public Page<T> next(Page<T> page)
+    {
+        if (page.isEmpty())
+        {
+            return page;
+        }
+
+        return fetch(page.getLastKey(), true, 0);
+    }
+
+    /**
+     * Reads the page preceding a page
+     *
+     * @param page Page read earlier through this query
+     * @return Page preceding the page. Empty if there are no earlier rows or
+     * the query failed
+     */
+    public Page<T> previous(Page<T> page)
+    {
+        if (page.isEmpty())
+        {
+            return page;
+        }
+
+        return fetch(page.getFirstKey(), false, 0);
+    }
+
+    /**
+     * Reads the page following a row's key, for when the key is known but
+     * the page it ended was not kept
+     *
+     * @param key Key of the row the page starts after, in display order, as
+     * read through a query with the same order
+     * @return Page following the key. Empty if there are no more rows or the
+     * query failed
+     */
+    public Page<T> after(RowKey key)
+    {
+        return fetch(key, true, 0);
+    }
+
+    /**
+     * Reads the page starting at a row number. The database has to step over
+     * every preceding row, so this is only meant for jumping to a row whose
+     * preceding page is unknown; use next or after to continue from there
+     *
+     * @param offset Number of the page's first row, starting at 0
+     * @return Page starting at the row. Empty if there are no such rows or the
+     * query failed
+     */
+    public Page<T> at(int offset)
+    {
+        if (offset < 0)
+        {
+            throw new IllegalArgumentException("The offset can not be "
+                    + "negative.");
+        }
+
+        return fetch(null, true, offset);
+    }
+
+    /**
+     * Counts the rows this query reads
+     *
+     * @return Amount of rows this query reads. -1 if the query failed
+     */
+    public int count()
+    {
+        StringBuilder builder = new StringBuilder("SELECT COUNT(*) AS "
+                + "row_count");
+        List<Object> parameters = new ArrayList<>();
+
+        appendFrom(builder, parameters);
+        appendConditions(builder, parameters, null, true);
+
+        List<Integer> counts = DbManager.query(getOptions(),
+                builder.toString(), COUNT_MAPPER, parameters.toArray());
+
+        return counts.isEmpty() ? -1 : counts.get(0);
+    }
+
+    /**
+     * Reads a page adjacent to a boundary key
+     *
+     * @param anchor Key of the row the page starts after (forward) or ends
+     * before (backward). Null to start at the first row
+     * @param forward Indicates whether the page follows the anchor in display
+     * order
+     * @param offset Amount of rows to skip before the page starts
+     * @return Page adjacent to the anchor, in display order
+     */
+    private Page<T> fetch(RowKey anchor, boolean forward, int offset)
+    {
+        //Reading backward walks the index the other way and flips the page
+        boolean ascending = forward != descending;
+        String primaryKey = table.getPrimaryKey();
+
+        StringBuilder builder = new StringBuilder("SELECT ")
+                .append(table.getDatabaseIdentifier())
+                .append(".*");
+        List<Object> parameters = new ArrayList<>();
+
+        appendFrom(builder, parameters);
+        appendConditions(builder, parameters, anchor, ascending);
+
+        //One extra row tells whether another page follows, without a COUNT
+        builder.append(" ORDER BY ");
+
+        if (orderColumn != null)
+        {
+            builder.append(orderColumn)
+                    .append(ascending ? " ASC, " : " DESC, ");
+        }
+
+        builder.append(primaryKey)
+                .append(ascending ? " ASC" : " DESC")
+                .append(" LIMIT ?");
+        parameters.add(pageSize + 1);
+
+        if (offset > 0)
+        {
+            builder.append(" OFFSET ?");
+            parameters.add(offset);
+        }
+
+        List<Map.Entry<RowKey, T>> rows = DbManager.query(getOptions(),
+                builder.toString(), new KeyedMapper<>(primaryKey, orderColumn,
+                        mapper), parameters.toArray());
+        List<T> items = new ArrayList<>();
+        List<RowKey> keys = new ArrayList<>();
+
+        for (Map.Entry<RowKey, T> row : rows)
+        {
+            keys.add(row.getKey());
+            items.add(row.getValue());
+        }
+
+        boolean more = items.size() > pageSize;
+
+        if (more)
+        {
+            items.remove(pageSize);
+            keys.remove(pageSize);
+        }
+
+        if (!forward)
+        {
+            Collections.reverse(items);
+            Collections.reverse(keys);
+        }
+
+        RowKey firstKey = keys.isEmpty() ? null : keys.get(0);
+        RowKey lastKey = keys.isEmpty() ? null : keys.get(keys.size() - 1);
+
+        return forward
+                ? new Page<>(items, firstKey, lastKey, more,
+                        anchor != null || offset > 0)
+                : new Page<>(items, firstKey, lastKey, true, more);
+    }
+
+    /**
+     * Appends the FROM clause to a statement, joining the table to the key
+     * query's results if the keys are restricted
+     *
+     * @param builder Statement to append to
+     * @param parameters Parameters of the statement, to add the key query's
+     * parameters to
+     */
+    private void appendFrom(StringBuilder builder, List<Object> parameters)
+    {
+        builder.append(" FROM ")
+                .append(table.getDatabaseIdentifier());
+
+        if (keyQuery != null)
+        {
+            builder.append(" INNER JOIN (")
+                    .append(keyQuery)
+                    .append(") AS restricted_keys ON ")
+                    .append(table.getPrimaryKey())
+                    .append(" = restricted_keys.")
+                    .append(KEY_COLUMN);
+            parameters.addAll(Arrays.asList(keyParameters));
+        }
+    }
+
+    /**
+     * Appends the WHERE clause for the filter, the search and the boundary
+     * key to a statement
+     *
+     * @param builder Statement to append to
+     * @param parameters Parameters of the statement, to add the clause's
+     * parameters to
+     * @param anchor Key of the row rows must follow. Null for no boundary
+     * @param ascending Indicates whether rows must come after the anchor in
+     * ascending order (rather than before it)
+     */
+    private void appendConditions(StringBuilder builder,
+            List<Object> parameters, RowKey anchor, boolean ascending)
+    {
+        String conjunction = " WHERE ";
+
+        if (filterColumn != null)
+        {
+            builder.append(conjunction)
+                    .append(filterColumn)
+                    .append(" = ?");
+            parameters.add(filterValue);
+            conjunction = " AND ";
+        }
+
+        if (searchText != null)
+        {
+            builder.append(conjunction)
+                    .append("(");
+
+            for (int i = 0; i < searchColumns.length; i++)
+            {
+                builder.append(i == 0 ? "" : " OR ")
+                        .append(searchColumns[i])
+                        .append(" LIKE ?")
+                        .append(DbManager.LIKE_ESCAPE);
+                parameters.add(DbManager.containsPattern(searchText));
+            }
+
+            if (searchKeys != null)
+            {
+                builder.append(" OR ")
+                        .append(table.getPrimaryKey())
+                        .append(" IN (");
+
+                for (int i = 0; i < searchKeys.length; i++)
+                {
+                    builder.append(i == 0 ? "?" : ", ?");
+                }
+
+                builder.append(")");
+                parameters.addAll(Arrays.asList(searchKeys));
+            }
+
+            builder.append(")");
+            conjunction = " AND ";
+        }
+
+        if (anchor != null)
+        {
+            builder.append(conjunction);
+            appendAnchor(builder, parameters, anchor, ascending);
+        }
+    }
+
+    /**
+     * Appends the condition for rows following a boundary row to a statement.
+     * Rows are compared on the order column first and on their primary key
+     * where it holds the same value; NULL comes before every other value
+     *
+     * @param builder Statement to append to
+     * @param parameters Parameters of the statement, to add the condition's
+     * parameters to
+     * @param anchor Key of the row rows must follow
+     * @param ascending Indicates whether rows must come after the anchor in
+     * ascending order (rather than before it)
+     */
+    private void appendAnchor(StringBuilder builder, List<Object> parameters,
+            RowKey anchor, boolean ascending)
+    {
+        String primaryKey = table.getPrimaryKey();
+        String comparison = ascending ? " > ?" : " < ?";
+
+        if (orderColumn == null)
+        {
+            builder.append(primaryKey)
+                    .append(comparison);
+            parameters.add(anchor.getPrimaryKey());
+
+            return;
+        }
+
+        Object value = anchor.getSortValue();
+
+        if (value == null)
+        {
+            builder.append("((")
+                    .append(orderColumn)
+                    .append(" IS NULL AND ")
+                    .append(primaryKey)
+                    .append(comparison)
+                    .append(")");
+
+            if (ascending)
+            {
+                builder.append(" OR ")
+                        .append(orderColumn)
+                        .append(" IS NOT NULL");
+            }
+
+            builder.append(")");
+            parameters.add(anchor.getPrimaryKey());
+
+            return;
+        }
+
+        builder.append("(")
+                .append(orderColumn)
+                .append(comparison)
+                .append(" OR (")
+                .append(orderColumn)
+                .append(" = ? AND ")
+                .append(primaryKey)
+                .append(comparison)
+                .append(")");
+
+        if (!ascending)
+        {
+            builder.append(" OR ")
+                    .append(orderColumn)
+                    .append(" IS NULL");
+        }
+
+        builder.append(")");
+        parameters.add(value);
+        parameters.add(value);
+        parameters.add(anchor.getPrimaryKey());
+    }
+
+    /**
+     * Gets the options for this query's statements
+     *
+     * @return Options with the search timeout if this query searches, else
+     * the default options
+     */
+    private QueryOptions getOptions()
+    {
+        //A LIKE with a leading wildcard can not use an index
+        return searchText == null ? QueryOptions.DEFAULT
+                : QueryOptions.withTimeout(DbConfig.SEARCH_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Checks whether columns belong to the table, so only known column names
+     * are ever formatted into SQL
+     *
+     * @param columns Columns to check
+     * @throws IllegalArgumentException Exception thrown if a column does not
+     * belong to the table
+     */
+    private void validateColumns(String... columns)
+            throws IllegalArgumentException
+    {
+        for (String column : columns)
+        {
+            if (!table.hasColumn(column))
+            {
+                throw new IllegalArgumentException(String.format("The column"
+                        + " %s does not belong to table %s.", column,
+                        table.getDatabaseIdentifier()));
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("PageQuery [table=%s, filter=%s, search=%s, "
+                + "order=%s, descending=%b, pageSize=%d]",
+                table.getDatabaseIdentifier(), filterColumn, searchText,
+                orderColumn, descending, pageSize);
+    }
+
+    /**
+     * Reads a row's key along with the object the row is converted into.
+     * Mappers are equal when they read the same key through equal mappers, so
+     * pages read by different copies of a query share their cached results
+     *
+     * @param <T> Type of the objects the rows are converted into
+     */
+    private static final class KeyedMapper<T>
+            implements RowMapper<Map.Entry<RowKey, T>>
+    {
+
+        private final String primaryKey, orderColumn;
+        private final RowMapper<T> mapper;
+
+        /**
+         * Initializes a new KeyedMapper
+         *
+         * @param primaryKey Column holding the primary key
+         * @param orderColumn Column the rows are ordered on before their
+         * primary key. Null if they are ordered on the primary key alone
+         * @param mapper Converts each row into an object
+         */
+        private KeyedMapper(String primaryKey, String orderColumn,
+                RowMapper<T> mapper)
+        {
+            this.primaryKey = primaryKey;
+            this.orderColumn = orderColumn;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public Map.Entry<RowKey, T> mapRow(ResultSet results)
+                throws SQLException
+        {
+            return new AbstractMap.SimpleImmutableEntry<>(new RowKey(
+                    orderColumn == null ? null : results.getObject(orderColumn),
+                    results.getLong(primaryKey)), mapper.mapRow(results));
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (!(other instanceof KeyedMapper))
+            {
+                return false;
+            }
+
+            KeyedMapper<?> keyed = (KeyedMapper<?>) other;
+
+            return primaryKey.equals(keyed.primaryKey)
+                    && (orderColumn == null ? keyed.orderColumn == null
+                            : orderColumn.equals(keyed.orderColumn))
+                    && mapper.equals(keyed.mapper);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * (31 * primaryKey.hashCode() + (orderColumn == null ? 0
+                    : orderColumn.hashCode())) + mapper.hashCode();
+        }
+    }
+}
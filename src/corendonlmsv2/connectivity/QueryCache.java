@@ -0,0 +1,379 @@
+package corendonlmsv2.connectivity;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Read-through cache of query results, keyed by the query's SQL, its
+ * parameters and the way its rows are read. Every result remembers the tables
+ * its query read from; a write to one of those tables removes it, so a result
+ * is only served as long as this application did not change its tables.
+ * Results are also removed once they outlive DbConfig.QUERY_CACHE_TTL_MILLIS,
+ * which bounds how long changes made by other clients of the database go
+ * unnoticed, and the least recently used result is removed once the cache
+ * holds DbConfig.QUERY_CACHE_SIZE results. Results of more than
+ * DbConfig.QUERY_CACHE_MAX_ROWS rows are never cached.
+ *
+ * A query which starts before a write and finishes after it may have read
+ * either version of the rows, so its result is dropped rather than cached
+ *
+ * @author Emile Pels
+ */
+public class QueryCache implements QueryCacheMXBean
+{
+
+    /**
+     * Finds every table a query reads from
+     */
+    private static final Pattern READ_PATTERN = Pattern.compile(
+            "\\b(?:FROM|JOIN)\\s+`?(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Finds the table a statement writes to
+     */
+    private static final Pattern WRITE_PATTERN = Pattern.compile(
+            "^\\s*(?:INSERT\\s+(?:IGNORE\\s+)?INTO|REPLACE\\s+INTO|UPDATE"
+            + "|DELETE\\s+FROM|TRUNCATE(?:\\s+TABLE)?)\\s+`?(\\w+)",
+            Pattern.CASE_INSENSITIVE);
+
+    private final int capacity, maxRows;
+    private final long ttlMillis;
+    private final Map<List<Object>, CachedResult> entries;
+
+    /**
+     * Incremented on every write, so results read before a write finished
+     * are never cached
+     */
+    private long version;
+
+    private long hitCount, missCount, evictionCount, expirationCount,
+            invalidationCount;
+
+    /**
+     * Initializes a new QueryCache
+     *
+     * @param capacity Maximum amount of results to keep. 0 disables the cache
+     * @param ttlMillis Maximum amount of milliseconds a result is kept
+     * @param maxRows Maximum amount of rows of a result which is kept
+     */
+    QueryCache(final int capacity, long ttlMillis, int maxRows)
+    {
+        this.capacity = Math.max(0, capacity);
+        this.ttlMillis = ttlMillis;
+        this.maxRows = maxRows;
+
+        //Access order makes the eldest entry the least recently used
+        this.entries = new LinkedHashMap<List<Object>, CachedResult>(16,
+                0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<List<Object>, CachedResult> eldest)
+            {
+                if (size() <= QueryCache.this.capacity)
+                {
+                    return false;
+                }
+
+                evictionCount++;
+
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Creates the key a query's result is cached under
+     *
+     * @param query SQL of the query
+     * @param reader Object determining how the rows are read, such as the
+     * query's RowMapper. Compared through equals
+     * @param parameters Values bound to the query's placeholders
+     * @return Key for the query's result
+     */
+    static List<Object> createKey(String query, Object reader,
+            Object[] parameters)
+    {
+        return Arrays.<Object>asList(query, reader, parameters == null
+                ? null : Arrays.asList(parameters));
+    }
+
+    /**
+     * Gets whether results are cached at all
+     *
+     * @return Boolean indicating whether results are cached
+     */
+    boolean isEnabled()
+    {
+        return capacity > 0;
+    }
+
+    /**
+     * Gets a cached result
+     *
+     * @param key Key of the result
+     * @return Cached result. Null if it is not in the cache or has expired
+     */
+    synchronized Object get(List<Object> key)
+    {
+        CachedResult entry = entries.get(key);
+
+        if (entry != null && System.currentTimeMillis() > entry.expiresAt)
+        {
+            entries.remove(key);
+            expirationCount++;
+            entry = null;
+        }
+
+        if (entry == null)
+        {
+            missCount++;
+
+            return null;
+        }
+
+        hitCount++;
+
+        return entry.value;
+    }
+
+    /**
+     * Gets the current version, to pass to put once the query finished
+     *
+     * @return Current version of the cached tables
+     */
+    synchronized long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Caches a result, unless it is too large, its query reads no known table
+     * or a write finished while it was being read
+     *
+     * @param key Key of the result
+     * @param query SQL of the query, to determine the tables it reads from
+     * @param value Result to cache. Must not be changed afterwards
+     * @param rows Amount of rows in the result
+     * @param readVersion Value of getVersion before the query started
+     */
+    synchronized void put(List<Object> key, String query, Object value,
+            int rows, long readVersion)
+    {
+        if (!isEnabled() || rows > maxRows || readVersion != version)
+        {
+            return;
+        }
+
+        Set<String> tables = new HashSet<>();
+        Matcher matcher = READ_PATTERN.matcher(query);
+
+        while (matcher.find())
+        {
+            tables.add(matcher.group(1).toLowerCase());
+        }
+
+        //Without a table nothing would ever invalidate the result
+        if (!tables.isEmpty())
+        {
+            entries.put(key, new CachedResult(value, tables,
+                    System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    /**
+     * Removes the results which depend on the table a statement wrote to. If
+     * the table can not be determined, every result is removed
+     *
+     * @param update SQL of the statement
+     */
+    void invalidateWrite(String update)
+    {
+        String table = findWrittenTable(update);
+
+        if (table == null)
+        {
+            invalidateAll();
+        } else
+        {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * Removes the results which read from a table
+     *
+     * @param table Name of the table which was written to
+     */
+    synchronized void invalidate(String table)
+    {
+        String name = table.toLowerCase();
+
+        version++;
+
+        for (Iterator<CachedResult> iterator = entries.values().iterator();
+                iterator.hasNext();)
+        {
+            if (iterator.next().tables.contains(name))
+            {
+                iterator.remove();
+                invalidationCount++;
+            }
+        }
+    }
+
+    /**
+     * Removes every result, as after a write to an unknown table
+     */
+    synchronized void invalidateAll()
+    {
+        version++;
+        invalidationCount += entries.size();
+
+        entries.clear();
+    }
+
+    /**
+     * Gets the name of the table a statement writes to
+     *
+     * @param update SQL of the statement
+     * @return Name of the table, or null if it can not be determined
+     */
+    static String findWrittenTable(String update)
+    {
+        Matcher matcher = WRITE_PATTERN.matcher(update);
+
+        return matcher.find() ? matcher.group(1).toLowerCase() : null;
+    }
+
+    /**
+     * Removes the results which read from any of several tables
+     *
+     * @param tables Names of the tables which were written to. A null name
+     * removes every result
+     */
+    void invalidate(Iterable<String> tables)
+    {
+        for (String table : tables)
+        {
+            if (table == null)
+            {
+                invalidateAll();
+
+                return;
+            }
+
+            invalidate(table);
+        }
+    }
+
+    @Override
+    public synchronized int getSize()
+    {
+        return entries.size();
+    }
+
+    @Override
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    @Override
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    @Override
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    @Override
+    public synchronized double getHitRatio()
+    {
+        long total = hitCount + missCount;
+
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public synchronized long getEvictionCount()
+    {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized long getExpirationCount()
+    {
+        return expirationCount;
+    }
+
+    @Override
+    public synchronized long getInvalidationCount()
+    {
+        return invalidationCount;
+    }
+
+    @Override
+    public synchronized void clear()
+    {
+        version++;
+
+        entries.clear();
+    }
+
+    @Override
+    public synchronized void resetStatistics()
+    {
+        hitCount = 0;
+        missCount = 0;
+        evictionCount = 0;
+        expirationCount = 0;
+        invalidationCount = 0;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("QueryCache [size=%d/%d hits=%d misses=%d "
+                + "ratio=%.2f evictions=%d expirations=%d invalidations=%d]",
+                entries.size(), capacity, hitCount, missCount, getHitRatio(),
+                evictionCount, expirationCount, invalidationCount);
+    }
+
+    /**
+     * Cached result with the tables it depends on
+     */
+    private static class CachedResult
+    {
+
+        private final Object value;
+        private final Set<String> tables;
+        private final long expiresAt;
+
+        /**
+         * Initializes a new CachedResult
+         *
+         * @param value Cached result
+         * @param tables Names of the tables the result was read from
+         * @param expiresAt Time in milliseconds after which the result is
+         * no longer served
+         */
+        private CachedResult(Object value, Set<String> tables, long expiresAt)
+        {
+            this.value = value;
+            this.tables = tables;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package corendonlmsv2.connectivity;
+
+/**
+ * Management interface publishing a query cache's size, hit ratio and
+ * evictions over JMX
+ *
+ * @author Emile Pels
+ */
+public interface QueryCacheMXBean
+{
+
+    /**
+     * Gets the amount of results in the cache
+     *
+     * @return Amount of results in the cache
+     */
+    int getSize();
+
+    /**
+     * Gets the maximum amount of results the cache holds
+     *
+     * @return Maximum amount of results the cache holds. 0 if the cache is
+     * disabled
+     */
+    int getCapacity();
+
+    /**
+     * Gets the amount of queries answered from the cache
+     *
+     * @return Amount of queries answered from the cache
+     */
+    long getHitCount();
+
+    /**
+     * Gets the amount of cacheable queries sent to the database because their
+     * results were not in the cache
+     *
+     * @return Amount of queries sent to the database
+     */
+    long getMissCount();
+
+    /**
+     * Gets the fraction of cacheable queries answered from the cache
+     *
+     * @return Fraction of queries answered from the cache, from 0 to 1
+     */
+    double getHitRatio();
+
+    /**
+     * Gets the amount of results removed to make room for newer ones
+     *
+     * @return Amount of results removed to make room for newer ones
+     */
+    long getEvictionCount();
+
+    /**
+     * Gets the amount of results removed because they outlived
+     * DbConfig.QUERY_CACHE_TTL_MILLIS
+     *
+     * @return Amount of results removed because they expired
+     */
+    long getExpirationCount();
+
+    /**
+     * Gets the amount of results removed because a table they read from was
+     * written to
+     *
+     * @return Amount of results removed because of writes
+     */
+    long getInvalidationCount();
+
+    /**
+     * Removes every result from the cache
+     */
+    void clear();
+
+    /**
+     * Sets every counter back to 0
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,118 @@
+package corendonlmsv2.connectivity;
+
+/**
+ * Per-call settings for a query or update sent through DbManager. Instances
+ * are immutable; every setter returns a copy with the setting changed, so
+ * shared instances (like DEFAULT) can not be altered by accident
+ *
+ * @author Emile Pels
+ */
+public final class QueryOptions
+{
+
+    /**
+     * Options using every default from DbConfig
+     */
+    public static final QueryOptions DEFAULT = new QueryOptions(-1, true);
+
+    /**
+     * Options using every default from DbConfig, but always reading from the
+     * database rather than the query cache
+     */
+    public static final QueryOptions FRESH = DEFAULT.fresh();
+
+    /**
+     * Maximum amount of seconds the statement may run. -1 for the default
+     */
+    private final int timeoutSeconds;
+
+    /**
+     * Indicates whether a query's results may be served from the query cache
+     */
+    private final boolean cached;
+
+    /**
+     * Initializes a new QueryOptions
+     *
+     * @param timeoutSeconds Maximum amount of seconds the statement may run.
+     * -1 for the default
+     * @param cached Indicates whether a query's results may be served from the
+     * query cache
+     */
+    private QueryOptions(int timeoutSeconds, boolean cached)
+    {
+        this.timeoutSeconds = timeoutSeconds;
+        this.cached = cached;
+    }
+
+    /**
+     * Creates options with a timeout other than the default
+     *
+     * @param seconds Maximum amount of seconds the statement may run. 0 for
+     * no limit
+     * @return Options with the timeout set
+     */
+    public static QueryOptions withTimeout(int seconds)
+    {
+        return DEFAULT.timeout(seconds);
+    }
+
+    /**
+     * Gets a copy of these options with a timeout other than the default
+     *
+     * @param seconds Maximum amount of seconds the statement may run. 0 for
+     * no limit
+     * @return Copy of these options with the timeout set
+     */
+    public QueryOptions timeout(int seconds)
+    {
+        if (seconds < 0)
+        {
+            throw new IllegalArgumentException("The timeout can not be "
+                    + "negative.");
+        }
+
+        return new QueryOptions(seconds, cached);
+    }
+
+    /**
+     * Gets a copy of these options which always reads from the database, for
+     * screens which must show the latest data (e.g. before editing it). The
+     * fresh results still replace the cached ones
+     *
+     * @return Copy of these options bypassing the query cache
+     */
+    public QueryOptions fresh()
+    {
+        return new QueryOptions(timeoutSeconds, false);
+    }
+
+    /**
+     * Gets whether a query's results may be served from the query cache
+     *
+     * @return Boolean indicating whether the query cache may be used
+     */
+    public boolean isCached()
+    {
+        return cached;
+    }
+
+    /**
+     * Gets the maximum amount of seconds the statement may run, falling back
+     * to DbConfig.QUERY_TIMEOUT_SECONDS
+     *
+     * @return Maximum amount of seconds the statement may run. 0 for no limit
+     */
+    public int getTimeoutSeconds()
+    {
+        return timeoutSeconds < 0 ? DbConfig.QUERY_TIMEOUT_SECONDS
+                : timeoutSeconds;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("QueryOptions [timeout=%ds, cached=%b]",
+                getTimeoutSeconds(), cached);
+    }
+}
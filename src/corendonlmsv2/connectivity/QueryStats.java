@@ -0,0 +1,129 @@
+package corendonlmsv2.connectivity;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of one kind of statement on one table: how often it ran, how
+ * often it failed, how many rows it touched and how long it took
+ *
+ * @author Emile Pels
+ */
+public class QueryStats implements QueryStatsMXBean
+{
+
+    private final String table, operation;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    private final AtomicLong errorCount = new AtomicLong(),
+            rowCount = new AtomicLong();
+
+    /**
+     * Initializes a new QueryStats
+     *
+     * @param table Name of the table the statements run against
+     * @param operation Kind of statement
+     */
+    QueryStats(String table, String operation)
+    {
+        this.table = table;
+        this.operation = operation;
+    }
+
+    /**
+     * Records a finished statement
+     *
+     * @param nanos Duration of the statement in nanoseconds
+     * @param rows Amount of rows returned or affected. -1 if the statement
+     * failed
+     */
+    void record(long nanos, int rows)
+    {
+        latencies.record(nanos);
+
+        if (rows < 0)
+        {
+            errorCount.incrementAndGet();
+        } else
+        {
+            rowCount.addAndGet(rows);
+        }
+    }
+
+    @Override
+    public String getTable()
+    {
+        return table;
+    }
+
+    @Override
+    public String getOperation()
+    {
+        return operation;
+    }
+
+    @Override
+    public long getCallCount()
+    {
+        return latencies.getCount();
+    }
+
+    @Override
+    public long getErrorCount()
+    {
+        return errorCount.get();
+    }
+
+    @Override
+    public long getRowCount()
+    {
+        return rowCount.get();
+    }
+
+    @Override
+    public double getAverageMillis()
+    {
+        return latencies.getAverageMillis();
+    }
+
+    @Override
+    public double getP50Millis()
+    {
+        return latencies.getPercentileMillis(0.50);
+    }
+
+    @Override
+    public double getP95Millis()
+    {
+        return latencies.getPercentileMillis(0.95);
+    }
+
+    @Override
+    public double getP99Millis()
+    {
+        return latencies.getPercentileMillis(0.99);
+    }
+
+    @Override
+    public double getMaxMillis()
+    {
+        return latencies.getMaxMillis();
+    }
+
+    @Override
+    public void reset()
+    {
+        latencies.reset();
+        errorCount.set(0);
+        rowCount.set(0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%-9s %-12s calls=%d errors=%d rows=%d "
+                + "avg=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+                table, operation, getCallCount(), getErrorCount(),
+                getRowCount(), getAverageMillis(), getP50Millis(),
+                getP95Millis(), getP99Millis(), getMaxMillis());
+    }
+}
@@ -0,0 +1,86 @@
+package corendonlmsv2.connectivity;
+
+/**
+ * Management interface publishing the statistics of one kind of statement on
+ * one table over JMX
+ *
+ * @author Emile Pels
+ */
+public interface QueryStatsMXBean
+{
+
+    /**
+     * Gets the name of the table the statements ran against
+     *
+     * @return Name of the table. "other" for tables outside DatabaseTables
+     */
+    String getTable();
+
+    /**
+     * Gets the kind of statement
+     *
+     * @return Kind of statement
+     */
+    String getOperation();
+
+    /**
+     * Gets the amount of statements executed
+     *
+     * @return Amount of statements executed
+     */
+    long getCallCount();
+
+    /**
+     * Gets the amount of statements which failed
+     *
+     * @return Amount of statements which failed
+     */
+    long getErrorCount();
+
+    /**
+     * Gets the amount of rows returned or affected by the statements
+     *
+     * @return Amount of rows returned or affected by the statements
+     */
+    long getRowCount();
+
+    /**
+     * Gets the average duration of the statements in milliseconds
+     *
+     * @return Average duration of the statements in milliseconds
+     */
+    double getAverageMillis();
+
+    /**
+     * Gets the median duration of the statements in milliseconds
+     *
+     * @return Median duration of the statements in milliseconds
+     */
+    double getP50Millis();
+
+    /**
+     * Gets the 95th percentile duration of the statements in milliseconds
+     *
+     * @return 95th percentile duration of the statements in milliseconds
+     */
+    double getP95Millis();
+
+    /**
+     * Gets the 99th percentile duration of the statements in milliseconds
+     *
+     * @return 99th percentile duration of the statements in milliseconds
+     */
+    double getP99Millis();
+
+    /**
+     * Gets the longest duration of the statements in milliseconds
+     *
+     * @return Longest duration of the statements in milliseconds
+     */
+    double getMaxMillis();
+
+    /**
+     * Forgets every recorded statement
+     */
+    void reset();
+}
@@ -0,0 +1,25 @@
+package corendonlmsv2.connectivity;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Handles the rows of a query one at a time, as they are streamed from the
+ * database
+ *
+ * @author Emile Pels
+ */
+public interface RowHandler
+{
+
+    /**
+     * Handles the current row of the result set. The result set must not be
+     * advanced or closed by the handler
+     *
+     * @param results Result set positioned on the row to handle
+     * @return Boolean indicating whether the next row should be handled. If
+     * false, the query is stopped and its remaining rows are discarded
+     * @throws SQLException Exception thrown if a column can not be read
+     */
+    public boolean handleRow(ResultSet results) throws SQLException;
+}
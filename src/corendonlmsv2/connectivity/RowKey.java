@@ -0,0 +1,78 @@
+package corendonlmsv2.connectivity;
+
+/**
+ * Position of a row in the order of a PageQuery: the value of the column the
+ * rows are sorted on, and the row's primary key to tell rows with the same
+ * value apart. A page continues after (or before) the position of its
+ * neighbour's boundary row
+ *
+ * @author Emile Pels
+ */
+public final class RowKey
+{
+
+    private final Object sortValue;
+    private final long primaryKey;
+
+    /**
+     * Initializes a new RowKey
+     *
+     * @param sortValue Value of the column the rows are sorted on. Null if
+     * the rows are sorted on the primary key alone, or the row holds NULL
+     * @param primaryKey Primary key of the row
+     */
+    RowKey(Object sortValue, long primaryKey)
+    {
+        this.sortValue = sortValue;
+        this.primaryKey = primaryKey;
+    }
+
+    /**
+     * Gets the value of the column the rows are sorted on
+     *
+     * @return Value of the column the rows are sorted on. Null if the rows are
+     * sorted on the primary key alone, or the row holds NULL
+     */
+    public Object getSortValue()
+    {
+        return sortValue;
+    }
+
+    /**
+     * Gets the primary key of the row
+     *
+     * @return Primary key of the row
+     */
+    public long getPrimaryKey()
+    {
+        return primaryKey;
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        if (!(other instanceof RowKey))
+        {
+            return false;
+        }
+
+        RowKey key = (RowKey) other;
+
+        return primaryKey == key.primaryKey && (sortValue == null
+                ? key.sortValue == null : sortValue.equals(key.sortValue));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * (sortValue == null ? 0 : sortValue.hashCode())
+                + (int) (primaryKey ^ (primaryKey >>> 32));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("RowKey [sortValue=%s, primaryKey=%d]",
+                sortValue, primaryKey);
+    }
+}
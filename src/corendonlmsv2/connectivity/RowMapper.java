@@ -0,0 +1,24 @@
+package corendonlmsv2.connectivity;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Converts the current row of a result set into an object
+ *
+ * @author Emile Pels
+ * @param <T> Type of the objects the rows are converted into
+ */
+public interface RowMapper<T>
+{
+
+    /**
+     * Converts the current row of the result set into an object. The result
+     * set must not be advanced or closed by the mapper
+     *
+     * @param results Result set positioned on the row to convert
+     * @return Object representing the current row
+     * @throws SQLException Exception thrown if a column can not be read
+     */
+    public T mapRow(ResultSet results) throws SQLException;
+}
@@ -0,0 +1,482 @@
+package corendonlmsv2.connectivity;
+
+import corendonlmsv2.main.util.StringUtil;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Brings the database schema up to date at startup. The schema is described
+ * by numbered SQL scripts in the migrations directory (V1__description.sql,
+ * V2__description.sql, ...), which are applied once each, in order. Every
+ * applied version is recorded in the schema_version table along with a
+ * checksum of its script, so a script which was changed after it was applied
+ * is detected rather than silently ignored. A script which was interrupted
+ * halfway resumes after the last statement it applied
+ *
+ * @author Emile Pels
+ */
+public final class SchemaMigrator
+{
+
+    /**
+     * Directory containing the migration scripts
+     */
+    private static final String MIGRATIONS_DIRECTORY = String.format(
+            "resources%smigrations", StringUtil.PATH_SEPERATOR);
+
+    /**
+     * Pattern for a migration script's file name. Group 1 is the version,
+     * group 2 the description
+     */
+    private static final Pattern FILE_PATTERN
+            = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    /**
+     * Table recording the applied versions
+     */
+    private static final String VERSION_TABLE = "schema_version";
+
+    /**
+     * Table recording the statements of a version which were applied before
+     * the version as a whole was, so a script interrupted halfway resumes
+     * after its last applied statement instead of failing on it
+     */
+    private static final String PROGRESS_TABLE = "schema_version_progress";
+
+    /**
+     * Settings for the scripts' statements. Schema changes on large tables may
+     * take longer than the default timeout allows
+     */
+    private static final QueryOptions SCHEMA_OPTIONS
+            = QueryOptions.withTimeout(0);
+
+    /**
+     * Converts a row of a number and a checksum, as read from VERSION_TABLE
+     * and PROGRESS_TABLE
+     */
+    private static final RowMapper<Object[]> CHECKSUM_MAPPER
+            = new RowMapper<Object[]>()
+            {
+                @Override
+                public Object[] mapRow(ResultSet results) throws SQLException
+                {
+                    return new Object[]
+                    {
+                        results.getInt(1), results.getString(2)
+                    };
+                }
+            };
+
+    /**
+     * Error codes MySQL and H2 report for creating a table, index or column
+     * which exists already
+     */
+    private static final Set<Integer> ALREADY_EXISTS_CODES
+            = new HashSet<>(Arrays.asList(1050, 1060, 1061, 42101, 42111,
+                            42121));
+
+    //Character set the scripts are written in
+    private static final Charset CHAR_SET = Charset.forName("UTF-8");
+
+    private SchemaMigrator()
+    {
+    }
+
+    /**
+     * Applies every migration script which has not been applied yet, in order
+     * of version. Stops at the first script which fails, or when a script
+     * which was applied before has been changed since
+     *
+     * @return Boolean indicating whether the schema is up to date
+     */
+    public static boolean migrate()
+    {
+        Map<Integer, File> scripts = findScripts();
+
+        try
+        {
+            try (UnitOfWork work = DbManager.beginUnitOfWork())
+            {
+                work.executeUpdate(SCHEMA_OPTIONS, "CREATE TABLE IF NOT "
+                        + "EXISTS " + VERSION_TABLE + "(version INT NOT NULL "
+                        + "PRIMARY KEY, description VARCHAR(100) NOT NULL, "
+                        + "checksum CHAR(32) NOT NULL, "
+                        + "applied_on TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+                work.executeUpdate(SCHEMA_OPTIONS, "CREATE TABLE IF NOT "
+                        + "EXISTS " + PROGRESS_TABLE + "(version INT NOT NULL, "
+                        + "statement_index INT NOT NULL, "
+                        + "checksum CHAR(32) NOT NULL, "
+                        + "PRIMARY KEY (version, statement_index))");
+                work.commit();
+            }
+
+            Map<Integer, String> applied = getChecksums("SELECT version, "
+                    + "checksum FROM " + VERSION_TABLE);
+
+            for (Map.Entry<Integer, File> entry : scripts.entrySet())
+            {
+                int version = entry.getKey();
+                File script = entry.getValue();
+                String content = new String(Files.readAllBytes(
+                        script.toPath()), CHAR_SET);
+                String checksum = checksum(content);
+
+                if (applied.containsKey(version))
+                {
+                    if (!applied.get(version).equals(checksum))
+                    {
+                        System.err.printf("Schema version %d (%s) was "
+                                + "changed after it was applied. Add a new "
+                                + "version instead.\n", version,
+                                script.getName());
+
+                        return false;
+                    }
+
+                    continue;
+                }
+
+                applyScript(version, script, content, checksum);
+
+                System.out.printf("Applied schema version %d (%s)\n",
+                        version, script.getName());
+            }
+        } catch (SQLException | IOException | DatabaseUnavailableException ex)
+        {
+            System.err.println("Schema migration failed: " + ex.getMessage());
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the highest schema version applied to the database
+     *
+     * @return Highest schema version applied to the database. 0 if no version
+     * has been applied, -1 if the version could not be determined
+     */
+    public static int getCurrentVersion()
+    {
+        //Another client may have migrated the database in the meantime
+        List<Integer> versions = DbManager.query(QueryOptions.FRESH,
+                "SELECT MAX(version) AS version FROM " + VERSION_TABLE,
+                new RowMapper<Integer>()
+                {
+                    @Override
+                    public Integer mapRow(ResultSet results)
+                            throws SQLException
+                    {
+                        return results.getInt("version");
+                    }
+                });
+
+        return versions.isEmpty() ? -1 : versions.get(0);
+    }
+
+    /**
+     * Finds the migration scripts in the migrations directory
+     *
+     * @return Migration scripts, keyed and ordered by version
+     */
+    private static Map<Integer, File> findScripts()
+    {
+        Map<Integer, File> scripts = new TreeMap<>();
+        File[] files = new File(MIGRATIONS_DIRECTORY).listFiles();
+
+        if (files == null)
+        {
+            System.err.println("Migrations directory not found: "
+                    + MIGRATIONS_DIRECTORY);
+
+            return scripts;
+        }
+
+        for (File file : files)
+        {
+            Matcher matcher = FILE_PATTERN.matcher(file.getName());
+
+            if (matcher.matches())
+            {
+                File previous = scripts.put(
+                        Integer.parseInt(matcher.group(1)), file);
+
+                if (previous != null)
+                {
+                    throw new IllegalStateException(String.format("Schema "
+                            + "version %s is defined by both %s and %s.",
+                            matcher.group(1), previous.getName(),
+                            file.getName()));
+                }
+            }
+        }
+
+        return scripts;
+    }
+
+    /**
+     * Reads a map of checksums, such as the versions which were applied
+     * before or the statements of a version which were
+     *
+     * @param query Query selecting a number and a checksum per row
+     * @param parameters Values to bind to the query's placeholders, in order
+     * @return Checksums, keyed by the number in the row
+     * @throws SQLException Exception thrown if the table can not be read
+     */
+    private static Map<Integer, String> getChecksums(String query,
+            Object... parameters) throws SQLException
+    {
+        Map<Integer, String> checksums = new HashMap<>();
+
+        try (UnitOfWork work = DbManager.beginUnitOfWork())
+        {
+            for (Object[] row : work.query(query, CHECKSUM_MAPPER, parameters))
+            {
+                checksums.put((Integer) row[0], (String) row[1]);
+            }
+        }
+
+        return checksums;
+    }
+
+    /**
+     * Applies a script's statements which were not applied before and records
+     * the version as applied. Every statement is committed together with the
+     * record of it in PROGRESS_TABLE, so it is either applied and recorded or
+     * neither. Statements which commit implicitly (such as CREATE and ALTER)
+     * can only be recorded right after they committed, so the first statement
+     * which was not recorded is taken as applied if it fails because what it
+     * creates exists already
+     *
+     * @param version Version of the script
+     * @param script Script to apply
+     * @param content Script's content
+     * @param checksum Checksum of the script
+     * @throws SQLException Exception thrown if a statement fails, or the
+     * script was changed since it was partly applied
+     */
+    private static void applyScript(int version, File script, String content,
+            String checksum) throws SQLException
+    {
+        Map<Integer, String> progress = getChecksums("SELECT "
+                + "statement_index, checksum FROM " + PROGRESS_TABLE
+                + " WHERE version = ?", version);
+
+        if (!progress.isEmpty() && !progress.containsValue(checksum))
+        {
+            throw new SQLException(String.format("Schema version %d (%s) was "
+                    + "changed after it was partly applied.", version,
+                    script.getName()));
+        }
+
+        List<String> statements = splitStatements(content);
+        boolean first = true;
+
+        for (int i = 0; i < statements.size(); i++)
+        {
+            if (progress.containsKey(i))
+            {
+                continue;
+            }
+
+            try (UnitOfWork work = DbManager.beginUnitOfWork())
+            {
+                try
+                {
+                    work.executeUpdate(SCHEMA_OPTIONS, statements.get(i));
+                } catch (SQLException ex)
+                {
+                    //A statement which committed implicitly may have been
+                    //interrupted before it was recorded; running it again
+                    //then fails because what it creates exists already
+                    if (!first || !ALREADY_EXISTS_CODES.contains(
+                            ex.getErrorCode()))
+                    {
+                        throw ex;
+                    }
+
+                    System.out.printf("Schema version %d statement %d was "
+                            + "applied before: %s\n", version, i + 1,
+                            ex.getMessage());
+                }
+
+                first = false;
+                work.executeUpdate("INSERT INTO " + PROGRESS_TABLE
+                        + " (version, statement_index, checksum) "
+                        + "VALUES (?, ?, ?)", version, i, checksum);
+                work.commit();
+            }
+        }
+
+        Matcher matcher = FILE_PATTERN.matcher(script.getName());
+        matcher.matches();
+
+        try (UnitOfWork work = DbManager.beginUnitOfWork())
+        {
+            work.executeUpdate("INSERT INTO " + VERSION_TABLE + " (version, "
+                    + "description, checksum) VALUES (?, ?, ?)", version,
+                    matcher.group(2).replace('_', ' '), checksum);
+            work.executeUpdate("DELETE FROM " + PROGRESS_TABLE
+                    + " WHERE version = ?", version);
+            work.commit();
+        }
+    }
+
+    /**
+     * Splits a script into its separate statements, leaving out comments. A
+     * semicolon only ends a statement outside of quotes and comments, so
+     * string literals and comments may contain one
+     *
+     * @param script Script to split
+     * @return Statements in the script, in order
+     */
+    private static List<String> splitStatements(String script)
+    {
+        List<String> statements = new ArrayList<>();
+        StringBuilder statement = new StringBuilder();
+        int length = script.length();
+        int i = 0;
+
+        while (i < length)
+        {
+            char c = script.charAt(i);
+
+            if (c == '\'' || c == '"' || c == '`')
+            {
+                int end = skipQuoted(script, i);
+                statement.append(script, i, end);
+                i = end;
+            } else if (c == '/' && script.startsWith("/*", i))
+            {
+                int end = script.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+
+                //Keep the tokens around the comment apart
+                statement.append(' ');
+            } else if (c == '#' || isLineComment(script, i))
+            {
+                int end = script.indexOf('\n', i);
+                i = end < 0 ? length : end;
+            } else if (c == ';')
+            {
+                addStatement(statements, statement);
+                i++;
+            } else
+            {
+                statement.append(c);
+                i++;
+            }
+        }
+
+        addStatement(statements, statement);
+
+        return statements;
+    }
+
+    /**
+     * Finds the end of a quoted string literal or identifier. A quote is
+     * escaped by doubling it or, within a string literal, by a backslash
+     *
+     * @param script Script containing the quoted text
+     * @param start Index of the opening quote
+     * @return Index just past the closing quote. The script's length if the
+     * quote is never closed
+     */
+    private static int skipQuoted(String script, int start)
+    {
+        char quote = script.charAt(start);
+        int i = start + 1;
+
+        while (i < script.length())
+        {
+            char c = script.charAt(i);
+
+            if (c == '\\' && quote != '`')
+            {
+                i += 2;
+            } else if (c != quote)
+            {
+                i++;
+            } else if (i + 1 < script.length()
+                    && script.charAt(i + 1) == quote)
+            {
+                i += 2;
+            } else
+            {
+                return i + 1;
+            }
+        }
+
+        return script.length();
+    }
+
+    /**
+     * Checks whether a -- line comment starts at an index. As in MySQL, the
+     * dashes must be followed by whitespace or the end of the script
+     *
+     * @param script Script to check
+     * @param index Index to check at
+     * @return Boolean indicating whether a line comment starts at the index
+     */
+    private static boolean isLineComment(String script, int index)
+    {
+        return script.startsWith("--", index) && (index + 2 == script.length()
+                || Character.isWhitespace(script.charAt(index + 2)));
+    }
+
+    /**
+     * Adds a statement to a list unless it is empty, and clears it
+     *
+     * @param statements Statements to add to
+     * @param statement Statement to add
+     */
+    private static void addStatement(List<String> statements,
+            StringBuilder statement)
+    {
+        if (!StringUtil.isStringNullOrWhiteSpace(statement.toString()))
+        {
+            statements.add(statement.toString().trim());
+        }
+
+        statement.setLength(0);
+    }
+
+    /**
+     * Calculates a script's checksum. Line endings are normalized first, so
+     * checking the script out on another platform does not change it
+     *
+     * @param content Script's content
+     * @return Hexadecimal MD5 checksum of the script
+     */
+    private static String checksum(String content)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(
+                    content.replace("\r\n", "\n").getBytes(CHAR_SET));
+
+            return String.format("%032x", new BigInteger(1, digest));
+        } catch (NoSuchAlgorithmException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package corendonlmsv2.connectivity;
+
+import java.io.IOException;
+import java.util.logging.FileHandler;
+import java.util.logging.Logger;
+
+/**
+ * Writes queries and updates which take longer than
+ * DbConfig.SLOW_QUERY_THRESHOLD_MILLIS to a rotating log file. Every entry
+ * holds the statement's shape (its SQL with literal values replaced by ?),
+ * its duration, the amount of rows it returned or affected and the class
+ * which sent it
+ *
+ * @author Emile Pels
+ */
+public final class SlowQueryLog
+{
+
+    /**
+     * Package whose classes are skipped when looking for the calling class
+     */
+    private static final String CONNECTIVITY_PACKAGE
+            = SlowQueryLog.class.getPackage().getName() + ".";
+
+    private static final Logger LOGGER
+            = Logger.getLogger(SlowQueryLog.class.getName());
+
+    /**
+     * Indicates whether the log file has been opened (or failed to open)
+     */
+    private static boolean _initialized;
+
+    private SlowQueryLog()
+    {
+    }
+
+    /**
+     * Records a finished query or update, writing it to the log if it took
+     * longer than the threshold
+     *
+     * @param sql SQL of the statement
+     * @param nanos Duration of the statement in nanoseconds
+     * @param rows Amount of rows returned or affected. -1 if the statement
+     * failed
+     */
+    static void record(String sql, long nanos, int rows)
+    {
+        long millis = nanos / 1000000;
+
+        if (DbConfig.SLOW_QUERY_THRESHOLD_MILLIS < 0
+                || millis < DbConfig.SLOW_QUERY_THRESHOLD_MILLIS)
+        {
+            return;
+        }
+
+        initialize();
+
+        LOGGER.warning(String.format("%d ms | %s rows | %s | %s", millis,
+                rows < 0 ? "failed" : String.valueOf(rows), findCaller(),
+                getShape(sql)));
+    }
+
+    /**
+     * Gets the shape of a statement: its SQL with string and numeric literals
+     * replaced by ? and whitespace collapsed, so the same statement with
+     * different values is logged identically and no user data ends up in the
+     * log
+     *
+     * @param sql SQL of the statement
+     * @return Shape of the statement
+     */
+    static String getShape(String sql)
+    {
+        return sql.replaceAll("'(?:[^'\\\\]|\\\\.|'')*'", "?")
+                .replaceAll("\\b\\d+(?:\\.\\d+)?\\b", "?")
+                .replaceAll("\\s+", " ")
+                .trim();
+    }
+
+    /**
+     * Finds the class outside the database layer which sent the statement
+     *
+     * @return Name of the calling class and method. "unknown" if it can not
+     * be determined
+     */
+    private static String findCaller()
+    {
+        for (StackTraceElement element : new Throwable().getStackTrace())
+        {
+            if (!element.getClassName().startsWith(CONNECTIVITY_PACKAGE))
+            {
+                return element.getClassName() + "." + element.getMethodName();
+            }
+        }
+
+        return "unknown";
+    }
+
+    /**
+     * Opens the log file the first time a slow statement is recorded, so no
+     * empty log files are created on stations without slow statements
+     */
+    private static synchronized void initialize()
+    {
+        if (_initialized)
+        {
+            return;
+        }
+
+        _initialized = true;
+        LOGGER.setUseParentHandlers(false);
+
+        try
+        {
+            FileHandler handler = new FileHandler(
+                    DbConfig.SLOW_QUERY_LOG_FILENAME,
+                    DbConfig.LOG_FILE_LIMIT_BYTES,
+                    DbConfig.LOG_FILE_COUNT, true);
+            handler.setFormatter(new LineFormatter());
+
+            LOGGER.addHandler(handler);
+        } catch (IOException | SecurityException ex)
+        {
+            System.err.println("Could not open the slow query log: "
+                    + ex.getMessage());
+
+            //Fall back to the error stream rather than losing the entries
+            LOGGER.setUseParentHandlers(true);
+        }
+    }
+}
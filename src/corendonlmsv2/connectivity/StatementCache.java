@@ -0,0 +1,98 @@
+package corendonlmsv2.connectivity;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of prepared statements for a single connection, keyed by their
+ * SQL. When the cache is full, the least recently used statement is closed to
+ * make room
+ *
+ * @author Emile Pels
+ */
+class StatementCache
+{
+
+    private final Map<String, PreparedStatement> statements;
+
+    /**
+     * Initializes a new StatementCache
+     *
+     * @param capacity Maximum amount of statements to keep prepared
+     */
+    StatementCache(final int capacity)
+    {
+        //Access order makes the eldest entry the least recently used
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16,
+                0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, PreparedStatement> eldest)
+            {
+                if (size() <= capacity)
+                {
+                    return false;
+                }
+
+                closeStatement(eldest.getValue());
+
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gets a cached statement, marking it as the most recently used
+     *
+     * @param sql SQL of the statement
+     * @return Cached statement. Null if it is not in the cache
+     */
+    PreparedStatement get(String sql)
+    {
+        return statements.get(sql);
+    }
+
+    /**
+     * Caches a statement, closing the least recently used statement if the
+     * cache is full
+     *
+     * @param sql SQL of the statement
+     * @param statement Prepared statement to cache
+     */
+    void put(String sql, PreparedStatement statement)
+    {
+        statements.put(sql, statement);
+    }
+
+    /**
+     * Closes every cached statement and empties the cache
+     */
+    void closeAll()
+    {
+        for (PreparedStatement statement : statements.values())
+        {
+            closeStatement(statement);
+        }
+
+        statements.clear();
+    }
+
+    /**
+     * Closes a statement, logging rather than throwing any failure
+     *
+     * @param statement Statement to close
+     */
+    private static void closeStatement(PreparedStatement statement)
+    {
+        try
+        {
+            statement.close();
+        } catch (SQLException ex)
+        {
+            System.err.println("SQL exception: " + ex.getMessage());
+        }
+    }
+}
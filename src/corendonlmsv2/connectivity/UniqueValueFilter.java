@@ -0,0 +1,494 @@
+package corendonlmsv2.connectivity;
+
+import corendonlmsv2.model.DatabaseTables;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Bloom filter over the values of a unique column, so checking whether a
+ * value is registered already only queries the database when the value may
+ * be. A value the filter has never seen is certainly not registered; any
+ * other value is looked up as before, which happens for roughly
+ * getExpectedFalsePositiveRate of the values which are not registered.
+ *
+ * The filter is read from the database by rebuild, and values written through
+ * this application are added as they are committed. Values can not be
+ * removed from a Bloom filter, so deleted and changed values only raise the
+ * false positive rate until the next rebuild. Values registered by other
+ * clients of the database are missed until then as well, which leaves the
+ * column's UNIQUE constraint to reject them. Until the filter is built, every
+ * check queries the database.
+ *
+ * Values are compared lowercased, without diacritics and trailing spaces, as
+ * the database's collation may consider those equal
+ *
+ * @author Emile Pels
+ */
+public class UniqueValueFilter implements UniqueValueFilterMXBean
+{
+
+    /**
+     * Vendor error code MySQL reports a duplicate key with
+     */
+    private static final int MYSQL_DUPLICATE_KEY = 1062;
+
+    /**
+     * Vendor error code (and SQL state) H2 reports a duplicate key with
+     */
+    private static final int H2_DUPLICATE_KEY = 23505;
+
+    /**
+     * Smallest amount of values a filter is sized for, so a nearly empty
+     * table leaves room to grow
+     */
+    private static final int MIN_CAPACITY = 1024;
+
+    /**
+     * Diacritics left behind by decomposing a value
+     */
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Spaces at the end of a value, which the database ignores in comparisons
+     */
+    private static final Pattern TRAILING_SPACES = Pattern.compile(" +$");
+
+    private final DatabaseTables table;
+    private final String column;
+
+    /**
+     * Held while the filter is rebuilt, so only one rebuild runs at a time
+     */
+    private final Object rebuildLock = new Object();
+
+    private BitSet bits;
+    private int bitCount, hashCount;
+    private long entryCount, capacity;
+
+    /**
+     * Values added while a rebuild reads the column, which the rebuilt filter
+     * might have missed. Null while no rebuild is running
+     */
+    private List<String> pendingValues;
+
+    private long checkCount, skippedCount, falsePositiveCount;
+
+    /**
+     * Initializes a new UniqueValueFilter and publishes it over JMX. The filter
+     * answers nothing until rebuild is called
+     *
+     * @param table Table the column belongs to
+     * @param column Unique column to filter
+     * @throws IllegalArgumentException Exception thrown if the column does not
+     * belong to the table
+     */
+    public UniqueValueFilter(DatabaseTables table, String column)
+            throws IllegalArgumentException
+    {
+        if (!table.hasColumn(column))
+        {
+            throw new IllegalArgumentException(String.format("The column %s "
+                    + "does not belong to table %s.", column,
+                    table.getDatabaseIdentifier()));
+        }
+
+        this.table = table;
+        this.column = column;
+
+        DbMetrics.registerUniqueValueFilter(this);
+    }
+
+    /**
+     * Checks whether a value is registered in the column. The database is
+     * only queried if the filter can not rule the value out
+     *
+     * @param value Value to check
+     * @return Boolean indicating whether a row with the value exists
+     */
+    public boolean exists(String value)
+    {
+        return exists(value, null);
+    }
+
+    /**
+     * Checks whether a value is registered in the column for a row other than
+     * one, such as the row being changed. The database is only queried if the
+     * filter can not rule the value out
+     *
+     * @param value Value to check
+     * @param excludedKey Primary key of the row to ignore. Null to check every
+     * row
+     * @return Boolean indicating whether another row with the value exists
+     */
+    public boolean exists(String value, Object excludedKey)
+    {
+        synchronized (this)
+        {
+            checkCount++;
+
+            if (bits != null && !contains(bits, hashCount, value))
+            {
+                skippedCount++;
+
+                return false;
+            }
+        }
+
+        boolean exists = excludedKey == null
+                ? DbManager.exists(table, column, value)
+                : DbManager.forEachRow(String.format("SELECT 1 FROM %s WHERE "
+                        + "%s = ? AND %s <> ? LIMIT 1",
+                        table.getDatabaseIdentifier(), column,
+                        table.getPrimaryKey()), new RowHandler()
+                        {
+                            @Override
+                            public boolean handleRow(ResultSet results)
+                            {
+                                return false;
+                            }
+                        }, value, excludedKey) > 0;
+
+        //The excluded row may hold the value, so only a check of every row
+        //can tell a false positive
+        if (!exists && excludedKey == null)
+        {
+            synchronized (this)
+            {
+                if (bits != null)
+                {
+                    falsePositiveCount++;
+                }
+            }
+        }
+
+        return exists;
+    }
+
+    /**
+     * Adds a value which was written to the column, once the write is
+     * committed. Also called when the database rejected a value as a
+     * duplicate, so the filter learns values registered by other clients
+     *
+     * @param value Value written to the column. Null is ignored
+     */
+    public synchronized void add(String value)
+    {
+        if (value == null)
+        {
+            return;
+        }
+
+        if (pendingValues != null)
+        {
+            pendingValues.add(value);
+        }
+
+        if (bits != null)
+        {
+            set(bits, hashCount, value);
+            entryCount++;
+        }
+    }
+
+    /**
+     * Checks whether an exception reports a duplicate value in a UNIQUE
+     * column or primary key, e.g. because another client registered the same
+     * value after the filter was built. Other integrity constraint violations
+     * (SQL state class 23), such as a missing foreign key or a NULL in a NOT
+     * NULL column, are not duplicates
+     *
+     * @param ex Exception thrown by a write
+     * @return Boolean indicating whether the write was rejected as a duplicate
+     */
+    public static boolean isDuplicateKey(SQLException ex)
+    {
+        return ex.getErrorCode() == MYSQL_DUPLICATE_KEY
+                || ex.getErrorCode() == H2_DUPLICATE_KEY;
+    }
+
+    @Override
+    public boolean rebuild()
+    {
+        synchronized (rebuildLock)
+        {
+            synchronized (this)
+            {
+                pendingValues = new ArrayList<>();
+            }
+
+            final long[] rows = new long[1];
+
+            DbManager.forEachRow("SELECT COUNT(*) FROM "
+                    + table.getDatabaseIdentifier(), new RowHandler()
+                    {
+                        @Override
+                        public boolean handleRow(ResultSet results)
+                                throws SQLException
+                        {
+                            rows[0] = results.getLong(1);
+
+                            return false;
+                        }
+                    });
+
+            //Leave room for the table to double before the rate degrades
+            final long newCapacity = Math.max(MIN_CAPACITY, rows[0] * 2);
+            final int newBitCount = (int) Math.min(Integer.MAX_VALUE,
+                    newCapacity * Math.max(1,
+                            DbConfig.UNIQUE_FILTER_BITS_PER_ENTRY));
+            final int newHashCount = Math.max(1, (int) Math.round(
+                    (double) newBitCount / newCapacity * Math.log(2)));
+            final BitSet newBits = new BitSet(newBitCount);
+            final long[] entries = new long[1];
+
+            int read = DbManager.forEachRow(String.format("SELECT %s FROM %s",
+                    column, table.getDatabaseIdentifier()), new RowHandler()
+                    {
+                        @Override
+                        public boolean handleRow(ResultSet results)
+                                throws SQLException
+                        {
+                            String value = results.getString(1);
+
+                            if (value != null)
+                            {
+                                set(newBits, newBitCount, newHashCount, value);
+                                entries[0]++;
+                            }
+
+                            return true;
+                        }
+                    });
+
+            synchronized (this)
+            {
+                List<String> pending = pendingValues;
+                pendingValues = null;
+
+                if (read < 0)
+                {
+                    return false;
+                }
+
+                for (String value : pending)
+                {
+                    set(newBits, newBitCount, newHashCount, value);
+                    entries[0]++;
+                }
+
+                bits = newBits;
+                bitCount = newBitCount;
+                hashCount = newHashCount;
+                capacity = newCapacity;
+                entryCount = entries[0];
+
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public String getTable()
+    {
+        return table.getDatabaseIdentifier();
+    }
+
+    @Override
+    public String getColumn()
+    {
+        return column;
+    }
+
+    @Override
+    public synchronized boolean isBuilt()
+    {
+        return bits != null;
+    }
+
+    @Override
+    public synchronized long getEntryCount()
+    {
+        return entryCount;
+    }
+
+    @Override
+    public synchronized long getCapacity()
+    {
+        return capacity;
+    }
+
+    @Override
+    public synchronized int getBitCount()
+    {
+        return bitCount;
+    }
+
+    @Override
+    public synchronized int getHashCount()
+    {
+        return hashCount;
+    }
+
+    @Override
+    public synchronized double getExpectedFalsePositiveRate()
+    {
+        if (bits == null)
+        {
+            return 1;
+        }
+
+        //(1 - e^(-kn/m))^k for k hash functions, n values and m bits
+        return Math.pow(1 - Math.exp(-(double) hashCount * entryCount
+                / bitCount), hashCount);
+    }
+
+    @Override
+    public synchronized double getObservedFalsePositiveRate()
+    {
+        long negatives = skippedCount + falsePositiveCount;
+
+        return negatives == 0 ? 0 : (double) falsePositiveCount / negatives;
+    }
+
+    @Override
+    public synchronized long getCheckCount()
+    {
+        return checkCount;
+    }
+
+    @Override
+    public synchronized long getSkippedCount()
+    {
+        return skippedCount;
+    }
+
+    @Override
+    public synchronized long getFalsePositiveCount()
+    {
+        return falsePositiveCount;
+    }
+
+    @Override
+    public synchronized void resetStatistics()
+    {
+        checkCount = 0;
+        skippedCount = 0;
+        falsePositiveCount = 0;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("UniqueValueFilter [%s.%s entries=%d/%d bits=%d "
+                + "hashes=%d expectedFpp=%.4f observedFpp=%.4f checks=%d "
+                + "skipped=%d]", table.getDatabaseIdentifier(), column,
+                entryCount, capacity, bitCount, hashCount,
+                getExpectedFalsePositiveRate(), getObservedFalsePositiveRate(),
+                checkCount, skippedCount);
+    }
+
+    /**
+     * Sets a value's bits in the current filter
+     *
+     * @param filter Bits of the filter
+     * @param hashes Amount of hash functions of the filter
+     * @param value Value to add
+     */
+    private void set(BitSet filter, int hashes, String value)
+    {
+        set(filter, bitCount, hashes, value);
+    }
+
+    /**
+     * Sets a value's bits in a filter
+     *
+     * @param filter Bits of the filter
+     * @param size Amount of bits in the filter
+     * @param hashes Amount of hash functions of the filter
+     * @param value Value to add
+     */
+    private static void set(BitSet filter, int size, int hashes, String value)
+    {
+        long hash = hash(value);
+
+        for (int i = 0; i < hashes; i++)
+        {
+            filter.set(getIndex(hash, i, size));
+        }
+    }
+
+    /**
+     * Checks whether all of a value's bits are set in the current filter
+     *
+     * @param filter Bits of the filter
+     * @param hashes Amount of hash functions of the filter
+     * @param value Value to check
+     * @return Boolean indicating whether the value may be in the filter
+     */
+    private boolean contains(BitSet filter, int hashes, String value)
+    {
+        long hash = hash(value);
+
+        for (int i = 0; i < hashes; i++)
+        {
+            if (!filter.get(getIndex(hash, i, bitCount)))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Derives the position of a value's bit for one of the hash functions,
+     * from the two halves of its 64 bit hash
+     *
+     * @param hash 64 bit hash of the value
+     * @param function Number of the hash function
+     * @param size Amount of bits in the filter
+     * @return Position of the bit
+     */
+    private static int getIndex(long hash, int function, int size)
+    {
+        int combined = (int) hash + function * (int) (hash >>> 32);
+
+        return (combined & Integer.MAX_VALUE) % size;
+    }
+
+    /**
+     * Hashes a value after normalizing it the way the database compares it
+     *
+     * @param value Value to hash
+     * @return 64 bit hash of the normalized value
+     */
+    private static long hash(String value)
+    {
+        String normalized = TRAILING_SPACES.matcher(DIACRITICS.matcher(
+                Normalizer.normalize(value.toLowerCase(Locale.ROOT),
+                        Normalizer.Form.NFD)).replaceAll("")).replaceAll("");
+
+        //FNV-1a over the characters, followed by a finalizer to spread the bits
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < normalized.length(); i++)
+        {
+            hash ^= normalized.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
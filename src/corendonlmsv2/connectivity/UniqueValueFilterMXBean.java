@@ -0,0 +1,114 @@
+package corendonlmsv2.connectivity;
+
+/**
+ * Management interface publishing a unique value filter's false positive
+ * rate and the database lookups it saved over JMX
+ *
+ * @author Emile Pels
+ */
+public interface UniqueValueFilterMXBean
+{
+
+    /**
+     * Gets the name of the table the filtered column belongs to
+     *
+     * @return Name of the table
+     */
+    String getTable();
+
+    /**
+     * Gets the name of the filtered column
+     *
+     * @return Name of the column
+     */
+    String getColumn();
+
+    /**
+     * Gets whether the filter has been built, so it can answer checks
+     *
+     * @return Boolean indicating whether the filter has been built
+     */
+    boolean isBuilt();
+
+    /**
+     * Gets the amount of values added to the filter since it was built
+     *
+     * @return Amount of values in the filter
+     */
+    long getEntryCount();
+
+    /**
+     * Gets the amount of values the filter was sized for. Beyond it, the
+     * false positive rate rises above DbConfig.UNIQUE_FILTER_BITS_PER_ENTRY's
+     * target until the filter is rebuilt
+     *
+     * @return Amount of values the filter was sized for
+     */
+    long getCapacity();
+
+    /**
+     * Gets the amount of bits in the filter
+     *
+     * @return Amount of bits in the filter
+     */
+    int getBitCount();
+
+    /**
+     * Gets the amount of bits set for every value
+     *
+     * @return Amount of hash functions
+     */
+    int getHashCount();
+
+    /**
+     * Gets the chance that a value which is not registered still has to be
+     * looked up in the database, given the values in the filter now
+     *
+     * @return Expected false positive rate, from 0 to 1
+     */
+    double getExpectedFalsePositiveRate();
+
+    /**
+     * Gets the fraction of checks for values which turned out not to be
+     * registered that the filter could not answer on its own
+     *
+     * @return Observed false positive rate, from 0 to 1
+     */
+    double getObservedFalsePositiveRate();
+
+    /**
+     * Gets the amount of checks made through the filter
+     *
+     * @return Amount of checks
+     */
+    long getCheckCount();
+
+    /**
+     * Gets the amount of checks answered without querying the database
+     *
+     * @return Amount of database lookups saved
+     */
+    long getSkippedCount();
+
+    /**
+     * Gets the amount of checks the filter passed on to the database for
+     * values which turned out not to be registered
+     *
+     * @return Amount of false positives
+     */
+    long getFalsePositiveCount();
+
+    /**
+     * Reads every value of the column from the database into a new filter,
+     * sized for the current amount of rows. Values removed since the last
+     * build no longer count towards the false positive rate afterwards
+     *
+     * @return Boolean indicating whether the filter was rebuilt
+     */
+    boolean rebuild();
+
+    /**
+     * Sets every counter back to 0
+     */
+    void resetStatistics();
+}
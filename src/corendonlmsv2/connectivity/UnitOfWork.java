@@ -0,0 +1,313 @@
+package corendonlmsv2.connectivity;
+
+import corendonlmsv2.model.ActionLog;
+import corendonlmsv2.model.IStorable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Groups several writes, and the action logs describing them, into a single
+ * transaction on one pooled connection. Nothing is visible to other users
+ * until commit is called (which is also when the query cache forgets the
+ * results of the tables written to), and everything is rolled back when the
+ * unit of work is closed without being committed, so it is meant to be used
+ * in a try-with-resources block:
+ *
+ * <pre>
+ * try (UnitOfWork work = DbManager.beginUnitOfWork())
+ * {
+ *     work.executeUpdate(...);
+ *     work.log(new ActionLog(...));
+ *     work.commit();
+ * }
+ * </pre>
+ *
+ * @author Emile Pels
+ */
+public class UnitOfWork implements AutoCloseable
+{
+
+    private final ConnectionPool pool;
+    private final QueryCache queryCache;
+    private ManagedConnection connection;
+    private boolean committed;
+
+    /**
+     * Names of the tables written to, whose cached query results are removed
+     * on commit. Null for a table which could not be determined
+     */
+    private final Set<String> writtenTables = new HashSet<>();
+
+    /**
+     * Actions to run once the transaction is committed
+     */
+    private final List<Runnable> commitActions = new ArrayList<>();
+
+    /**
+     * Initializes a new UnitOfWork, starting a transaction on the connection
+     *
+     * @param pool Pool the connection was borrowed from
+     * @param connection Connection to run the transaction on
+     * @param queryCache Cache holding query results of the tables written to
+     * @throws SQLException Exception thrown if the transaction can not be
+     * started. The connection is released before it is thrown
+     */
+    UnitOfWork(ConnectionPool pool, ManagedConnection connection,
+            QueryCache queryCache) throws SQLException
+    {
+        this.pool = pool;
+        this.connection = connection;
+        this.queryCache = queryCache;
+
+        try
+        {
+            connection.getConnection().setAutoCommit(false);
+        } catch (SQLException ex)
+        {
+            close();
+
+            throw ex;
+        }
+    }
+
+    /**
+     * Executes a query as part of this unit of work, so it sees the unit's
+     * own uncommitted writes (and any rows it locks stay locked until the
+     * unit of work ends)
+     *
+     * @param <T> Type of the objects the rows are converted into
+     * @param query SQL query to execute, with a ? placeholder for each
+     * parameter
+     * @param mapper Converts each row into an object
+     * @param parameters Values to bind to the query's placeholders, in order
+     * @return Objects for every row, in the order of the results
+     * @throws SQLException Exception thrown if the query fails
+     */
+    public <T> List<T> query(String query, RowMapper<T> mapper,
+            Object... parameters) throws SQLException
+    {
+        long start = System.nanoTime();
+        List<T> rows = new ArrayList<>();
+        boolean success = false;
+
+        try
+        {
+            PreparedStatement statement = getConnection().prepare(query);
+            statement.setQueryTimeout(DbConfig.QUERY_TIMEOUT_SECONDS);
+            JdbcDatabase.bindParameters(statement, parameters);
+
+            try (ResultSet results = statement.executeQuery())
+            {
+                while (results.next())
+                {
+                    rows.add(mapper.mapRow(results));
+                }
+            }
+
+            success = true;
+
+            return rows;
+        } catch (SQLException ex)
+        {
+            pool.reportFailure(ex);
+
+            throw ex;
+        } finally
+        {
+            JdbcDatabase.recordStatement(DbMetrics.Operation.QUERY, query,
+                    start, success ? rows.size() : -1);
+        }
+    }
+
+    /**
+     * Executes an update as part of this unit of work
+     *
+     * @param update SQL update to execute, with a ? placeholder for each
+     * parameter
+     * @param parameters Values to bind to the update's placeholders, in order
+     * @return Amount of rows affected by the update
+     * @throws SQLException Exception thrown if the update fails
+     */
+    public int executeUpdate(String update, Object... parameters)
+            throws SQLException
+    {
+        return executeUpdate(QueryOptions.DEFAULT, update, parameters);
+    }
+
+    /**
+     * Executes an update as part of this unit of work, with settings other
+     * than the defaults (e.g. no timeout for a schema change)
+     *
+     * @param options Settings for this call, such as its timeout
+     * @param update SQL update to execute, with a ? placeholder for each
+     * parameter
+     * @param parameters Values to bind to the update's placeholders, in order
+     * @return Amount of rows affected by the update
+     * @throws SQLException Exception thrown if the update fails
+     */
+    public int executeUpdate(QueryOptions options, String update,
+            Object... parameters) throws SQLException
+    {
+        long start = System.nanoTime();
+        int rows = -1;
+
+        try
+        {
+            PreparedStatement statement = getConnection().prepare(update);
+            statement.setQueryTimeout(options.getTimeoutSeconds());
+            JdbcDatabase.bindParameters(statement, parameters);
+
+            rows = statement.executeUpdate();
+            writtenTables.add(QueryCache.findWrittenTable(update));
+
+            return rows;
+        } catch (SQLException ex)
+        {
+            pool.reportFailure(ex);
+
+            throw ex;
+        } finally
+        {
+            JdbcDatabase.recordStatement(DbMetrics.Operation.UPDATE, update,
+                    start, rows);
+        }
+    }
+
+    /**
+     * Adds an instance of IStorable to the database as part of this unit of
+     * work
+     *
+     * @param value Instance of IStorable to add to the database
+     * @return Primary key the database generated for the new row
+     * @throws SQLException Exception thrown if the row can not be inserted
+     */
+    public String insert(IStorable value) throws SQLException
+    {
+        String id;
+
+        try
+        {
+            id = JdbcDatabase.insertRow(getConnection(), value);
+            writtenTables.add(value.getTable().getDatabaseIdentifier());
+        } catch (SQLException ex)
+        {
+            pool.reportFailure(ex);
+
+            throw ex;
+        }
+
+        if (id == null)
+        {
+            throw new SQLException("No row was inserted into "
+                    + value.getTable().getDatabaseIdentifier() + ".");
+        }
+
+        return id;
+    }
+
+    /**
+     * Writes an action log as part of this unit of work, so it is only kept
+     * if the changes it describes are committed
+     *
+     * @param log Action log to write
+     * @throws SQLException Exception thrown if the log can not be written
+     */
+    public void log(ActionLog log) throws SQLException
+    {
+        log.setLogId(insert(log));
+    }
+
+    /**
+     * Registers an action to run once this unit of work is committed, such as
+     * updating an in-memory copy of the rows it writes. The action never runs
+     * if the unit of work is rolled back
+     *
+     * @param action Action to run after the commit
+     */
+    public void afterCommit(Runnable action)
+    {
+        commitActions.add(action);
+    }
+
+    /**
+     * Commits every write in this unit of work at once. The unit of work can
+     * not be used afterwards
+     *
+     * @throws SQLException Exception thrown if the transaction can not be
+     * committed, in which case it is rolled back when this unit of work is
+     * closed
+     */
+    public void commit() throws SQLException
+    {
+        try
+        {
+            getConnection().getConnection().commit();
+        } catch (SQLException ex)
+        {
+            pool.reportFailure(ex);
+
+            throw ex;
+        }
+
+        committed = true;
+
+        queryCache.invalidate(writtenTables);
+        close();
+
+        for (Runnable action : commitActions)
+        {
+            action.run();
+        }
+    }
+
+    /**
+     * Rolls back every write in this unit of work and releases its connection.
+     * Closing a unit of work which was committed does nothing
+     */
+    @Override
+    public void close()
+    {
+        if (connection == null)
+        {
+            return;
+        }
+
+        if (!committed)
+        {
+            try
+            {
+                connection.getConnection().rollback();
+            } catch (SQLException ex)
+            {
+                System.err.println("SQL exception: " + ex.getMessage());
+            }
+        }
+
+        //Releasing restores autocommit for the next borrower
+        pool.release(connection);
+        connection = null;
+    }
+
+    /**
+     * Gets the connection the transaction runs on
+     *
+     * @return Connection the transaction runs on
+     * @throws SQLException Exception thrown if this unit of work was already
+     * committed or closed
+     */
+    private ManagedConnection getConnection() throws SQLException
+    {
+        if (connection == null)
+        {
+            throw new SQLException("The unit of work has already been "
+                    + "completed.");
+        }
+
+        return connection;
+    }
+}
@@ -0,0 +1,21 @@
+package corendonlmsv2.connectivity;
+
+/**
+ * Estimates how much memory an object takes up, so a cache can be bounded by
+ * size instead of by its amount of entries
+ *
+ * @author Emile Pels
+ * @param <T> Type of the objects to weigh
+ */
+public interface Weigher<T>
+{
+
+    /**
+     * Estimates the amount of bytes an object takes up, including the objects
+     * it holds on to, such as its strings
+     *
+     * @param value Object to weigh
+     * @return Estimated amount of bytes
+     */
+    public int weigh(T value);
+}
@@ -1,8 +1,17 @@
 package corendonlmsv2.main;
 
+import corendonlmsv2.connectivity.ActionLogWriter;
+import corendonlmsv2.connectivity.DatabaseUnavailableException;
 import corendonlmsv2.connectivity.DbManager;
+import corendonlmsv2.connectivity.DbMetrics;
+import corendonlmsv2.connectivity.LanguageController;
+import corendonlmsv2.connectivity.SchemaMigrator;
 import corendonlmsv2.main.util.MiscUtil;
 import corendonlmsv2.model.ActionLog;
+import corendonlmsv2.model.Customer;
+import corendonlmsv2.model.CustomerIndex;
+import corendonlmsv2.model.LuggageSearchIndex;
+import corendonlmsv2.model.LuggageStatistics;
 import corendonlmsv2.model.UserAccount;
 import corendonlmsv2.model.UserAccount.UserRoles;
 import corendonlmsv2.view.PanelViewer;
@@ -77,9 +86,48 @@ public class CorendonLMSv2
 
         System.out.println("Starting " + APPLICATION_NAME);
 
+        setExceptionHandler();
+
         MiscUtil.setLookAndFeel(LOOK_AND_FEEL);
         DbManager.connect();
 
+        if (!SchemaMigrator.migrate())
+        {
+            //The screens would fail on an outdated schema in unexpected ways
+            System.err.println("Stopping: the database schema could not be "
+                    + "brought up to date");
+
+            if (args.length == 0)
+            {
+                MiscUtil.showMessage(LanguageController.getString(
+                        "schemaMigrationFailed"));
+            }
+
+            System.exit(1);
+        }
+
+        if (args.length > 0)
+        {
+            //Maintenance commands run without showing the user interface
+            System.exit(runCommand(args[0]) ? 0 : 1);
+        }
+
+        //Building the indexes and filters reads whole tables, so it must not
+        //hold up the login screen. Until they are ready, SQL answers for them
+        MiscUtil.createDaemonThreadFactory("startup-indexes").newThread(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        LuggageSearchIndex.ensureBuilt();
+                        Customer.PHONE_NUMBERS.rebuild();
+                        UserAccount.USERNAMES.rebuild();
+                    }
+                }).start();
+        CustomerIndex.reload();
+        DbMetrics.startReporting();
+
         SwingUtilities.invokeLater(new Runnable()
         {
             @Override
@@ -90,6 +138,49 @@ public class CorendonLMSv2
         });
     }
 
+    /**
+     * Runs a maintenance command given on the command line
+     *
+     * @param command Command to run: --rebuild-stats recounts the monthly
+     * luggage statistics, --verify-stats reports where they drifted from the
+     * luggage table, --rebuild-search-index recreates the luggage search
+     * index
+     * @return Boolean indicating whether the command succeeded
+     */
+    private static boolean runCommand(String command)
+    {
+        switch (command)
+        {
+            case "--rebuild-stats":
+                boolean rebuilt = LuggageStatistics.rebuild();
+
+                System.out.println(rebuilt ? "Luggage statistics rebuilt"
+                        : "Rebuilding the luggage statistics failed");
+
+                return rebuilt;
+            case "--verify-stats":
+                int drift = LuggageStatistics.verify();
+
+                System.out.println(drift < 0
+                        ? "Verifying the luggage statistics failed"
+                        : drift + " luggage statistics differ from the "
+                        + "luggage table");
+
+                return drift == 0;
+            case "--rebuild-search-index":
+                boolean indexed = LuggageSearchIndex.rebuild();
+
+                System.out.println(indexed ? "Luggage search index rebuilt"
+                        : "Rebuilding the luggage search index failed");
+
+                return indexed;
+            default:
+                System.err.println("Unknown command: " + command);
+
+                return false;
+        }
+    }
+
     /**
      * Inserts an administrator account into the database. For debugging
      * purposes during development only
@@ -105,6 +196,37 @@ public class CorendonLMSv2
         }
     }
 
+    /**
+     * Registers the handler for exceptions no code caught, including those
+     * thrown on the event dispatch thread. Screens do not check every call
+     * for the database becoming unreachable, so the handler tells the user
+     * about it instead
+     */
+    private static void setExceptionHandler()
+    {
+        Thread.setDefaultUncaughtExceptionHandler(
+                new Thread.UncaughtExceptionHandler()
+                {
+                    @Override
+                    public void uncaughtException(Thread thread,
+                            Throwable ex)
+                    {
+                        if (ex instanceof DatabaseUnavailableException)
+                        {
+                            System.err.println("Database unavailable: "
+                                    + ex.getMessage());
+                            MiscUtil.showDatabaseUnavailable();
+
+                            return;
+                        }
+
+                        System.err.print("Exception in thread \""
+                                + thread.getName() + "\" ");
+                        ex.printStackTrace();
+                    }
+                });
+    }
+
     /**
      * Changes the error output stream to a certain FileOutputStream opened to
      * the specified file name and registers a hook listening for shutdown. Upon
@@ -132,13 +254,24 @@ public class CorendonLMSv2
                 @Override
                 public void run()
                 {
+                    //Write the action logs still waiting in the queue
+                    ActionLogWriter.shutdown();
+                    DbMetrics.stopReporting();
+
                     UserAccount currentUser = UserAccount.getCurrent();
 
                     if (currentUser != null)
                     {
                         //Someone was logged in and closed the application:
                         //write a log to the database
-                        new ActionLog(currentUser, "Signed out").insert();
+                        try
+                        {
+                            new ActionLog(currentUser, "Signed out").insert();
+                        } catch (DatabaseUnavailableException ex)
+                        {
+                            System.err.println("Database unavailable: "
+                                    + ex.getMessage());
+                        }
                     }
 
                     try
@@ -1,10 +1,9 @@
 package corendonlmsv2.main.util;
 
-import corendonlmsv2.connectivity.DbManager;
 import corendonlmsv2.model.Luggage.LuggageStatuses;
+import corendonlmsv2.model.LuggageStatistics;
 import corendonlmsv2.view.panels.DateRangeInput.Months;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.util.Map;
 import org.jfree.chart.JFreeChart;
 import org.jfree.data.category.DefaultCategoryDataset;
 
@@ -15,44 +14,6 @@ import org.jfree.data.category.DefaultCategoryDataset;
 public class GraphUtil
 {
     
-    /**
-     * Gets the amount of luggage for a specified month in a year matching
-     * the specified status
-     * 
-     * @param status The status for the luggage to count
-     * @param month The month the luggage should be registered in
-     * @param year The year the luggage should be registered in
-     * @return The number of pieces of luggage registered in that month
-     * with the specified status
-     */
-    private static int getLuggageForMonth(
-            LuggageStatuses status, int month, int year)
-    {
-        final String query = String.format(
-                  "SELECT COUNT(*) AS count "
-                + "FROM luggage "
-                + "WHERE status = '%s' "
-                + "AND MONTH(date_entered) = %d "
-                + "AND YEAR(date_entered) = %d;", 
-                status.getDatabaseIdentifier(), month, year);
-        
-        final ResultSet results = DbManager.executeQuery(query);
-        
-        try
-        {
-            if (results.next())
-            {
-                return results.getInt("count");
-            }
-        } catch (SQLException ex)
-        {
-            System.err.println("SQL exception: " + ex.getMessage());
-        }
-        
-        return 0;
-    }
-    
-    
     /**
      * Gets a data set containing the luggage ordered by month, year and status
      * 
@@ -67,16 +28,24 @@ public class GraphUtil
             int fromYear, Months toMonth, int toYear)
     {
         final DefaultCategoryDataset dataSet = new DefaultCategoryDataset();
+        final Map<Integer, Map<LuggageStatuses, Integer>> counts
+                = LuggageStatistics.getCounts(fromMonth.getMonthIndex(),
+                        fromYear, toMonth.getMonthIndex(), toYear);
         
         int year = fromYear, month = fromMonth.getMonthIndex();
         
         do
         {
+            Map<LuggageStatuses, Integer> monthCounts
+                    = counts.get(year * 12 + month - 1);
+
             for (LuggageStatuses status : LuggageStatuses.values())
             {
-                int nLuggage = getLuggageForMonth(status, month, year);
+                //Months without luggage are not in the statistics
+                Integer nLuggage = monthCounts == null ? null
+                        : monthCounts.get(status);
 
-                dataSet.addValue(nLuggage, status, 
+                dataSet.addValue(nLuggage == null ? 0 : nLuggage, status, 
                         Months.parse(month) + " " + year);
             }
             
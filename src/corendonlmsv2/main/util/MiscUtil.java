@@ -1,10 +1,15 @@
 package corendonlmsv2.main.util;
 
+import corendonlmsv2.connectivity.LanguageController;
 import corendonlmsv2.main.CorendonLMSv2;
 import java.awt.Component;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 
@@ -16,6 +21,13 @@ import javax.swing.UnsupportedLookAndFeelException;
 public class MiscUtil
 {
 
+    /**
+     * Whether the message telling the user the database can not be reached
+     * is being shown
+     */
+    private static final AtomicBoolean UNAVAILABLE_SHOWN
+            = new AtomicBoolean();
+
     private MiscUtil()
     {
     }
@@ -41,6 +53,31 @@ public class MiscUtil
         return isEmpty;
     }
 
+    /**
+     * Creates a thread factory producing named daemon threads, so background
+     * work never keeps the application from shutting down
+     *
+     * @param name Name for the threads. A sequence number is appended
+     * @return Thread factory producing named daemon threads
+     */
+    public static ThreadFactory createDaemonThreadFactory(final String name)
+    {
+        return new ThreadFactory()
+        {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable,
+                        name + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        };
+    }
+
     /**
      * Attempts setting the LookAndFeel. Uses the system's default if the
      * selected L&F is not installed
@@ -114,4 +151,41 @@ public class MiscUtil
                 CorendonLMSv2.APPLICATION_NAME,
                 JOptionPane.INFORMATION_MESSAGE);
     }
+
+    /**
+     * Tells the user the database can not be reached. May be called from any
+     * thread; only one such message is shown at a time, so a burst of failing
+     * calls does not stack dialogs
+     */
+    public static void showDatabaseUnavailable()
+    {
+        if (!UNAVAILABLE_SHOWN.compareAndSet(false, true))
+        {
+            return;
+        }
+
+        Runnable show = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    showMessage(LanguageController.getString(
+                            "databaseUnavailable"));
+                } finally
+                {
+                    UNAVAILABLE_SHOWN.set(false);
+                }
+            }
+        };
+
+        if (SwingUtilities.isEventDispatchThread())
+        {
+            show.run();
+        } else
+        {
+            SwingUtilities.invokeLater(show);
+        }
+    }
 }
@@ -1,7 +1,6 @@
 package corendonlmsv2.main.util;
 
 import com.lowagie.text.DocumentException;
-import corendonlmsv2.connectivity.DbManager;
 import corendonlmsv2.model.Customer;
 import corendonlmsv2.model.Luggage;
 import corendonlmsv2.model.UserAccount;
@@ -14,8 +13,6 @@ import java.io.OutputStream;
 import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import javax.swing.JOptionPane;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -147,71 +144,44 @@ public class PdfUtil
             builder.append(line).append('\n');
         }
 
-        ResultSet luggageResults = DbManager.getResultSet(Luggage.TABLE,
-                luggageId,
-                Luggage.TABLE.getColumnAt(Luggage.TableColumns.LUGGAGE_ID),
-                true);
+        Luggage luggage = Luggage.getById(luggageId);
 
-        try
+        if (luggage != null)
         {
-            if (luggageResults.next())
+            result = builder.toString().replace("-luggage-", luggageId);
+
+            result = result.replace("-brand-", luggage.getBrandName());
+            result = result.replace("-color-", luggage.getColor());
+            result = result.replace("-status-",
+                    luggage.getStatus().getDatabaseIdentifier());
+            result = result.replace("-details-", luggage.getDetails());
+
+            String customerId = luggage.getCustomerId();
+
+            if (customerId != null)
             {
-                result = builder.toString().replace("-luggage-", luggageId);
-
-                result = result.replace("-brand-", luggageResults.getString(
-                        Luggage.TABLE.getColumnAt(
-                                Luggage.TableColumns.BRAND_NAME)));
-                result = result.replace("-color-", luggageResults.getString(
-                        Luggage.TABLE.getColumnAt(
-                                Luggage.TableColumns.COLOR)));
-                result = result.replace("-status-", luggageResults.getString(
-                        Luggage.TABLE.getColumnAt(
-                                Luggage.TableColumns.STATUS)));
-                result = result.replace("-details-", luggageResults.getString(
-                        Luggage.TABLE.getColumnAt(
-                                Luggage.TableColumns.DETAILS)));
-
-                String customerId = luggageResults.getString(
-                        Luggage.TABLE.getColumnAt(
-                                Luggage.TableColumns.CUSTOMER_ID));
-
-                if (customerId != null)
-                {
-                    ResultSet cusResults = DbManager.getResultSet(
-                            Customer.TABLE, customerId,
-                            Customer.TABLE.getColumnAt(
-                                    Customer.TableColumns.CUSTOMER_ID), true);
-
-                    if (cusResults.next())
-                    {
-                        result = result.replace("-name-", cusResults.getString(
-                                Customer.TABLE.getColumnAt(
-                                        Customer.TableColumns.NAME)));
-                        result = result.replace("-address-", cusResults.getString(
-                                Customer.TABLE.getColumnAt(
-                                        Customer.TableColumns.ADDRESS)));
-                        result = result.replace("-country-", cusResults.getString(
-                                Customer.TABLE.getColumnAt(
-                                        Customer.TableColumns.COUNTRY)));
-                        result = result.replace("-email-", cusResults.getString(
-                                Customer.TABLE.getColumnAt(
-                                        Customer.TableColumns.EMAIL_ADDRESS)));
-                        result = result.replace("-phone-", cusResults.getString(
-                                Customer.TABLE.getColumnAt(
-                                        Customer.TableColumns.PHONE_NUMBER)));
-                    }
-                }
+                Customer customer = Customer.getById(customerId);
 
-                UserAccount currentUser = UserAccount.getCurrent();
-                if (currentUser != null)
+                if (customer != null)
                 {
-                    result = result.replace("-employee-",
-                            currentUser.getUsername());
+                    result = result.replace("-name-", customer.getName());
+                    result = result.replace("-address-",
+                            customer.getAddress());
+                    result = result.replace("-country-",
+                            customer.getCountry());
+                    result = result.replace("-email-",
+                            customer.getEmailAddress());
+                    result = result.replace("-phone-",
+                            customer.getPhoneNumber());
                 }
             }
-        } catch (SQLException ex)
-        {
-            System.err.println("SQL exception: " + ex.getMessage());
+
+            UserAccount currentUser = UserAccount.getCurrent();
+            if (currentUser != null)
+            {
+                result = result.replace("-employee-",
+                        currentUser.getUsername());
+            }
         }
 
         return result;
@@ -1,5 +1,6 @@
 package corendonlmsv2.model;
 
+import corendonlmsv2.connectivity.ActionLogWriter;
 import corendonlmsv2.connectivity.DbManager;
 import corendonlmsv2.main.util.DateUtil;
 
@@ -31,6 +32,11 @@ public class ActionLog implements IStorable
      */
     private final String message;
 
+    /**
+     * ID the database generated for this log. Null until it is inserted
+     */
+    private String logId;
+
     /**
      * Initializes a new object of ActionLog
      *
@@ -68,6 +74,26 @@ public class ActionLog implements IStorable
         return dateTime;
     }
 
+    /**
+     * Get the ID for the action log
+     *
+     * @return ID for the action log. Null if it has not been inserted
+     */
+    public String getLogId()
+    {
+        return logId;
+    }
+
+    /**
+     * Sets the ID for the action log
+     *
+     * @param logId New ID for the action log
+     */
+    public void setLogId(String logId)
+    {
+        this.logId = logId;
+    }
+
     /**
      * Get the message for the action log
      *
@@ -98,15 +124,40 @@ public class ActionLog implements IStorable
     public String getUpdate()
     {
         return String.format("INSERT INTO %s (username, user_role, date_time, "
-                + "log_message) VALUES ('%s', '%s', '%s', '%s')",
-                TABLE.getDatabaseIdentifier(), userAccount.getUsername(),
-                userAccount.getUserRole(), dateTime, message);
+                + "log_message) VALUES (?, ?, ?, ?)",
+                TABLE.getDatabaseIdentifier());
+    }
+
+    @Override
+    public Object[] getParameters()
+    {
+        return new Object[]
+        {
+            userAccount.getUsername(), userAccount.getUserRole(), dateTime,
+            message
+        };
     }
     
     @Override
-    public boolean insert()
+    public String insert()
+    {
+        String id = DbManager.insert(this);
+
+        if (id != null)
+        {
+            setLogId(id);
+        }
+
+        return id;
+    }
+    
+    /**
+     * Queues this log to be written to the database in the background by
+     * ActionLogWriter, rather than inserting it right away
+     */
+    public void queue()
     {
-        return DbManager.insert(this);
+        ActionLogWriter.append(this);
     }
     
     /**
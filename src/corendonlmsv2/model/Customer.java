@@ -1,12 +1,16 @@
 package corendonlmsv2.model;
 
+import corendonlmsv2.connectivity.DbConfig;
 import corendonlmsv2.connectivity.DbManager;
+import corendonlmsv2.connectivity.EntityCache;
 import corendonlmsv2.connectivity.LanguageController;
-import corendonlmsv2.main.util.MiscUtil;
+import corendonlmsv2.connectivity.RowMapper;
+import corendonlmsv2.connectivity.UniqueValueFilter;
+import corendonlmsv2.connectivity.UnitOfWork;
+import corendonlmsv2.connectivity.Weigher;
 import corendonlmsv2.main.util.StringUtil;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -22,6 +26,63 @@ public class Customer implements IStorable
      */
     public static final DatabaseTables TABLE = DatabaseTables.CUSTOMERS;
 
+    /**
+     * Filters the registered phone numbers, so checking a new number rarely
+     * needs the database
+     */
+    public static final UniqueValueFilter PHONE_NUMBERS
+            = new UniqueValueFilter(TABLE,
+                    TABLE.getColumnAt(TableColumns.PHONE_NUMBER));
+
+    /**
+     * Converts a row from TABLE into a Customer instance
+     */
+    public static final RowMapper<Customer> ROW_MAPPER
+            = new RowMapper<Customer>()
+            {
+                @Override
+                public Customer mapRow(ResultSet results) throws SQLException
+                {
+                    Customer customer = new Customer(
+                            results.getString(TABLE.getColumnAt(
+                                    TableColumns.ADDRESS)),
+                            results.getString(TABLE.getColumnAt(
+                                    TableColumns.COUNTRY)),
+                            results.getString(TABLE.getColumnAt(
+                                    TableColumns.EMAIL_ADDRESS)),
+                            results.getString(TABLE.getColumnAt(
+                                    TableColumns.NAME)),
+                            results.getString(TABLE.getColumnAt(
+                                    TableColumns.PHONE_NUMBER))
+                    );
+                    customer.setCustomerId(results.getString(
+                            TABLE.getColumnAt(TableColumns.CUSTOMER_ID)));
+
+                    return customer;
+                }
+            };
+
+    /**
+     * Estimates the memory a customer takes up in CACHE
+     */
+    private static final Weigher<Customer> WEIGHER = new Weigher<Customer>()
+    {
+        @Override
+        public int weigh(Customer customer)
+        {
+            return EntityCache.estimateSize(customer.address,
+                    customer.country, customer.emailAddress, customer.name,
+                    customer.phoneNumber, customer.customerId);
+        }
+    };
+
+    /**
+     * Customers recently looked up by their ID
+     */
+    private static final EntityCache<Customer> CACHE = new EntityCache<>(
+            TABLE, TABLE.getColumns(), ROW_MAPPER, WEIGHER,
+            DbConfig.ENTITY_CACHE_MAX_BYTES, DbConfig.ENTITY_CACHE_TTL_MILLIS);
+
     private final String address, country, emailAddress, name, phoneNumber;
     private String customerId;
 
@@ -53,38 +114,21 @@ public class Customer implements IStorable
      */
     public static List<Customer> getAllCustomers()
     {
-        List<Customer> customers = new ArrayList<>();
-
-        ResultSet results = DbManager.getResultSet(TABLE);
-
-        String customerIdColumn = TABLE.getColumnAt(TableColumns.CUSTOMER_ID),
-                nameColumn = TABLE.getColumnAt(TableColumns.NAME),
-                addressColumn = TABLE.getColumnAt(TableColumns.ADDRESS),
-                countryColumn = TABLE.getColumnAt(TableColumns.COUNTRY),
-                emailColumn = TABLE.getColumnAt(TableColumns.EMAIL_ADDRESS),
-                phoneColumn = TABLE.getColumnAt(TableColumns.PHONE_NUMBER);
-
-        try
-        {
-            while (results.next())
-            {
-                Customer customer = new Customer(
-                        results.getString(addressColumn),
-                        results.getString(countryColumn),
-                        results.getString(emailColumn),
-                        results.getString(nameColumn),
-                        results.getString(phoneColumn)
-                );
-                customer.setCustomerId(results.getString(customerIdColumn));
-
-                customers.add(customer);
-            }
-        } catch (SQLException ex)
-        {
-            System.err.println("SQL exception: " + ex.getMessage());
-        }
+        return DbManager.query("SELECT * FROM " + TABLE.getDatabaseIdentifier(),
+                ROW_MAPPER);
+    }
 
-        return customers;
+    /**
+     * Gets a customer by their ID. Repeated lookups are answered from a cache
+     * until the customer is changed or deleted
+     *
+     * @param customerId ID of the customer
+     * @return Customer with the ID. Null if there is none or it could not be
+     * read. Must not be changed, as it is shared with other callers
+     */
+    public static Customer getById(String customerId)
+    {
+        return CACHE.get(customerId);
     }
 
     /**
@@ -106,11 +150,10 @@ public class Customer implements IStorable
                     + " null or whitespace.");
         }
 
-        //Get the rows in TABLE where the customerId matches (absolute)
-        ResultSet results = DbManager.getResultSet(TABLE, customerId,
-                TABLE.getColumnAt(TableColumns.CUSTOMER_ID), true);
-
-        return !MiscUtil.isResultSetEmpty(results);
+        //Not answered from the cache, which is for display lookups only and
+        //may miss customers other clients registered
+        return DbManager.exists(TABLE,
+                TABLE.getColumnAt(TableColumns.CUSTOMER_ID), customerId);
     }
 
     /**
@@ -132,11 +175,7 @@ public class Customer implements IStorable
                     + " null or whitespace.");
         }
 
-        //Get the rows in TABLE where the customerId matches (absolute)
-        ResultSet results = DbManager.getResultSet(TABLE, phoneNumber,
-                TABLE.getColumnAt(TableColumns.PHONE_NUMBER), true);
-
-        return !MiscUtil.isResultSetEmpty(results);
+        return PHONE_NUMBERS.exists(phoneNumber);
     }
 
     /**
@@ -225,15 +264,196 @@ public class Customer implements IStorable
         }
 
         return String.format("INSERT INTO %s (name, address, country, "
-                + "email_address, phone_number) VALUES ('%s', '%s', '%s', "
-                + "'%s', '%s')", TABLE.getDatabaseIdentifier(), name, address,
-                country, emailAddress, phoneNumber);
+                + "email_address, phone_number) VALUES (?, ?, ?, ?, ?)",
+                TABLE.getDatabaseIdentifier());
     }
 
     @Override
-    public boolean insert()
+    public Object[] getParameters()
+    {
+        return new Object[]
+        {
+            name, address, country, emailAddress, phoneNumber
+        };
+    }
+
+    /**
+     * Adds this customer to the database and the customer index, in a
+     * transaction of its own
+     *
+     * @return Customer ID the database generated. Null if the customer could
+     * not be inserted
+     */
+    @Override
+    public String insert()
+    {
+        try (UnitOfWork work = DbManager.beginUnitOfWork())
+        {
+            String id = insert(work);
+            work.commit();
+
+            return id;
+        } catch (SQLException ex)
+        {
+            System.err.println("SQL exception: " + ex.getMessage());
+
+            setCustomerId(null);
+
+            return null;
+        }
+    }
+
+    /**
+     * Adds this customer to the database as part of a unit of work. The
+     * customer is added to the customer index and phone number filter once
+     * the unit of work is committed
+     *
+     * @param work Unit of work to insert the customer in
+     * @return Customer ID the database generated
+     * @throws SQLException Exception thrown if the customer can not be
+     * inserted
+     * @throws IllegalArgumentException Exception thrown if the phone number is
+     * already registered to another customer
+     */
+    public String insert(UnitOfWork work) throws SQLException,
+            IllegalArgumentException
     {
-        return DbManager.insert(this);
+        final String id;
+
+        try
+        {
+            id = work.insert(this);
+        } catch (SQLException ex)
+        {
+            //Registered by another client after the filter was built
+            if (UniqueValueFilter.isDuplicateKey(ex))
+            {
+                PHONE_NUMBERS.add(phoneNumber);
+
+                throw new IllegalArgumentException(
+                        LanguageController.getString("numberRegistered"));
+            }
+
+            throw ex;
+        }
+
+        setCustomerId(id);
+
+        work.afterCommit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                PHONE_NUMBERS.add(phoneNumber);
+                CustomerIndex.put(id, name, phoneNumber);
+            }
+        });
+
+        return id;
+    }
+
+    /**
+     * Changes an existing customer's details as part of a unit of work. The
+     * cached customer, the customer index and the phone number filter are
+     * updated once the unit of work is committed
+     *
+     * @param work Unit of work to update the customer in
+     * @param customerId ID of the customer to update
+     * @param name Customer's new name
+     * @param address Customer's new address
+     * @param country Customer's new country of residence
+     * @param emailAddress Customer's new e-mail address
+     * @param phoneNumber Customer's new phone number
+     * @return Amount of customers updated
+     * @throws SQLException Exception thrown if the customer can not be updated
+     * @throws IllegalArgumentException Exception thrown if the phone number is
+     * already registered to another customer
+     */
+    public static int update(UnitOfWork work, final String customerId,
+            final String name, String address, String country,
+            String emailAddress, final String phoneNumber)
+            throws SQLException, IllegalArgumentException
+    {
+        if (PHONE_NUMBERS.exists(phoneNumber, customerId))
+        {
+            throw new IllegalArgumentException(
+                    LanguageController.getString("numberRegistered"));
+        }
+
+        String update = String.format("UPDATE %s SET %s=?, %s=?, %s=?, %s=?,"
+                + " %s=? WHERE %s=?", TABLE.getDatabaseIdentifier(),
+                TABLE.getColumnAt(TableColumns.NAME),
+                TABLE.getColumnAt(TableColumns.ADDRESS),
+                TABLE.getColumnAt(TableColumns.COUNTRY),
+                TABLE.getColumnAt(TableColumns.EMAIL_ADDRESS),
+                TABLE.getColumnAt(TableColumns.PHONE_NUMBER),
+                TABLE.getColumnAt(TableColumns.CUSTOMER_ID));
+
+        int updated;
+
+        try
+        {
+            updated = work.executeUpdate(update, name, address, country,
+                    emailAddress, phoneNumber, customerId);
+        } catch (SQLException ex)
+        {
+            //Registered by another client after the check
+            if (UniqueValueFilter.isDuplicateKey(ex))
+            {
+                PHONE_NUMBERS.add(phoneNumber);
+
+                throw new IllegalArgumentException(
+                        LanguageController.getString("numberRegistered"));
+            }
+
+            throw ex;
+        }
+
+        work.afterCommit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                CACHE.invalidate(customerId);
+                PHONE_NUMBERS.add(phoneNumber);
+                CustomerIndex.put(customerId, name, phoneNumber);
+            }
+        });
+
+        return updated;
+    }
+
+    /**
+     * Deletes a customer and all of their luggage as part of a unit of work.
+     * The customer is removed from the cache and the customer index once the
+     * unit of work is committed
+     *
+     * @param work Unit of work to delete the customer in
+     * @param customerId ID of the customer to delete
+     * @return Amount of customers deleted
+     * @throws SQLException Exception thrown if the customer can not be deleted
+     */
+    public static int delete(UnitOfWork work, final String customerId)
+            throws SQLException
+    {
+        Luggage.delete(work, Luggage.TABLE.getColumnAt(
+                Luggage.TableColumns.CUSTOMER_ID), customerId);
+
+        int deleted = work.executeUpdate(String.format("DELETE FROM %s WHERE"
+                + " %s=?", TABLE.getDatabaseIdentifier(),
+                TABLE.getColumnAt(TableColumns.CUSTOMER_ID)), customerId);
+
+        work.afterCommit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                CACHE.invalidate(customerId);
+                CustomerIndex.remove(customerId);
+            }
+        });
+
+        return deleted;
     }
 
     /**
@@ -0,0 +1,680 @@
+package corendonlmsv2.model;
+
+import corendonlmsv2.connectivity.DatabaseUnavailableException;
+import corendonlmsv2.connectivity.DbConfig;
+import corendonlmsv2.connectivity.DbManager;
+import corendonlmsv2.connectivity.PageQuery;
+import corendonlmsv2.connectivity.RowHandler;
+import corendonlmsv2.main.util.MiscUtil;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory prefix index over the customers' phone numbers and names, for
+ * type-ahead lookups which must answer while the user types. Phone numbers
+ * are indexed by their digits only, so "+31 (0)6-1234" and "31061234" are the
+ * same key; names are indexed per word, lowercased and without diacritics, so
+ * "jan" finds "Jan de Vries" and "vries jan" finds him too.
+ *
+ * The index only adds to the literal search in the database, finding the
+ * customers whose phone number is formatted differently or whose name words
+ * were typed in another order; it never replaces it. It is read from the
+ * customers table in the background and kept up to date by the writes made
+ * through Customer's unit of work methods, once their transaction is
+ * committed. Changes made by other clients of the database are missed until
+ * the index is read again, so after DbConfig.CUSTOMER_INDEX_TTL_MILLIS it is
+ * no longer used until a fresh copy has been read
+ *
+ * @author Emile Pels
+ */
+public final class CustomerIndex
+{
+
+    /**
+     * Characters a phone number may consist of besides its digits
+     */
+    private static final Pattern PHONE_PATTERN
+            = Pattern.compile("[\\d\\s+()./-]*\\d[\\d\\s+()./-]*");
+
+    /**
+     * Everything in a phone number which is not a digit
+     */
+    private static final Pattern NON_DIGITS = Pattern.compile("\\D+");
+
+    /**
+     * Separates the words of a name
+     */
+    private static final Pattern WORD_SEPARATOR
+            = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * Diacritics left behind by decomposing a name
+     */
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Reads the index, so no lookup ever waits for the customers table
+     */
+    private static final ExecutorService LOADER
+            = Executors.newSingleThreadExecutor(
+                    MiscUtil.createDaemonThreadFactory("customer-index"));
+
+    /**
+     * Held while the index is read, so only one read runs at a time
+     */
+    private static final Object LOAD_LOCK = new Object();
+
+    /**
+     * Index lookups are answered from. Null until it is first read
+     */
+    private static Index _index;
+
+    /**
+     * Time in milliseconds the index was read at
+     */
+    private static long _loadedAt;
+
+    /**
+     * Indicates whether a read of the index is queued or running
+     */
+    private static boolean _loading;
+
+    /**
+     * Changes committed while the index is read, which the read may have
+     * missed, keyed by customer ID. A null value removes the customer. Null
+     * while the index is not being read
+     */
+    private static Map<Long, Keys> _pendingChanges;
+
+    private CustomerIndex()
+    {
+    }
+
+    /**
+     * Finds the customers whose phone number or name starts with a text. A
+     * text of digits and phone number punctuation is looked up in the phone
+     * numbers; any other text in the names, where every word of the text must
+     * start a word of the name. Shorter matches come first, then newer
+     * customers. Never waits for the index to be read: if it has not been
+     * read yet or it expired, nothing is found and it is read in the
+     * background
+     *
+     * @param text Text the user typed
+     * @param limit Maximum amount of customer IDs to return
+     * @return IDs of the matching customers, best match first. Empty if none
+     * match, the index is not available or every word of a text of several
+     * words matches more than DbConfig.CUSTOMER_INDEX_COLLECT_LIMIT customers
+     */
+    public static synchronized List<Long> lookup(String text, int limit)
+    {
+        if (text == null || limit < 1)
+        {
+            return new ArrayList<>();
+        }
+
+        if (_index == null || System.currentTimeMillis() - _loadedAt
+                > DbConfig.CUSTOMER_INDEX_TTL_MILLIS)
+        {
+            reload();
+
+            return new ArrayList<>();
+        }
+
+        return _index.lookup(text, limit);
+    }
+
+    /**
+     * Searches a customer query for a text in every column, also matching the
+     * customers the index finds for it (as found by lookup). If the index
+     * finds more than DbConfig.TYPE_AHEAD_LIMIT customers, or the text is too
+     * common for it to look up, only the plain search is used
+     *
+     * @param <T> Type of the objects the rows are converted into
+     * @param query Query reading the customers table
+     * @param text Text the user typed. Null or empty to stop searching
+     * @return Copy of the query searching for the text
+     */
+    public static <T> PageQuery<T> search(PageQuery<T> query, String text)
+    {
+        PageQuery<T> search = query.search(text);
+        List<Long> ids = lookup(text, DbConfig.TYPE_AHEAD_LIMIT + 1);
+
+        if (ids.isEmpty() || ids.size() > DbConfig.TYPE_AHEAD_LIMIT)
+        {
+            return search;
+        }
+
+        return search.orKeyIn(ids.toArray());
+    }
+
+    /**
+     * Adds a customer to the index, or replaces its keys if it is indexed
+     * already
+     *
+     * @param customerId ID of the customer
+     * @param name Customer's name
+     * @param phoneNumber Customer's phone number
+     */
+    static synchronized void put(String customerId, String name,
+            String phoneNumber)
+    {
+        change(Long.parseLong(customerId), new Keys(
+                normalizePhoneNumber(phoneNumber), normalizeName(name)));
+    }
+
+    /**
+     * Removes a customer from the index
+     *
+     * @param customerId ID of the customer
+     */
+    static synchronized void remove(String customerId)
+    {
+        change(Long.parseLong(customerId), null);
+    }
+
+    /**
+     * Reads the index from the customers table again in the background, e.g.
+     * on start up or after customers were changed outside this application.
+     * Lookups keep being answered from the previous index meanwhile, unless
+     * it expired. Does nothing if a read is already queued or running
+     */
+    public static synchronized void reload()
+    {
+        if (_loading)
+        {
+            return;
+        }
+
+        _loading = true;
+
+        LOADER.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    load();
+                } catch (DatabaseUnavailableException ex)
+                {
+                    //The next lookup tries again
+                    System.err.println("Database unavailable: "
+                            + ex.getMessage());
+                } finally
+                {
+                    synchronized (CustomerIndex.class)
+                    {
+                        _loading = false;
+                        _pendingChanges = null;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads every customer into a new index and replaces the current one with
+     * it. Lookups are not blocked while the customers table is read
+     *
+     * @return Boolean indicating whether the index was read
+     */
+    private static boolean load()
+    {
+        synchronized (LOAD_LOCK)
+        {
+            synchronized (CustomerIndex.class)
+            {
+                _pendingChanges = new LinkedHashMap<>();
+            }
+
+            final String idColumn = Customer.TABLE.getColumnAt(
+                    Customer.TableColumns.CUSTOMER_ID);
+            final String nameColumn = Customer.TABLE.getColumnAt(
+                    Customer.TableColumns.NAME);
+            final String phoneColumn = Customer.TABLE.getColumnAt(
+                    Customer.TableColumns.PHONE_NUMBER);
+            final Index index = new Index();
+
+            int rows = DbManager.forEachRow(String.format("SELECT %s, %s, %s "
+                    + "FROM %s", idColumn, nameColumn, phoneColumn,
+                    Customer.TABLE.getDatabaseIdentifier()), new RowHandler()
+                    {
+                        @Override
+                        public boolean handleRow(ResultSet results)
+                                throws SQLException
+                        {
+                            index.put(results.getLong(idColumn), new Keys(
+                                    normalizePhoneNumber(results.getString(
+                                                    phoneColumn)),
+                                    normalizeName(results.getString(
+                                                    nameColumn))));
+
+                            return true;
+                        }
+                    });
+
+            synchronized (CustomerIndex.class)
+            {
+                Map<Long, Keys> pending = _pendingChanges;
+                _pendingChanges = null;
+
+                if (rows < 0)
+                {
+                    return false;
+                }
+
+                for (Map.Entry<Long, Keys> change : pending.entrySet())
+                {
+                    index.remove(change.getKey());
+
+                    if (change.getValue() != null)
+                    {
+                        index.put(change.getKey(), change.getValue());
+                    }
+                }
+
+                _index = index;
+                _loadedAt = System.currentTimeMillis();
+
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Applies a committed change to the index, and to the index being read if
+     * a read is running
+     *
+     * @param id ID of the customer
+     * @param keys Keys to store the customer under. Null to remove it
+     */
+    private static void change(long id, Keys keys)
+    {
+        if (_pendingChanges != null)
+        {
+            _pendingChanges.put(id, keys);
+        }
+
+        if (_index != null)
+        {
+            _index.remove(id);
+
+            if (keys != null)
+            {
+                _index.put(id, keys);
+            }
+        }
+    }
+
+    /**
+     * Collects the customers stored under every key starting with a prefix,
+     * breadth first so shorter keys come before longer ones
+     *
+     * @param root Root of the trie to search
+     * @param prefix Prefix the keys must start with
+     * @param limit Maximum amount of customer IDs to collect
+     * @return IDs of the customers, in order of their key's length and then
+     * newest first
+     */
+    private static Set<Long> collect(Node root, String prefix, int limit)
+    {
+        Set<Long> ids = new LinkedHashSet<>();
+        Node node = root.find(prefix);
+
+        if (node == null)
+        {
+            return ids;
+        }
+
+        Deque<Node> queue = new ArrayDeque<>();
+        queue.add(node);
+
+        while (!queue.isEmpty() && ids.size() < limit)
+        {
+            Node current = queue.poll();
+
+            for (Long id : current.ids)
+            {
+                ids.add(id);
+
+                if (ids.size() == limit)
+                {
+                    break;
+                }
+            }
+
+            queue.addAll(current.children.values());
+        }
+
+        return ids;
+    }
+
+    /**
+     * Reduces a phone number to its digits
+     *
+     * @param phoneNumber Phone number to normalize. May be null
+     * @return Digits of the phone number
+     */
+    static String normalizePhoneNumber(String phoneNumber)
+    {
+        return phoneNumber == null ? ""
+                : NON_DIGITS.matcher(phoneNumber).replaceAll("");
+    }
+
+    /**
+     * Splits a name into its distinct words, lowercased and without
+     * diacritics
+     *
+     * @param name Name to normalize. May be null
+     * @return Words of the name, in order of first appearance
+     */
+    static List<String> normalizeName(String name)
+    {
+        Set<String> words = new LinkedHashSet<>();
+
+        if (name != null)
+        {
+            String normalized = DIACRITICS.matcher(Normalizer.normalize(
+                    name.toLowerCase(Locale.ROOT), Normalizer.Form.NFD))
+                    .replaceAll("");
+
+            for (String word : WORD_SEPARATOR.split(normalized))
+            {
+                if (!word.isEmpty())
+                {
+                    words.add(word);
+                }
+            }
+        }
+
+        return new ArrayList<>(words);
+    }
+
+    /**
+     * Tries of the customers' phone numbers and name words, with the keys
+     * every customer is stored under
+     */
+    private static class Index
+    {
+
+        private final Node phoneRoot = new Node();
+        private final Node nameRoot = new Node();
+
+        /**
+         * Keys every indexed customer is stored under, to remove them again
+         * when the customer is changed or deleted
+         */
+        private final Map<Long, Keys> customers = new HashMap<>();
+
+        /**
+         * Finds the customers whose phone number or name starts with a text,
+         * as described by CustomerIndex.lookup
+         *
+         * @param text Text the user typed
+         * @param limit Maximum amount of customer IDs to return
+         * @return IDs of the matching customers, best match first
+         */
+        private List<Long> lookup(String text, int limit)
+        {
+            if (PHONE_PATTERN.matcher(text).matches())
+            {
+                return new ArrayList<>(collect(phoneRoot,
+                        normalizePhoneNumber(text), limit));
+            }
+
+            List<String> words = normalizeName(text);
+
+            if (words.isEmpty())
+            {
+                return new ArrayList<>();
+            }
+
+            //Only the customers matching one word are collected; the other
+            //words are checked against their names
+            Set<Long> matches = null;
+            String collected = null;
+
+            for (String word : words)
+            {
+                Set<Long> ids = collect(nameRoot, word, words.size() == 1
+                        ? limit : DbConfig.CUSTOMER_INDEX_COLLECT_LIMIT + 1);
+
+                if (words.size() == 1
+                        || ids.size() <= DbConfig.CUSTOMER_INDEX_COLLECT_LIMIT)
+                {
+                    matches = ids;
+                    collected = word;
+                    break;
+                }
+            }
+
+            List<Long> ids = new ArrayList<>();
+
+            if (matches == null)
+            {
+                return ids;
+            }
+
+            for (Long id : matches)
+            {
+                if (startsWords(customers.get(id).words, words, collected))
+                {
+                    ids.add(id);
+
+                    if (ids.size() == limit)
+                    {
+                        break;
+                    }
+                }
+            }
+
+            return ids;
+        }
+
+        /**
+         * Checks whether every word of a text starts a word of a name
+         *
+         * @param nameWords Words of the name
+         * @param words Words of the text
+         * @param skipped Word of the text which is known to match
+         * @return Boolean indicating whether every word of the text starts a
+         * word of the name
+         */
+        private boolean startsWords(List<String> nameWords, List<String> words,
+                String skipped)
+        {
+            for (String word : words)
+            {
+                if (word.equals(skipped))
+                {
+                    continue;
+                }
+
+                boolean found = false;
+
+                for (String nameWord : nameWords)
+                {
+                    if (nameWord.startsWith(word))
+                    {
+                        found = true;
+                        break;
+                    }
+                }
+
+                if (!found)
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Stores a customer under its phone number and the words of its name
+         *
+         * @param id ID of the customer
+         * @param keys Normalized phone number and name words
+         */
+        private void put(long id, Keys keys)
+        {
+            if (!keys.phoneNumber.isEmpty())
+            {
+                phoneRoot.insert(keys.phoneNumber, id);
+            }
+
+            for (String word : keys.words)
+            {
+                nameRoot.insert(word, id);
+            }
+
+            customers.put(id, keys);
+        }
+
+        /**
+         * Removes a customer from every key it is stored under
+         *
+         * @param id ID of the customer
+         */
+        private void remove(long id)
+        {
+            Keys keys = customers.remove(id);
+
+            if (keys == null)
+            {
+                return;
+            }
+
+            phoneRoot.remove(keys.phoneNumber, 0, id);
+
+            for (String word : keys.words)
+            {
+                nameRoot.remove(word, 0, id);
+            }
+        }
+    }
+
+    /**
+     * Normalized keys a customer is stored under
+     */
+    private static class Keys
+    {
+
+        private final String phoneNumber;
+        private final List<String> words;
+
+        /**
+         * Initializes a new Keys instance
+         *
+         * @param phoneNumber Digits of the customer's phone number
+         * @param words Words of the customer's name
+         */
+        private Keys(String phoneNumber, List<String> words)
+        {
+            this.phoneNumber = phoneNumber;
+            this.words = words;
+        }
+    }
+
+    /**
+     * Node of a trie, holding the customers whose key ends here
+     */
+    private static class Node
+    {
+
+        private final Map<Character, Node> children = new HashMap<>();
+
+        /**
+         * Customers stored under this node's key, newest first
+         */
+        private final Set<Long> ids = new TreeSet<>(
+                Collections.reverseOrder());
+
+        /**
+         * Stores a customer under a key below this node
+         *
+         * @param key Key to store the customer under
+         * @param id ID of the customer
+         */
+        private void insert(String key, long id)
+        {
+            Node node = this;
+
+            for (int i = 0; i < key.length(); i++)
+            {
+                Node child = node.children.get(key.charAt(i));
+
+                if (child == null)
+                {
+                    child = new Node();
+                    node.children.put(key.charAt(i), child);
+                }
+
+                node = child;
+            }
+
+            node.ids.add(id);
+        }
+
+        /**
+         * Removes a customer from a key below this node, pruning the nodes
+         * left without customers
+         *
+         * @param key Key the customer is stored under
+         * @param index Position in the key this node stands for
+         * @param id ID of the customer
+         * @return Boolean indicating whether this node is empty now
+         */
+        private boolean remove(String key, int index, long id)
+        {
+            if (index == key.length())
+            {
+                ids.remove(id);
+            } else
+            {
+                Node child = children.get(key.charAt(index));
+
+                if (child != null && child.remove(key, index + 1, id))
+                {
+                    children.remove(key.charAt(index));
+                }
+            }
+
+            return ids.isEmpty() && children.isEmpty();
+        }
+
+        /**
+         * Finds the node standing for a key below this node
+         *
+         * @param key Key to find
+         * @return Node of the key. Null if no key starts with it
+         */
+        private Node find(String key)
+        {
+            Node node = this;
+
+            for (int i = 0; i < key.length() && node != null; i++)
+            {
+                node = node.children.get(key.charAt(i));
+            }
+
+            return node;
+        }
+    }
+}
@@ -110,6 +110,35 @@ public enum DatabaseTables
         return columns;
     }
 
+    /**
+     * Gets the table's primary key column. This is always the first column
+     *
+     * @return Table's primary key column
+     */
+    public String getPrimaryKey()
+    {
+        return columns[0];
+    }
+
+    /**
+     * Checks whether a column belongs to this table
+     *
+     * @param column Column to check
+     * @return Boolean indicating whether the column belongs to this table
+     */
+    public boolean hasColumn(String column)
+    {
+        for (String candidate : columns)
+        {
+            if (candidate.equals(column))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * Gets the database identifier for this table
      *
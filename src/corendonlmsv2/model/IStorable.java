@@ -16,17 +16,28 @@ public interface IStorable
     public DatabaseTables getTable();
 
     /**
-     * Gets the update string to add this IStorable instance to the database
+     * Gets the update string to add this IStorable instance to the database.
+     * Values are not part of the string; it contains a ? placeholder for each
+     * value returned by getParameters instead
      *
      * @return Update string to add this IStorable instance to the database
      */
     public String getUpdate();
+
+    /**
+     * Gets the values to bind to the placeholders in the update string, in the
+     * order in which the placeholders appear
+     *
+     * @return Values to bind to the placeholders in the update string
+     */
+    public Object[] getParameters();
     
     /**
-     * Inserts this object into the database by calling DbManager.insert
+     * Inserts this object into the database by calling DbManager.insert, and
+     * takes over the ID the database generated for it
      * 
-     * @return Boolean indicating whether the amount of rows in this database
-     * was succesfully incremented by 1 (one) throughout the execution of this
+     * @return ID the database generated for this object. Null if it could not
+     * be inserted
      */
-    public boolean insert();
+    public String insert();
 }
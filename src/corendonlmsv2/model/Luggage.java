@@ -1,9 +1,13 @@
 package corendonlmsv2.model;
 
+import corendonlmsv2.connectivity.DbConfig;
 import corendonlmsv2.connectivity.DbManager;
+import corendonlmsv2.connectivity.EntityCache;
+import corendonlmsv2.connectivity.RowMapper;
+import corendonlmsv2.connectivity.UnitOfWork;
+import corendonlmsv2.connectivity.Weigher;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -19,6 +23,62 @@ public class Luggage implements IStorable
      */
     public static final DatabaseTables TABLE = DatabaseTables.LUGGAGE;
 
+    /**
+     * Converts a row from TABLE into a Luggage instance
+     */
+    public static final RowMapper<Luggage> ROW_MAPPER
+            = new RowMapper<Luggage>()
+            {
+                @Override
+                public Luggage mapRow(ResultSet results) throws SQLException
+                {
+                    Luggage luggage = new Luggage(
+                            results.getString(TABLE.getColumnAt(
+                                    TableColumns.BRAND_NAME)),
+                            results.getString(TABLE.getColumnAt(
+                                    TableColumns.COLOR)),
+                            results.getString(TABLE.getColumnAt(
+                                    TableColumns.CUSTOMER_ID)),
+                            results.getString(TABLE.getColumnAt(
+                                    TableColumns.DETAILS)),
+                            results.getString(TABLE.getColumnAt(
+                                    TableColumns.LOCATION)),
+                            LuggageStatuses.valueOf(results.getString(
+                                    TABLE.getColumnAt(TableColumns.STATUS))
+                                    .toUpperCase())
+                    );
+                    luggage.setLuggageId(results.getString(
+                            TABLE.getColumnAt(TableColumns.LUGGAGE_ID)));
+                    luggage.setDateEntered(results.getString(
+                            TABLE.getColumnAt(TableColumns.DATE_ENTERED)));
+
+                    return luggage;
+                }
+            };
+
+    /**
+     * Estimates the memory a piece of luggage takes up in CACHE
+     */
+    private static final Weigher<Luggage> WEIGHER = new Weigher<Luggage>()
+    {
+        @Override
+        public int weigh(Luggage luggage)
+        {
+            return EntityCache.estimateSize(luggage.brandName, luggage.color,
+                    luggage.customerId, luggage.details, luggage.location,
+                    luggage.luggageId, luggage.dateEntered)
+                    //Reference to the status
+                    + 8;
+        }
+    };
+
+    /**
+     * Luggage recently looked up by its ID
+     */
+    private static final EntityCache<Luggage> CACHE = new EntityCache<>(
+            TABLE, TABLE.getColumns(), ROW_MAPPER, WEIGHER,
+            DbConfig.ENTITY_CACHE_MAX_BYTES, DbConfig.ENTITY_CACHE_TTL_MILLIS);
+
     private final String brandName, color, customerId,
             details, location;
     private final LuggageStatuses status;
@@ -46,6 +106,19 @@ public class Luggage implements IStorable
         this.status = status;
     }
 
+    /**
+     * Gets a piece of luggage by its ID. Repeated lookups are answered from a
+     * cache until the luggage is changed or deleted
+     *
+     * @param luggageId ID of the luggage
+     * @return Luggage with the ID. Null if there is none or it could not be
+     * read. Must not be changed, as it is shared with other callers
+     */
+    public static Luggage getById(String luggageId)
+    {
+        return CACHE.get(luggageId);
+    }
+
     /**
      * Gets all the luggage in the database
      *
@@ -53,43 +126,8 @@ public class Luggage implements IStorable
      */
     public static List<Luggage> getAllLuggage()
     {
-        List<Luggage> allLuggage = new ArrayList<>();
-
-        ResultSet results = DbManager.getResultSet(TABLE);
-
-        String luggageIdColumn = TABLE.getColumnAt(TableColumns.LUGGAGE_ID),
-                brandNameColumn = TABLE.getColumnAt(TableColumns.BRAND_NAME),
-                colorColumn = TABLE.getColumnAt(TableColumns.COLOR),
-                customerIdColumn = TABLE.getColumnAt(TableColumns.CUSTOMER_ID),
-                detailsColumn = TABLE.getColumnAt(TableColumns.DETAILS),
-                locationColumn = TABLE.getColumnAt(TableColumns.LOCATION),
-                statusColumn = TABLE.getColumnAt(TableColumns.STATUS),
-                dateEnteredColumn = TABLE.getColumnAt(TableColumns.DATE_ENTERED);
-
-        try
-        {
-            while (results.next())
-            {
-                Luggage luggage = new Luggage(
-                        results.getString(brandNameColumn),
-                        results.getString(colorColumn),
-                        results.getString(customerIdColumn),
-                        results.getString(detailsColumn),
-                        results.getString(locationColumn),
-                        LuggageStatuses.valueOf(
-                                results.getString(statusColumn).toUpperCase())
-                );
-                luggage.setLuggageId(results.getString(luggageIdColumn));
-                luggage.setDateEntered(results.getString(dateEnteredColumn));
-
-                allLuggage.add(luggage);
-            }
-        } catch (SQLException ex)
-        {
-            System.err.println("SQL exception: " + ex.getMessage());
-        }
-
-        return allLuggage;
+        return DbManager.query("SELECT * FROM " + TABLE.getDatabaseIdentifier(),
+                ROW_MAPPER);
     }
 
     /**
@@ -209,15 +247,152 @@ public class Luggage implements IStorable
 
         return String.format("INSERT INTO %s (brand_name, color, customer_id,"
                 + " details, location, status, date_entered) VALUES "
-                + "('%s', '%s', '%s', '%s', '%s', '%s', '%s')",
-                TABLE.getDatabaseIdentifier(), brandName, color, customerId,
-                details, location, status, dateEntered);
+                + "(?, ?, ?, ?, ?, ?, ?)", TABLE.getDatabaseIdentifier());
     }
 
     @Override
-    public boolean insert()
+    public Object[] getParameters()
+    {
+        return new Object[]
+        {
+            brandName, color, customerId, details, location, status,
+            dateEntered
+        };
+    }
+
+    /**
+     * Adds this luggage to the database, the monthly statistics and the search
+     * index, in a transaction of its own
+     *
+     * @return Luggage ID the database generated. Null if the luggage could not
+     * be inserted
+     */
+    @Override
+    public String insert()
+    {
+        try (UnitOfWork work = DbManager.beginUnitOfWork())
+        {
+            String id = insert(work);
+            work.commit();
+
+            return id;
+        } catch (SQLException ex)
+        {
+            System.err.println("SQL exception: " + ex.getMessage());
+
+            setLuggageId(null);
+
+            return null;
+        }
+    }
+
+    /**
+     * Adds this luggage to the database, the monthly statistics and the search
+     * index, as part of a unit of work
+     *
+     * @param work Unit of work to insert the luggage in
+     * @return Luggage ID the database generated
+     * @throws SQLException Exception thrown if the luggage can not be inserted
+     */
+    public String insert(UnitOfWork work) throws SQLException
+    {
+        String id = work.insert(this);
+        setLuggageId(id);
+
+        LuggageStatistics.include(work,
+                TABLE.getColumnAt(TableColumns.LUGGAGE_ID), id);
+        LuggageSearchIndex.index(work, id);
+
+        return id;
+    }
+
+    /**
+     * Changes an existing piece of luggage's details as part of a unit of
+     * work, moving it to its new status in the monthly statistics and
+     * reindexing it for searches. The cached luggage is removed once the unit
+     * of work is committed
+     *
+     * @param work Unit of work to update the luggage in
+     * @param luggageId ID of the luggage to update
+     * @param brandName Luggage's new brand name
+     * @param color Luggage's new color
+     * @param details Luggage's new details
+     * @param location Luggage's new location
+     * @param status Luggage's new status
+     * @return Amount of pieces of luggage updated
+     * @throws SQLException Exception thrown if the luggage can not be updated
+     */
+    public static int update(UnitOfWork work, final String luggageId,
+            String brandName, String color, String details, String location,
+            LuggageStatuses status) throws SQLException
     {
-        return DbManager.insert(this);
+        String idColumn = TABLE.getColumnAt(TableColumns.LUGGAGE_ID);
+        String update = String.format("UPDATE %s SET %s=?, %s=?, %s=?, %s=?,"
+                + " %s=? WHERE %s=?", TABLE.getDatabaseIdentifier(),
+                TABLE.getColumnAt(TableColumns.BRAND_NAME),
+                TABLE.getColumnAt(TableColumns.COLOR),
+                TABLE.getColumnAt(TableColumns.DETAILS),
+                TABLE.getColumnAt(TableColumns.LOCATION),
+                TABLE.getColumnAt(TableColumns.STATUS),
+                idColumn);
+
+        LuggageStatistics.exclude(work, idColumn, luggageId);
+
+        int updated = work.executeUpdate(update, brandName, color, details,
+                location, status.getDatabaseIdentifier(), luggageId);
+
+        LuggageStatistics.include(work, idColumn, luggageId);
+        LuggageSearchIndex.index(work, luggageId);
+
+        work.afterCommit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                CACHE.invalidate(luggageId);
+            }
+        });
+
+        return updated;
+    }
+
+    /**
+     * Deletes the luggage matching a column's value as part of a unit of work,
+     * removing it from the monthly statistics and the search index, and from
+     * the cache once the unit of work is committed
+     *
+     * @param work Unit of work to delete the luggage in
+     * @param column Column to match, e.g. luggage_id or customer_id
+     * @param value Value the column must be equal to
+     * @return Amount of pieces of luggage deleted
+     * @throws SQLException Exception thrown if the luggage can not be deleted
+     */
+    public static int delete(UnitOfWork work, final String column,
+            final Object value) throws SQLException
+    {
+        LuggageStatistics.exclude(work, column, value);
+        LuggageSearchIndex.remove(work, column, value);
+
+        int deleted = work.executeUpdate(String.format("DELETE FROM %s WHERE"
+                + " %s=?", TABLE.getDatabaseIdentifier(), column), value);
+
+        work.afterCommit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                //Deleting by another column leaves the deleted IDs unknown
+                if (column.equals(TABLE.getPrimaryKey()))
+                {
+                    CACHE.invalidate(String.valueOf(value));
+                } else
+                {
+                    CACHE.invalidateAll();
+                }
+            }
+        });
+
+        return deleted;
     }
 
     /**
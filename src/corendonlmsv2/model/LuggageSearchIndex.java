@@ -0,0 +1,462 @@
+package corendonlmsv2.model;
+
+import corendonlmsv2.connectivity.DbConfig;
+import corendonlmsv2.connectivity.DbManager;
+import corendonlmsv2.connectivity.PageQuery;
+import corendonlmsv2.connectivity.RowHandler;
+import corendonlmsv2.connectivity.RowMapper;
+import corendonlmsv2.connectivity.UnitOfWork;
+import corendonlmsv2.main.util.StringUtil;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Maintains and searches the luggage_trigrams index, which holds every
+ * trigram (run of three characters within a word) of every piece of luggage's
+ * free text columns. A text can only be contained in a piece of luggage if
+ * all of the text's trigrams are, so a search reads the index entries of the
+ * text's trigrams through the index's primary key rather than scanning the
+ * luggage table with a LIKE '%text%'. Its cost depends on how much luggage
+ * shares the trigrams, not on the size of the table. The IDs and dates are
+ * not indexed, as they never contain a letter; texts without one are searched
+ * for in every column instead.
+ *
+ * Trigrams are compared lowercased and without diacritics, and stored as
+ * numbers, so the index does not depend on the database's collation. Every
+ * luggage write made through Luggage's unit of work methods updates the index
+ * in the same transaction; rebuild recreates it from the luggage table
+ *
+ * @author Emile Pels
+ */
+public final class LuggageSearchIndex
+{
+
+    /**
+     * Table holding the index
+     */
+    public static final String TABLE = "luggage_trigrams";
+
+    /**
+     * Amount of characters in a trigram
+     */
+    private static final int GRAM_LENGTH = 3;
+
+    /**
+     * Separates the words of a text; trigrams never span two words
+     */
+    private static final Pattern WORD_SEPARATOR
+            = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * Diacritics left behind by decomposing a text
+     */
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Any letter, which only the free text columns can contain
+     */
+    private static final Pattern LETTER = Pattern.compile("\\p{L}");
+
+    /**
+     * Luggage columns holding free text, which are indexed
+     */
+    private static final String[] TEXT_COLUMNS = new String[]
+    {
+        Luggage.TABLE.getColumnAt(Luggage.TableColumns.BRAND_NAME),
+        Luggage.TABLE.getColumnAt(Luggage.TableColumns.COLOR),
+        Luggage.TABLE.getColumnAt(Luggage.TableColumns.DETAILS),
+        Luggage.TABLE.getColumnAt(Luggage.TableColumns.LOCATION),
+        Luggage.TABLE.getColumnAt(Luggage.TableColumns.STATUS)
+    };
+
+    /**
+     * Selects the columns TRIGRAM_MAPPER reads from the luggage table
+     */
+    private static final String SELECT_TEXT = String.format("SELECT %s, %s "
+            + "FROM %s", Luggage.TABLE.getPrimaryKey(),
+            StringUtil.joinString(", ", TEXT_COLUMNS),
+            Luggage.TABLE.getDatabaseIdentifier());
+
+    /**
+     * Reads a row of luggage as its ID and the trigrams of its free text
+     * columns
+     */
+    private static final RowMapper<Map.Entry<Long, Set<Long>>> TRIGRAM_MAPPER
+            = new RowMapper<Map.Entry<Long, Set<Long>>>()
+            {
+                @Override
+                public Map.Entry<Long, Set<Long>> mapRow(ResultSet results)
+                        throws SQLException
+                {
+                    StringBuilder text = new StringBuilder();
+
+                    for (String column : TEXT_COLUMNS)
+                    {
+                        String value = results.getString(column);
+
+                        if (value != null)
+                        {
+                            text.append(value)
+                                    .append(' ');
+                        }
+                    }
+
+                    return new AbstractMap.SimpleImmutableEntry<>(
+                            results.getLong(Luggage.TABLE.getPrimaryKey()),
+                            getTrigrams(text.toString()));
+                }
+            };
+
+    /**
+     * Indicates whether the index is known to be complete. Until then,
+     * searches do not use it
+     */
+    private static volatile boolean _built;
+
+    private LuggageSearchIndex()
+    {
+    }
+
+    /**
+     * Splits a text into its distinct trigrams
+     *
+     * @param text Text to split. May be null
+     * @return Trigrams of the text, each packed into a number, in order of
+     * first appearance. Empty if none of the text's words is at least three
+     * characters long
+     */
+    static Set<Long> getTrigrams(String text)
+    {
+        Set<Long> trigrams = new LinkedHashSet<>();
+
+        if (text == null)
+        {
+            return trigrams;
+        }
+
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(
+                text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD))
+                .replaceAll("");
+
+        for (String word : WORD_SEPARATOR.split(normalized))
+        {
+            for (int i = 0; i + GRAM_LENGTH <= word.length(); i++)
+            {
+                trigrams.add(((long) word.charAt(i) << 32)
+                        | ((long) word.charAt(i + 1) << 16)
+                        | word.charAt(i + 2));
+            }
+        }
+
+        return trigrams;
+    }
+
+    /**
+     * Gets whether the index can narrow down a search for a text. Texts
+     * without a word of at least three characters have no trigrams
+     *
+     * @param text Text to search for
+     * @return Boolean indicating whether the text has any trigrams
+     */
+    public static boolean isSearchable(String text)
+    {
+        return !getTrigrams(text).isEmpty();
+    }
+
+    /**
+     * Restricts a luggage query to the luggage which may contain a text, and
+     * then searches those for it. The candidates the index returns are joined
+     * to the luggage table and only their free text columns are compared with
+     * LIKE, so the luggage table is not scanned. Texts the index can not
+     * narrow down, or which may match an ID or date, fall back to a plain
+     * search of every column, as do all texts until ensureBuilt or rebuild
+     * completed the index
+     *
+     * @param <T> Type of the objects the rows are converted into
+     * @param query Query reading the luggage table
+     * @param text Text to search for in every column. Null or empty to stop
+     * searching
+     * @return Copy of the query searching for the text
+     */
+    public static <T> PageQuery<T> search(PageQuery<T> query, String text)
+    {
+        Set<Long> trigrams = getTrigrams(text);
+
+        if (!_built || trigrams.isEmpty() || !LETTER.matcher(text).find())
+        {
+            return query.search(text);
+        }
+
+        List<Object> parameters = new ArrayList<Object>(trigrams);
+        parameters.add(trigrams.size());
+
+        return query.whereKeyIn(String.format("SELECT luggage_id AS %s FROM "
+                + "%s WHERE trigram IN (%s) GROUP BY luggage_id HAVING "
+                + "COUNT(*) = ?", PageQuery.KEY_COLUMN, TABLE,
+                createPlaceholders(trigrams.size())), parameters.toArray())
+                .search(text, TEXT_COLUMNS);
+    }
+
+    /**
+     * Finds the luggage sharing the most trigrams with a text, for searches
+     * which should tolerate typos and words in any order. A piece of luggage
+     * must contain at least half of the text's trigrams to be returned
+     *
+     * @param text Text to search for
+     * @param limit Maximum amount of luggage IDs to return
+     * @return IDs of the best matching luggage, best match first. Empty if the
+     * text has no trigrams or the query failed
+     */
+    public static List<Long> search(String text, int limit)
+    {
+        Set<Long> trigrams = getTrigrams(text);
+        final List<Long> ids = new ArrayList<>();
+
+        if (trigrams.isEmpty() || limit < 1)
+        {
+            return ids;
+        }
+
+        List<Object> parameters = new ArrayList<Object>(trigrams);
+        parameters.add((trigrams.size() + 1) / 2);
+        parameters.add(limit);
+
+        DbManager.forEachRow(String.format("SELECT luggage_id, COUNT(*) AS "
+                + "matches FROM %s WHERE trigram IN (%s) GROUP BY luggage_id "
+                + "HAVING COUNT(*) >= ? ORDER BY matches DESC, luggage_id DESC"
+                + " LIMIT ?", TABLE, createPlaceholders(trigrams.size())),
+                new RowHandler()
+                {
+                    @Override
+                    public boolean handleRow(ResultSet results)
+                            throws SQLException
+                    {
+                        ids.add(results.getLong("luggage_id"));
+
+                        return true;
+                    }
+                }, parameters.toArray());
+
+        return ids;
+    }
+
+    /**
+     * Indexes a piece of luggage as it is stored now, replacing any earlier
+     * entries, as part of a unit of work. Called after the luggage is
+     * inserted or changed
+     *
+     * @param work Unit of work the luggage was written in
+     * @param luggageId ID of the luggage
+     * @throws SQLException Exception thrown if the index can not be updated
+     */
+    static void index(UnitOfWork work, Object luggageId) throws SQLException
+    {
+        work.executeUpdate("DELETE FROM " + TABLE + " WHERE luggage_id = ?",
+                luggageId);
+
+        insertEntries(work, work.query(SELECT_TEXT + " WHERE "
+                + Luggage.TABLE.getPrimaryKey() + " = ?", TRIGRAM_MAPPER,
+                luggageId));
+    }
+
+    /**
+     * Removes the luggage matching a column's value from the index, as part
+     * of a unit of work. Called before the luggage is deleted
+     *
+     * @param work Unit of work the luggage is deleted in
+     * @param column Luggage column to match
+     * @param value Value the column must be equal to
+     * @throws SQLException Exception thrown if the index can not be updated
+     */
+    static void remove(UnitOfWork work, String column, Object value)
+            throws SQLException
+    {
+        if (!Luggage.TABLE.hasColumn(column))
+        {
+            throw new IllegalArgumentException(String.format("The column %s "
+                    + "does not belong to table %s.", column,
+                    Luggage.TABLE.getDatabaseIdentifier()));
+        }
+
+        work.executeUpdate(String.format("DELETE FROM %s WHERE luggage_id IN "
+                + "(SELECT %s FROM %s WHERE %s = ?)", TABLE,
+                Luggage.TABLE.getPrimaryKey(),
+                Luggage.TABLE.getDatabaseIdentifier(), column), value);
+    }
+
+    /**
+     * Recreates the whole index from the luggage table, in a single
+     * transaction. The luggage is read DbConfig.BATCH_SIZE rows at a time, so
+     * the table is never held in memory at once
+     *
+     * @return Boolean indicating whether the index was rebuilt
+     */
+    public static boolean rebuild()
+    {
+        String query = String.format("%1$s WHERE %2$s > ? ORDER BY %2$s "
+                + "LIMIT ?", SELECT_TEXT, Luggage.TABLE.getPrimaryKey());
+
+        try (UnitOfWork work = DbManager.beginUnitOfWork())
+        {
+            work.executeUpdate("DELETE FROM " + TABLE);
+
+            long lastId = 0;
+            List<Map.Entry<Long, Set<Long>>> rows;
+
+            do
+            {
+                rows = work.query(query, TRIGRAM_MAPPER, lastId,
+                        DbConfig.BATCH_SIZE);
+
+                if (!rows.isEmpty())
+                {
+                    insertEntries(work, rows);
+                    lastId = rows.get(rows.size() - 1).getKey();
+                }
+            } while (rows.size() == DbConfig.BATCH_SIZE);
+
+            work.commit();
+            _built = true;
+
+            return true;
+        } catch (SQLException ex)
+        {
+            System.err.println("SQL exception: " + ex.getMessage());
+
+            return false;
+        }
+    }
+
+    /**
+     * Builds the index if the luggage table has rows but the index has none,
+     * as on the first start after the index was added. Searches only use the
+     * index once this (or rebuild) found it complete, so it is left unused if
+     * either table could not be read
+     *
+     * @return Boolean indicating whether the index is (now) usable
+     */
+    public static boolean ensureBuilt()
+    {
+        int indexRows = countRows(TABLE);
+        int luggageRows = countRows(Luggage.TABLE.getDatabaseIdentifier());
+
+        if (indexRows < 0 || luggageRows < 0)
+        {
+            return false;
+        }
+
+        if (indexRows > 0 || luggageRows == 0)
+        {
+            _built = true;
+
+            return true;
+        }
+
+        System.out.println("Building the luggage search index");
+
+        return rebuild();
+    }
+
+    /**
+     * Checks whether a table has at least one row
+     *
+     * @param table Name of the table
+     * @return 1 if the table has a row, 0 if it has none. -1 if the query
+     * failed
+     */
+    private static int countRows(String table)
+    {
+        return DbManager.forEachRow("SELECT 1 FROM " + table + " LIMIT 1",
+                new RowHandler()
+                {
+                    @Override
+                    public boolean handleRow(ResultSet results)
+                    {
+                        return false;
+                    }
+                });
+    }
+
+    /**
+     * Inserts the index entries for pieces of luggage, DbConfig.BATCH_SIZE
+     * entries per statement
+     *
+     * @param work Unit of work to insert the entries in
+     * @param rows IDs of the luggage with their trigrams
+     * @throws SQLException Exception thrown if the entries can not be inserted
+     */
+    private static void insertEntries(UnitOfWork work,
+            List<Map.Entry<Long, Set<Long>>> rows) throws SQLException
+    {
+        List<Object> parameters = new ArrayList<>();
+
+        for (Map.Entry<Long, Set<Long>> row : rows)
+        {
+            for (Long trigram : row.getValue())
+            {
+                parameters.add(trigram);
+                parameters.add(row.getKey());
+
+                if (parameters.size() == DbConfig.BATCH_SIZE * 2)
+                {
+                    insertStatement(work, parameters);
+                    parameters.clear();
+                }
+            }
+        }
+
+        if (!parameters.isEmpty())
+        {
+            insertStatement(work, parameters);
+        }
+    }
+
+    /**
+     * Inserts index entries in a single statement
+     *
+     * @param work Unit of work to insert the entries in
+     * @param parameters Trigram and luggage ID of every entry, in turn
+     * @throws SQLException Exception thrown if the entries can not be inserted
+     */
+    private static void insertStatement(UnitOfWork work,
+            List<Object> parameters) throws SQLException
+    {
+        StringBuilder builder = new StringBuilder("INSERT INTO ")
+                .append(TABLE)
+                .append(" (trigram, luggage_id) VALUES ");
+
+        for (int i = 0; i < parameters.size(); i += 2)
+        {
+            builder.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+        }
+
+        work.executeUpdate(builder.toString(), parameters.toArray());
+    }
+
+    /**
+     * Creates a list of placeholders for an IN clause
+     *
+     * @param count Amount of placeholders
+     * @return Comma separated placeholders
+     */
+    private static String createPlaceholders(int count)
+    {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < count; i++)
+        {
+            builder.append(i == 0 ? "?" : ", ?");
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,323 @@
+package corendonlmsv2.model;
+
+import corendonlmsv2.connectivity.DbManager;
+import corendonlmsv2.connectivity.RowHandler;
+import corendonlmsv2.connectivity.RowMapper;
+import corendonlmsv2.connectivity.UnitOfWork;
+import corendonlmsv2.model.Luggage.LuggageStatuses;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maintains and reads the luggage_monthly_stats rollup, which holds the
+ * amount of luggage per month (of date_entered) and status. Every luggage
+ * write made through Luggage's unit of work methods adjusts the rollup in the
+ * same transaction, so reading the counts for a range costs one row per month
+ * and status instead of a scan of the luggage table.
+ *
+ * DbManager refuses to insert luggage directly, but writes made outside this
+ * application still make the rollup drift; verify reports the drift and
+ * rebuild recounts the rollup from the luggage table
+ *
+ * @author Emile Pels
+ */
+public final class LuggageStatistics
+{
+
+    /**
+     * Table holding the rollup
+     */
+    public static final String TABLE = "luggage_monthly_stats";
+
+    /**
+     * Counts the luggage per month and status straight from the luggage table.
+     * Statuses are stored in varying case, so they are lowercased
+     */
+    private static final String AGGREGATE_QUERY = String.format(
+            "SELECT YEAR(%1$s) AS stat_year, MONTH(%1$s) AS stat_month, "
+            + "LOWER(%2$s) AS status, COUNT(*) AS luggage_count FROM %3$s "
+            + "WHERE %1$s IS NOT NULL AND %2$s IS NOT NULL "
+            + "GROUP BY YEAR(%1$s), MONTH(%1$s), LOWER(%2$s)",
+            Luggage.TABLE.getColumnAt(Luggage.TableColumns.DATE_ENTERED),
+            Luggage.TABLE.getColumnAt(Luggage.TableColumns.STATUS),
+            Luggage.TABLE.getDatabaseIdentifier());
+
+    private LuggageStatistics()
+    {
+    }
+
+    /**
+     * Adds the luggage matching a column's value to the rollup, as part of a
+     * unit of work. Called after the luggage is inserted or changed
+     *
+     * @param work Unit of work the luggage was written in
+     * @param column Luggage column to match
+     * @param value Value the column must be equal to
+     * @throws SQLException Exception thrown if the rollup can not be updated
+     */
+    static void include(UnitOfWork work, String column, Object value)
+            throws SQLException
+    {
+        adjust(work, column, value, 1);
+    }
+
+    /**
+     * Removes the luggage matching a column's value from the rollup, as part
+     * of a unit of work. Called before the luggage is changed or deleted
+     *
+     * @param work Unit of work the luggage is written in
+     * @param column Luggage column to match
+     * @param value Value the column must be equal to
+     * @throws SQLException Exception thrown if the rollup can not be updated
+     */
+    static void exclude(UnitOfWork work, String column, Object value)
+            throws SQLException
+    {
+        adjust(work, column, value, -1);
+    }
+
+    /**
+     * Adds or removes the luggage matching a column's value to or from the
+     * rollup
+     *
+     * @param work Unit of work to update the rollup in
+     * @param column Luggage column to match
+     * @param value Value the column must be equal to
+     * @param sign 1 to add the luggage, -1 to remove it
+     * @throws SQLException Exception thrown if the rollup can not be updated
+     */
+    private static void adjust(UnitOfWork work, String column, Object value,
+            int sign) throws SQLException
+    {
+        if (!Luggage.TABLE.hasColumn(column))
+        {
+            throw new IllegalArgumentException(String.format("The column %s "
+                    + "does not belong to table %s.", column,
+                    Luggage.TABLE.getDatabaseIdentifier()));
+        }
+
+        final String dateColumn = Luggage.TABLE.getColumnAt(
+                Luggage.TableColumns.DATE_ENTERED);
+        final String statusColumn = Luggage.TABLE.getColumnAt(
+                Luggage.TableColumns.STATUS);
+
+        //Locking the rows keeps them from changing before this unit of work
+        //writes them, which would count them under a stale month or status
+        List<Object[]> rows = work.query(String.format("SELECT %s, %s FROM "
+                + "%s WHERE %s = ? FOR UPDATE", dateColumn, statusColumn,
+                Luggage.TABLE.getDatabaseIdentifier(), column),
+                new RowMapper<Object[]>()
+                {
+                    @Override
+                    public Object[] mapRow(ResultSet results)
+                            throws SQLException
+                    {
+                        return new Object[]
+                        {
+                            results.getDate(dateColumn),
+                            results.getString(statusColumn)
+                        };
+                    }
+                }, value);
+
+        Calendar calendar = Calendar.getInstance();
+
+        //Change per (year, month, status)
+        Map<List<Object>, Integer> deltas = new HashMap<>();
+
+        for (Object[] row : rows)
+        {
+            Date date = (Date) row[0];
+            String status = (String) row[1];
+
+            if (date == null || status == null)
+            {
+                continue;
+            }
+
+            calendar.setTime(date);
+
+            List<Object> key = Arrays.<Object>asList(
+                    calendar.get(Calendar.YEAR),
+                    calendar.get(Calendar.MONTH) + 1, status.toLowerCase());
+            Integer delta = deltas.get(key);
+
+            deltas.put(key, (delta == null ? 0 : delta) + sign);
+        }
+
+        for (Map.Entry<List<Object>, Integer> entry : deltas.entrySet())
+        {
+            List<Object> key = entry.getKey();
+            int delta = entry.getValue();
+
+            //A single statement, so concurrent writers can not both insert
+            work.executeUpdate("INSERT INTO " + TABLE + " (stat_year, "
+                    + "stat_month, status, luggage_count) VALUES (?, ?, ?, ?) "
+                    + "ON DUPLICATE KEY UPDATE luggage_count = luggage_count "
+                    + "+ VALUES(luggage_count)", key.get(0), key.get(1),
+                    key.get(2), delta);
+        }
+    }
+
+    /**
+     * Reads the amount of luggage per month and status in a range of months
+     * from the rollup
+     *
+     * @param fromMonth Start month of the range, from 1 to 12
+     * @param fromYear Start year of the range
+     * @param toMonth End month of the range, from 1 to 12
+     * @param toYear End year of the range
+     * @return Amounts of luggage keyed by month (as year * 12 + month - 1)
+     * and status. Months and statuses without luggage are left out
+     */
+    public static Map<Integer, Map<LuggageStatuses, Integer>> getCounts(
+            int fromMonth, int fromYear, int toMonth, int toYear)
+    {
+        final Map<Integer, Map<LuggageStatuses, Integer>> counts
+                = new HashMap<>();
+
+        //Ranges over the columns themselves, so the primary key is used
+        DbManager.forEachRow("SELECT stat_year, stat_month, status, "
+                + "luggage_count FROM " + TABLE + " WHERE stat_year BETWEEN ? "
+                + "AND ? AND (stat_year > ? OR stat_month >= ?) AND "
+                + "(stat_year < ? OR stat_month <= ?) AND luggage_count > 0",
+                new RowHandler()
+                {
+                    @Override
+                    public boolean handleRow(ResultSet results)
+                            throws SQLException
+                    {
+                        LuggageStatuses status;
+
+                        try
+                        {
+                            status = LuggageStatuses.valueOf(
+                                    results.getString("status").toUpperCase());
+                        } catch (IllegalArgumentException ex)
+                        {
+                            //Not a status the chart has a line for
+                            return true;
+                        }
+
+                        int key = results.getInt("stat_year") * 12
+                                + results.getInt("stat_month") - 1;
+                        Map<LuggageStatuses, Integer> month = counts.get(key);
+
+                        if (month == null)
+                        {
+                            month = new EnumMap<>(LuggageStatuses.class);
+                            counts.put(key, month);
+                        }
+
+                        month.put(status, results.getInt("luggage_count"));
+
+                        return true;
+                    }
+                }, fromYear, toYear, fromYear, fromMonth, toYear, toMonth);
+
+        return counts;
+    }
+
+    /**
+     * Recounts the whole rollup from the luggage table, in a single
+     * transaction
+     *
+     * @return Boolean indicating whether the rollup was rebuilt
+     */
+    public static boolean rebuild()
+    {
+        try (UnitOfWork work = DbManager.beginUnitOfWork())
+        {
+            work.executeUpdate("DELETE FROM " + TABLE);
+            work.executeUpdate("INSERT INTO " + TABLE + " (stat_year, "
+                    + "stat_month, status, luggage_count) " + AGGREGATE_QUERY);
+            work.commit();
+
+            return true;
+        } catch (SQLException ex)
+        {
+            System.err.println("SQL exception: " + ex.getMessage());
+
+            return false;
+        }
+    }
+
+    /**
+     * Compares the rollup with a fresh count of the luggage table, printing
+     * every month and status whose amounts differ
+     *
+     * @return Amount of months and statuses whose amounts differ. -1 if
+     * either could not be read
+     */
+    public static int verify()
+    {
+        Map<String, Integer> expected = readCounts(AGGREGATE_QUERY);
+        Map<String, Integer> actual = readCounts("SELECT stat_year, "
+                + "stat_month, status, luggage_count FROM " + TABLE);
+
+        if (expected == null || actual == null)
+        {
+            return -1;
+        }
+
+        Map<String, Integer> keys = new TreeMap<>(expected);
+        keys.putAll(actual);
+
+        int drift = 0;
+
+        for (String key : keys.keySet())
+        {
+            int expectedCount = expected.containsKey(key)
+                    ? expected.get(key) : 0;
+            int actualCount = actual.containsKey(key) ? actual.get(key) : 0;
+
+            if (expectedCount != actualCount)
+            {
+                System.err.printf("Luggage statistics drift for %s: %d in "
+                        + "the rollup, %d in luggage\n", key, actualCount,
+                        expectedCount);
+
+                drift++;
+            }
+        }
+
+        return drift;
+    }
+
+    /**
+     * Reads counts per month and status
+     *
+     * @param query Query selecting stat_year, stat_month, status and
+     * luggage_count
+     * @return Counts keyed by "year-month status". Null if the query failed
+     */
+    private static Map<String, Integer> readCounts(String query)
+    {
+        final Map<String, Integer> counts = new HashMap<>();
+
+        int rows = DbManager.forEachRow(query, new RowHandler()
+        {
+            @Override
+            public boolean handleRow(ResultSet results) throws SQLException
+            {
+                counts.put(String.format("%04d-%02d %s",
+                        results.getInt("stat_year"),
+                        results.getInt("stat_month"),
+                        results.getString("status").toLowerCase()),
+                        results.getInt("luggage_count"));
+
+                return true;
+            }
+        });
+
+        return rows < 0 ? null : counts;
+    }
+}
@@ -1,11 +1,12 @@
 package corendonlmsv2.model;
 
 import corendonlmsv2.connectivity.DbManager;
-import corendonlmsv2.main.util.MiscUtil;
+import corendonlmsv2.connectivity.QueryOptions;
+import corendonlmsv2.connectivity.RowMapper;
+import corendonlmsv2.connectivity.UniqueValueFilter;
 import corendonlmsv2.main.util.StringUtil;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -21,6 +22,57 @@ public class UserAccount implements IStorable
      */
     public static final DatabaseTables TABLE = DatabaseTables.USERS;
 
+    /**
+     * Filters the registered usernames, so checking a new username rarely
+     * needs the database
+     */
+    public static final UniqueValueFilter USERNAMES
+            = new UniqueValueFilter(TABLE,
+                    TABLE.getColumnAt(TableColumns.USERNAME));
+
+    /**
+     * Converts a row from TABLE into a UserAccount instance. The password is
+     * taken over as stored, so it is not hashed again
+     */
+    public static final RowMapper<UserAccount> ROW_MAPPER
+            = new RowMapper<UserAccount>()
+            {
+                @Override
+                public UserAccount mapRow(ResultSet results)
+                        throws SQLException
+                {
+                    UserRoles role = UserRoles.valueOf(results.getString(
+                            TABLE.getColumnAt(TableColumns.USER_ROLE))
+                            .toUpperCase());
+
+                    UserAccount user = new UserAccount(
+                            results.getString(TABLE.getColumnAt(
+                                    TableColumns.USERNAME)),
+                            results.getString(TABLE.getColumnAt(
+                                    TableColumns.PASSWORD)), role, false);
+
+                    user.setUserId(results.getString(
+                            TABLE.getColumnAt(TableColumns.USER_ID)));
+
+                    return user;
+                }
+            };
+
+    /**
+     * Reads the username from a row of TABLE. Kept in a constant so repeated
+     * reads of the usernames share their cached result
+     */
+    private static final RowMapper<String> USERNAME_MAPPER
+            = new RowMapper<String>()
+            {
+                @Override
+                public String mapRow(ResultSet results) throws SQLException
+                {
+                    return results.getString(TABLE.getColumnAt(
+                            TableColumns.USERNAME));
+                }
+            };
+
     /**
      * UserAccount currently signed in
      */
@@ -72,35 +124,21 @@ public class UserAccount implements IStorable
      */
     public static List<UserAccount> getAllUsers()
     {
-        ResultSet results = DbManager.getResultSet(TABLE);
-        List<UserAccount> users = new ArrayList<>();
-
-        String userIdColumn = TABLE.getColumnAt(TableColumns.USER_ID);
-        String usernameColumn = TABLE.getColumnAt(TableColumns.USERNAME);
-        String passwordColumn = TABLE.getColumnAt(TableColumns.PASSWORD);
-        String userRoleColumn = TABLE.getColumnAt(TableColumns.USER_ROLE);
-
-        try
-        {
-            while (results.next())
-            {
-                UserRoles role = UserRoles.valueOf(
-                        results.getString(userRoleColumn).toUpperCase());
-                
-                UserAccount user = new UserAccount(
-                        results.getString(usernameColumn), 
-                        results.getString(passwordColumn), role, false);
-                
-                user.setUserId(results.getString(userIdColumn));
-                
-                users.add(user);
-            }
-        } catch (SQLException ex)
-        {
-            System.err.println("SQL exception: " + ex.getMessage());
-        }
+        return DbManager.query("SELECT * FROM " + TABLE.getDatabaseIdentifier(),
+                ROW_MAPPER);
+    }
 
-        return users;
+    /**
+     * Gets the usernames of all the users in the database, in alphabetical
+     * order. Only the username column is read
+     *
+     * @return Usernames of all the users in the database
+     */
+    public static List<String> getAllUsernames()
+    {
+        return DbManager.query(String.format("SELECT %1$s FROM %2$s ORDER BY"
+                + " %1$s", TABLE.getColumnAt(TableColumns.USERNAME),
+                TABLE.getDatabaseIdentifier()), USERNAME_MAPPER);
     }
 
     /**
@@ -122,11 +160,7 @@ public class UserAccount implements IStorable
                     + " null or whitespace.");
         }
 
-        //Get the rows in TABLE where the username matches (absolute)
-        ResultSet results = DbManager.getResultSet(TABLE, username,
-                TABLE.getColumnAt(TableColumns.USERNAME), true);
-
-        return !MiscUtil.isResultSetEmpty(results);
+        return USERNAMES.exists(username);
     }
 
     /**
@@ -138,9 +172,12 @@ public class UserAccount implements IStorable
      */
     public static UserRoles validateUserRole(String username, String password)
     {
-        //Get the rows in TABLE where the username matches (absolute)
-        ResultSet results = DbManager.getResultSet(TABLE, username,
-                TABLE.getColumnAt(TableColumns.USERNAME), true);
+        //Get the password and role in TABLE where the username matches,
+        //never from the cache, so a changed password takes effect at once
+        ResultSet results = DbManager.getResultSet(QueryOptions.FRESH, TABLE,
+                username, TABLE.getColumnAt(TableColumns.USERNAME), true,
+                TABLE.getColumnAt(TableColumns.PASSWORD),
+                TABLE.getColumnAt(TableColumns.USER_ROLE));
         
         
         //Hash the candidate password for comparison
@@ -240,9 +277,17 @@ public class UserAccount implements IStorable
     }
 
     @Override
-    public boolean insert()
+    public String insert()
     {
-        return DbManager.insert(this);
+        String id = DbManager.insert(this);
+
+        if (id != null)
+        {
+            setUserId(id);
+            USERNAMES.add(username);
+        }
+
+        return id;
     }
 
     @Override
@@ -256,8 +301,16 @@ public class UserAccount implements IStorable
         }
 
         return String.format("INSERT INTO %s (username, password, user_role) "
-                + "VALUES ('%s', '%s', '%s')", TABLE.getDatabaseIdentifier(),
-                username, password, userRole.getDatabaseIdentifier());
+                + "VALUES (?, ?, ?)", TABLE.getDatabaseIdentifier());
+    }
+
+    @Override
+    public Object[] getParameters()
+    {
+        return new Object[]
+        {
+            username, password, userRole.getDatabaseIdentifier()
+        };
     }
 
     /**
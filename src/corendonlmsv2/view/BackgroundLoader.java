@@ -0,0 +1,285 @@
+package corendonlmsv2.view;
+
+import corendonlmsv2.connectivity.CancellationToken;
+import corendonlmsv2.connectivity.DatabaseUnavailableException;
+import corendonlmsv2.main.util.MiscUtil;
+import java.awt.Component;
+import java.awt.Cursor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.SwingWorker;
+
+/**
+ * Runs a screen's database work on a shared pool of worker threads, so the
+ * event dispatch thread never waits for the database. Every task delivers its
+ * result back on the event dispatch thread. While any task is running, the
+ * screen shows a wait cursor. Leaving the screen cancels its outstanding
+ * tasks through cancelAll, so their results are never delivered. Queries a
+ * cancelled task is running are cancelled in the database as well, so they
+ * stop holding a worker thread and a connection.
+ *
+ * Every method must be called on the event dispatch thread
+ *
+ * @author Emile Pels
+ */
+public class BackgroundLoader
+{
+
+    /**
+     * Work done on a worker thread, with its result handled on the event
+     * dispatch thread
+     *
+     * @param <T> Type of the work's result
+     */
+    public abstract static class Task<T>
+    {
+
+        /**
+         * Does the work. Called on a worker thread, so no Swing component may
+         * be touched
+         *
+         * @return Result of the work
+         * @throws Exception Exception thrown if the work fails
+         */
+        protected abstract T load() throws Exception;
+
+        /**
+         * Handles the result of the work. Called on the event dispatch thread,
+         * unless the task was cancelled
+         *
+         * @param result Result of the work
+         */
+        protected abstract void loaded(T result);
+
+        /**
+         * Handles a failure of the work. Called on the event dispatch thread,
+         * unless the task was cancelled. Tells the user if the database could
+         * not be reached, so overrides should call this implementation
+         *
+         * @param ex Exception the work failed with
+         */
+        protected void failed(Exception ex)
+        {
+            System.err.println("Loading failed: " + ex.getMessage());
+
+            if (ex instanceof DatabaseUnavailableException)
+            {
+                MiscUtil.showDatabaseUnavailable();
+            }
+        }
+
+        /**
+         * Handles the task being cancelled before it delivered its result.
+         * Called on the event dispatch thread
+         */
+        protected void cancelled()
+        {
+        }
+    }
+
+    /**
+     * Amount of tasks which can run at the same time, across every screen
+     */
+    private static final int THREAD_COUNT = 2;
+
+    private static final ExecutorService EXECUTOR
+            = Executors.newFixedThreadPool(THREAD_COUNT,
+                    MiscUtil.createDaemonThreadFactory("background-loader"));
+
+    /**
+     * Cancels the running queries of cancelled tasks, off the event dispatch
+     * thread and without waiting for a worker thread to come free
+     */
+    private static final ExecutorService CANCELLER
+            = Executors.newSingleThreadExecutor(
+                    MiscUtil.createDaemonThreadFactory("background-canceller"));
+
+    private final Component owner;
+    private final Map<SwingWorker<?, ?>, Task<?>> running = new HashMap<>();
+
+    /**
+     * Tokens the queries of the running tasks can be cancelled through
+     */
+    private final Map<SwingWorker<?, ?>, CancellationToken> tokens
+            = new HashMap<>();
+
+    /**
+     * Initializes a new BackgroundLoader
+     *
+     * @param owner Screen the work is done for, which shows a wait cursor
+     * while tasks are running
+     */
+    public BackgroundLoader(Component owner)
+    {
+        this.owner = owner;
+    }
+
+    /**
+     * Queues a task on the worker threads
+     *
+     * @param <T> Type of the task's result
+     * @param task Task to run
+     */
+    public <T> void execute(final Task<T> task)
+    {
+        final CancellationToken token = new CancellationToken();
+
+        SwingWorker<T, Void> worker = new SwingWorker<T, Void>()
+        {
+            @Override
+            protected T doInBackground() throws Exception
+            {
+                token.enter();
+
+                try
+                {
+                    return task.load();
+                } finally
+                {
+                    token.exit();
+                }
+            }
+
+            @Override
+            protected void done()
+            {
+                //A cancelled task was already forgotten by cancelAll
+                if (isCancelled() || running.remove(this) == null)
+                {
+                    return;
+                }
+
+                tokens.remove(this);
+
+                updateCursor();
+
+                try
+                {
+                    task.loaded(get());
+                } catch (ExecutionException ex)
+                {
+                    task.failed(ex.getCause() instanceof Exception
+                            ? (Exception) ex.getCause() : ex);
+                } catch (InterruptedException | CancellationException ex)
+                {
+                    //Not reachable once done is called for a live task
+                }
+            }
+        };
+
+        running.put(worker, task);
+        tokens.put(worker, token);
+        updateCursor();
+
+        EXECUTOR.execute(worker);
+    }
+
+    /**
+     * Cancels every task which has not delivered its result yet. Queued tasks
+     * never start; the query a running task is waiting for is cancelled in
+     * the database, and its result is discarded
+     */
+    public void cancelAll()
+    {
+        List<Task<?>> cancelled = new ArrayList<>(running.values());
+
+        for (SwingWorker<?, ?> worker : running.keySet())
+        {
+            cancel(worker);
+        }
+
+        running.clear();
+        updateCursor();
+
+        for (Task<?> task : cancelled)
+        {
+            task.cancelled();
+        }
+    }
+
+    /**
+     * Cancels some of the tasks which have not delivered their result yet,
+     * such as the reads for a search which was replaced by a newer one. Tasks
+     * which already delivered their result are ignored
+     *
+     * @param tasks Tasks to cancel
+     */
+    public void cancel(Collection<? extends Task<?>> tasks)
+    {
+        List<Task<?>> cancelled = new ArrayList<>();
+
+        for (Iterator<Map.Entry<SwingWorker<?, ?>, Task<?>>> iterator
+                = running.entrySet().iterator(); iterator.hasNext();)
+        {
+            Map.Entry<SwingWorker<?, ?>, Task<?>> entry = iterator.next();
+
+            if (tasks.contains(entry.getValue()))
+            {
+                cancel(entry.getKey());
+                iterator.remove();
+                cancelled.add(entry.getValue());
+            }
+        }
+
+        updateCursor();
+
+        for (Task<?> task : cancelled)
+        {
+            task.cancelled();
+        }
+    }
+
+    /**
+     * Cancels a task's worker and the query it is running. The worker is not
+     * interrupted, as that could abort a connection mid-statement; cancelling
+     * the statement makes the database end it cleanly instead
+     *
+     * @param worker Worker running the task
+     */
+    private void cancel(SwingWorker<?, ?> worker)
+    {
+        worker.cancel(false);
+
+        final CancellationToken token = tokens.remove(worker);
+
+        if (token != null)
+        {
+            CANCELLER.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    token.cancel();
+                }
+            });
+        }
+    }
+
+    /**
+     * Gets whether any task is running or queued
+     *
+     * @return Boolean indicating whether any task is running or queued
+     */
+    public boolean isBusy()
+    {
+        return !running.isEmpty();
+    }
+
+    /**
+     * Shows the wait cursor while tasks are running, and the default cursor
+     * otherwise
+     */
+    private void updateCursor()
+    {
+        owner.setCursor(isBusy()
+                ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : null);
+    }
+}
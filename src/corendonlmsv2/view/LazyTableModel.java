@@ -0,0 +1,545 @@
+package corendonlmsv2.view;
+
+import corendonlmsv2.connectivity.DbConfig;
+import corendonlmsv2.connectivity.Page;
+import corendonlmsv2.connectivity.PageQuery;
+import corendonlmsv2.connectivity.RowKey;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model which reads its rows from the database on demand, one page
+ * (window) at a time. Only the total row count is read up front; a window is
+ * read when one of its rows is first shown, and once the table is scrolled
+ * into the rows near the end of a window, the adjacent window in the
+ * direction of scrolling is read ahead. The most recently viewed windows are
+ * kept in memory (up to DbConfig.TABLE_CACHED_PAGES), so memory use is
+ * bounded no matter how many rows the table has.
+ *
+ * A window is read by key after the window before it whenever that window's
+ * last row is known, and by offset otherwise, such as when the table is
+ * scrolled far down at once. Rows may have been inserted or deleted between
+ * two reads, so windows are only kept next to windows read after the same
+ * offset read; any other neighbour is read again, by key, when it is shown.
+ * The rows can be sorted on a column of the query's table through sortBy,
+ * which the database does, so sorting also covers the rows not read yet.
+ *
+ * Every read runs through a BackgroundLoader. Rows which have not been read
+ * yet show up empty, and are filled in window by window as they arrive. The
+ * first window is read alongside the row count, so the first rows show up
+ * without waiting for the count. Replacing the query cancels every read for
+ * the previous one which has not started yet, so typing a search does not
+ * queue up reads whose rows would never be shown
+ *
+ * Every method must be called on the event dispatch thread
+ *
+ * @param <T> Type of the objects the rows are read as
+ * @author Emile Pels
+ */
+public class LazyTableModel<T> extends AbstractTableModel
+{
+
+    private static final long serialVersionUID = 1L;
+
+    private final BackgroundLoader loader;
+    private final String[] columnNames;
+    private final RowConverter<T> converter;
+
+    /**
+     * Recently viewed windows keyed by window number, least recently viewed
+     * first
+     */
+    private final Map<Integer, Window> windows;
+
+    /**
+     * Key of the last row of every window read so far, so the window after it
+     * can be read by key rather than by offset, and the offset read it
+     * continues
+     */
+    private final Map<Integer, Bounds> bounds = new HashMap<>();
+
+    /**
+     * Windows being read
+     */
+    private final Set<Integer> reading = new HashSet<>();
+
+    /**
+     * Reads started for the current query which may not have finished yet
+     */
+    private final Set<BackgroundLoader.Task<?>> tasks = new HashSet<>();
+
+    /**
+     * Query as set, and as read: ordered on the sort column if there is one
+     */
+    private PageQuery<T> unsortedQuery, query;
+
+    /**
+     * Column the rows are sorted on. Null to keep the query's own order
+     */
+    private String sortColumn;
+
+    private boolean sortDescending;
+    private int rowCount;
+
+    /**
+     * Row requested last, and whether the rows requested are moving down the
+     * table, so only the window in the direction of scrolling is read ahead
+     */
+    private int lastRow;
+    private boolean scrollingDown = true;
+
+    /**
+     * Amount of windows read by offset, numbering the runs of windows read by
+     * key after one
+     */
+    private int offsetReads;
+
+    /**
+     * Indicates whether rowCount holds the count of the current query, rather
+     * than the amount of rows read so far
+     */
+    private boolean counted;
+
+    /**
+     * Incremented on every reload, so windows read for an earlier query are
+     * discarded
+     */
+    private int generation;
+
+    /**
+     * Initializes a new LazyTableModel. No rows are read until reload is
+     * called
+     *
+     * @param loader Loader to read the rows through
+     * @param columnNames Names of the table's columns
+     * @param query Query reading the rows. Its page size is the window size
+     * @param converter Converts the read objects into table rows
+     */
+    public LazyTableModel(BackgroundLoader loader, String[] columnNames,
+            PageQuery<T> query, RowConverter<T> converter)
+    {
+        this.loader = loader;
+        this.columnNames = columnNames.clone();
+        this.unsortedQuery = query;
+        this.query = query;
+        this.converter = converter;
+        this.windows = new LinkedHashMap<Integer, Window>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Integer, Window> eldest)
+            {
+                return size() > Math.max(2, DbConfig.TABLE_CACHED_PAGES);
+            }
+        };
+    }
+
+    /**
+     * Replaces the query reading the rows and reloads the table
+     *
+     * @param query Query reading the rows
+     */
+    public void setQuery(PageQuery<T> query)
+    {
+        unsortedQuery = query;
+        this.query = sort(query);
+
+        reload();
+    }
+
+    /**
+     * Sorts the rows on a column of the query's table and reloads the table,
+     * unless the rows are sorted that way already. The sorting is kept when
+     * the query is replaced
+     *
+     * @param column Column to sort the rows on. Null to keep the query's own
+     * order
+     * @param descending Indicates whether the rows are sorted from the
+     * highest value down
+     * @throws IllegalArgumentException Exception thrown if the column does not
+     * belong to the query's table
+     */
+    public void sortBy(String column, boolean descending)
+            throws IllegalArgumentException
+    {
+        boolean reversed = column != null && descending != sortDescending;
+
+        if (column == null ? sortColumn == null
+                : column.equals(sortColumn) && !reversed)
+        {
+            return;
+        }
+
+        PageQuery<T> sorted = column == null ? unsortedQuery
+                : unsortedQuery.orderBy(column, descending);
+
+        sortColumn = column;
+        sortDescending = column != null && descending;
+        query = sorted;
+
+        reload();
+    }
+
+    /**
+     * Applies the sorting to a query
+     *
+     * @param query Query to sort
+     * @return Copy of the query ordered on the sort column. The query itself
+     * if there is none
+     */
+    private PageQuery<T> sort(PageQuery<T> query)
+    {
+        return sortColumn == null ? query
+                : query.orderBy(sortColumn, sortDescending);
+    }
+
+    /**
+     * Forgets every read row, cancels the reads for the previous query and
+     * reads the row count and the first window again. Other rows are read
+     * again when they are shown
+     */
+    public void reload()
+    {
+        final int readGeneration = ++generation;
+        final PageQuery<T> current = query;
+
+        loader.cancel(new ArrayList<>(tasks));
+        tasks.clear();
+
+        windows.clear();
+        bounds.clear();
+        reading.clear();
+        rowCount = 0;
+        counted = false;
+
+        fireTableDataChanged();
+
+        start(new BackgroundLoader.Task<Integer>()
+        {
+            @Override
+            protected Integer load()
+            {
+                return current.count();
+            }
+
+            @Override
+            protected void loaded(Integer count)
+            {
+                tasks.remove(this);
+
+                if (readGeneration == generation)
+                {
+                    rowCount = Math.max(0, count);
+                    counted = true;
+
+                    fireTableDataChanged();
+                }
+            }
+        });
+
+        startRead(0);
+    }
+
+    @Override
+    public int getRowCount()
+    {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount()
+    {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column)
+    {
+        return columnNames[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column)
+    {
+        return false;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column)
+    {
+        Object[] cells = getRow(row);
+
+        return cells == null || column >= cells.length ? null : cells[column];
+    }
+
+    /**
+     * Gets the cells of a row, starting to read its window if it is not in
+     * memory
+     *
+     * @param row Number of the row
+     * @return Cells of the row. Null if the row is still being read or no
+     * longer exists
+     */
+    private Object[] getRow(int row)
+    {
+        int size = query.getPageSize();
+        int number = row / size;
+        Window window = windows.get(number);
+
+        //The table asks for the rows it paints from the top down, so a row
+        //above the last one asked for starts painting rows scrolled into view
+        //at the top
+        if (row != lastRow)
+        {
+            scrollingDown = row > lastRow;
+            lastRow = row;
+        }
+
+        if (window == null)
+        {
+            read(number);
+
+            return null;
+        }
+
+        int index = row % size;
+
+        //Scrolling into the last (or first) quarter of a window reads the one
+        //after (or before) it, so it is there before it is scrolled to
+        if (scrollingDown && index >= size - size / 4)
+        {
+            read(number + 1);
+        } else if (!scrollingDown && index < size / 4)
+        {
+            read(number - 1);
+        }
+
+        return index < window.rows.length ? window.rows[index] : null;
+    }
+
+    /**
+     * Starts reading a window, unless it is in memory or already being read
+     *
+     * @param number Number of the window to read
+     */
+    private void read(int number)
+    {
+        if (number * query.getPageSize() < rowCount)
+        {
+            startRead(number);
+        }
+    }
+
+    /**
+     * Starts reading a window, even if the row count says it holds no rows,
+     * unless it is in memory or already being read
+     *
+     * @param number Number of the window to read
+     */
+    private void startRead(final int number)
+    {
+        final int size = query.getPageSize();
+
+        if (number < 0 || windows.containsKey(number)
+                || reading.contains(number))
+        {
+            return;
+        }
+
+        final PageQuery<T> current = query;
+        final Bounds previous = bounds.get(number - 1);
+        final RowKey anchor = previous == null ? null : previous.lastKey;
+        final int run = anchor != null ? previous.run : ++offsetReads;
+        final int readGeneration = generation;
+
+        reading.add(number);
+
+        start(new BackgroundLoader.Task<Window>()
+        {
+            @Override
+            protected Window load()
+            {
+                return read(current, number, anchor);
+            }
+
+            @Override
+            protected void loaded(Window window)
+            {
+                tasks.remove(this);
+
+                if (readGeneration != generation)
+                {
+                    return;
+                }
+
+                reading.remove(number);
+                store(number, window, run);
+
+                //Until the count arrives, the table holds the rows read so far
+                int end = number * size + window.rows.length;
+
+                if (!counted && end > rowCount)
+                {
+                    rowCount = end;
+
+                    fireTableDataChanged();
+
+                    return;
+                }
+
+                int last = Math.min(rowCount, (number + 1) * size) - 1;
+
+                if (last >= number * size)
+                {
+                    fireTableRowsUpdated(number * size, last);
+                }
+            }
+
+            @Override
+            protected void cancelled()
+            {
+                //Read it again if it is shown again
+                tasks.remove(this);
+                reading.remove(number);
+            }
+        });
+    }
+
+    /**
+     * Runs a read through the loader, remembering it until it delivers its
+     * result, so it can be cancelled when the query is replaced
+     *
+     * @param task Read to run
+     */
+    private void start(BackgroundLoader.Task<?> task)
+    {
+        tasks.add(task);
+        loader.execute(task);
+    }
+
+    /**
+     * Reads a window from the database. Called on a worker thread
+     *
+     * @param query Query reading the rows
+     * @param number Number of the window
+     * @param anchor Key of the preceding window's last row. Null if unknown,
+     * in which case the window is read by offset
+     * @return Window read from the database. Empty if the query failed
+     */
+    private Window read(PageQuery<T> query, int number, RowKey anchor)
+    {
+        Page<T> page = anchor != null ? query.after(anchor)
+                : query.at(number * query.getPageSize());
+        List<T> items = page.getItems();
+        Object[][] rows = new Object[items.size()][];
+
+        for (int i = 0; i < rows.length; i++)
+        {
+            rows[i] = converter.toRow(items.get(i));
+        }
+
+        return new Window(rows, page.getLastKey());
+    }
+
+    /**
+     * Keeps a window in memory, and forgets its neighbours if they were read
+     * after another offset read: rows inserted or deleted in between would
+     * then show up twice, or not at all, where the windows meet
+     *
+     * @param number Number of the window
+     * @param window Window to keep
+     * @param run Number of the offset read the window was read after
+     */
+    private void store(int number, Window window, int run)
+    {
+        windows.put(number, window);
+        bounds.put(number, new Bounds(window.lastKey, run));
+
+        forgetOtherRun(number - 1, run);
+        forgetOtherRun(number + 1, run);
+    }
+
+    /**
+     * Forgets a window unless it was read after a certain offset read, so it
+     * is read again by key once it is shown
+     *
+     * @param number Number of the window
+     * @param run Number of the offset read the window must have been read
+     * after to be kept
+     */
+    private void forgetOtherRun(int number, int run)
+    {
+        Bounds known = bounds.get(number);
+
+        if (known == null || known.run == run)
+        {
+            return;
+        }
+
+        bounds.remove(number);
+
+        int size = query.getPageSize();
+        int last = Math.min(rowCount, (number + 1) * size) - 1;
+
+        if (windows.remove(number) != null && last >= number * size)
+        {
+            fireTableRowsUpdated(number * size, last);
+        }
+    }
+
+    /**
+     * Rows of one window, with the key of its last row
+     */
+    private static class Window
+    {
+
+        private final Object[][] rows;
+        private final RowKey lastKey;
+
+        /**
+         * Initializes a new Window
+         *
+         * @param rows Cells of the window's rows
+         * @param lastKey Key of the last row. Null if the window is empty
+         */
+        private Window(Object[][] rows, RowKey lastKey)
+        {
+            this.rows = rows;
+            this.lastKey = lastKey;
+        }
+    }
+
+    /**
+     * Key of the last row of a window which was read, kept after its rows are
+     * no longer in memory
+     */
+    private static class Bounds
+    {
+
+        private final RowKey lastKey;
+
+        /**
+         * Number of the offset read the window was read after
+         */
+        private final int run;
+
+        /**
+         * Initializes a new Bounds
+         *
+         * @param lastKey Key of the window's last row. Null if the window is
+         * empty
+         * @param run Number of the offset read the window was read after
+         */
+        private Bounds(RowKey lastKey, int run)
+        {
+            this.lastKey = lastKey;
+            this.run = run;
+        }
+    }
+}
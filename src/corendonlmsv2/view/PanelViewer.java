@@ -1,5 +1,6 @@
 package corendonlmsv2.view;
 
+import corendonlmsv2.connectivity.ActionLogWriter;
 import corendonlmsv2.main.CorendonLMSv2;
 import corendonlmsv2.main.util.StringUtil;
 import java.awt.BorderLayout;
@@ -69,6 +70,9 @@ public class PanelViewer extends JFrame
                     {
                         dispose();
 
+                        //Write the action logs still waiting in the queue
+                        ActionLogWriter.shutdown();
+
                         System.exit(0);
                     }
                 }
@@ -0,0 +1,79 @@
+package corendonlmsv2.view;
+
+import java.util.List;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.table.TableRowSorter;
+
+/**
+ * Sorts a table backed by a LazyTableModel when its column headers are
+ * clicked. The model only holds the rows near the ones shown, so rather than
+ * sorting those in memory, the sort key is handed to the model, which reads
+ * its rows from the database in that order. The rows are shown in the order
+ * the model holds them.
+ *
+ * Only one column is sorted on at a time, and only the columns which map to a
+ * column of the model's table can be sorted on
+ *
+ * @author Emile Pels
+ * @param <T> Type of the objects the model's rows are converted from
+ */
+public class QueryRowSorter<T> extends TableRowSorter<LazyTableModel<T>>
+{
+
+    /**
+     * Database column every table column is sorted on. Null for the table
+     * columns which can not be sorted on
+     */
+    private final String[] columns;
+
+    /**
+     * Initializes a new QueryRowSorter
+     *
+     * @param model Model of the table to sort
+     * @param columns Database column to sort every table column on, in the
+     * order of the table's columns. Null for the table columns which can not
+     * be sorted on
+     */
+    public QueryRowSorter(LazyTableModel<T> model, String[] columns)
+    {
+        super(model);
+
+        this.columns = columns.clone();
+
+        setMaxSortKeys(1);
+
+        for (int i = 0; i < this.columns.length; i++)
+        {
+            setSortable(i, this.columns[i] != null);
+        }
+    }
+
+    /**
+     * Hands the current sort key to the model. Unlike TableRowSorter, this
+     * leaves the order of the rows to the model
+     */
+    @Override
+    public void sort()
+    {
+        //Called by the superclass' constructor before the columns are set
+        if (columns == null)
+        {
+            return;
+        }
+
+        List<? extends RowSorter.SortKey> keys = getSortKeys();
+
+        if (keys.isEmpty())
+        {
+            getModel().sortBy(null, false);
+
+            return;
+        }
+
+        RowSorter.SortKey key = keys.get(0);
+
+        getModel().sortBy(columns[key.getColumn()],
+                key.getSortOrder() == SortOrder.DESCENDING);
+    }
+}
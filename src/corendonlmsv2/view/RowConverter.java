@@ -0,0 +1,19 @@
+package corendonlmsv2.view;
+
+/**
+ * Converts a loaded object into the cells of a table row
+ *
+ * @param <T> Type of the objects to convert
+ * @author Emile Pels
+ */
+public interface RowConverter<T>
+{
+
+    /**
+     * Converts an object into the cells of a table row
+     *
+     * @param item Object to convert
+     * @return Cells of the table row, in column order
+     */
+    public Object[] toRow(T item);
+}
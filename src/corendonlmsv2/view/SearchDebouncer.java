@@ -0,0 +1,71 @@
+package corendonlmsv2.view;
+
+import corendonlmsv2.connectivity.DbConfig;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+/**
+ * Listens to a search field and runs its search once the user stops typing
+ * for DbConfig.SEARCH_DEBOUNCE_MILLIS, rather than on every keystroke. Every
+ * change restarts the wait, so typing a word sends one search instead of one
+ * per character.
+ *
+ * The search runs on the event dispatch thread, as it only has to hand the
+ * new query to the screen's table model
+ *
+ * @author Emile Pels
+ */
+public class SearchDebouncer implements DocumentListener
+{
+
+    private final Timer timer;
+
+    /**
+     * Initializes a new SearchDebouncer
+     *
+     * @param search Runs the search for the field's current text
+     */
+    public SearchDebouncer(final Runnable search)
+    {
+        timer = new Timer(DbConfig.SEARCH_DEBOUNCE_MILLIS,
+                new ActionListener()
+                {
+                    @Override
+                    public void actionPerformed(ActionEvent ae)
+                    {
+                        search.run();
+                    }
+                });
+        timer.setRepeats(false);
+    }
+
+    /**
+     * Drops a search which is waiting for the user to stop typing, e.g. when
+     * the screen is left
+     */
+    public void cancel()
+    {
+        timer.stop();
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent de)
+    {
+        timer.restart();
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent de)
+    {
+        timer.restart();
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent de)
+    {
+        timer.restart();
+    }
+}
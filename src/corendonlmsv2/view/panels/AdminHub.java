@@ -55,7 +55,7 @@ public class AdminHub extends JPanel implements ActionListener
         
         if (source == signOutButton)
         {
-            new ActionLog(UserAccount.getCurrent(), "Signed out").insert();
+            new ActionLog(UserAccount.getCurrent(), "Signed out").queue();
             
             UserAccount.setCurrent(null);
             panel = new Login();
@@ -2,34 +2,47 @@ package corendonlmsv2.view.panels;
 
 import corendonlmsv2.connectivity.DbManager;
 import corendonlmsv2.connectivity.LanguageController;
+import corendonlmsv2.connectivity.PageQuery;
+import corendonlmsv2.connectivity.UnitOfWork;
 import corendonlmsv2.main.CorendonLMSv2;
 import corendonlmsv2.main.util.MiscUtil;
 import corendonlmsv2.model.ActionLog;
 import corendonlmsv2.model.Customer;
+import corendonlmsv2.model.CustomerIndex;
 import corendonlmsv2.model.DatabaseTables;
 import corendonlmsv2.model.UserAccount;
+import corendonlmsv2.view.BackgroundLoader;
+import corendonlmsv2.view.LazyTableModel;
 import corendonlmsv2.view.NonEditableTableModel;
+import corendonlmsv2.view.QueryRowSorter;
+import corendonlmsv2.view.RowConverter;
+import corendonlmsv2.view.SearchDebouncer;
 import java.awt.Cursor;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.List;
+import java.sql.SQLException;
 import javax.swing.JPanel;
-import javax.swing.RowFilter;
-import javax.swing.event.DocumentEvent;
-import javax.swing.event.DocumentListener;
-import javax.swing.table.TableRowSorter;
 
 /**
  *
  * @author Daan Bol
  */
 public class CustomerManager
-        extends JPanel implements ActionListener, DocumentListener
+        extends JPanel implements ActionListener
 {
 
     private final JPanel parent;
-    private final NonEditableTableModel model;
-    private final TableRowSorter<NonEditableTableModel> sorter;
+    private final BackgroundLoader loader = new BackgroundLoader(this);
+    private final SearchDebouncer searchDebouncer = new SearchDebouncer(
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    search();
+                }
+            });
+    private final LazyTableModel<Customer> model;
 
     /**
      * Creates new form CustomerManager
@@ -39,14 +52,33 @@ public class CustomerManager
     public CustomerManager(JPanel parent)
     {
         new ActionLog(UserAccount.getCurrent(), 
-                "Accessed customer manager").insert();
+                "Accessed customer manager").queue();
         
         this.parent = parent;
         initComponents();
         
-        model = (NonEditableTableModel) customerTable.getModel();
-        sorter = new TableRowSorter<>(model);
-        customerTable.setRowSorter(sorter);
+        model = new LazyTableModel<>(loader,
+                DatabaseTables.CUSTOMERS.getColumns(),
+                new PageQuery<>(DatabaseTables.CUSTOMERS, Customer.ROW_MAPPER),
+                new RowConverter<Customer>()
+                {
+                    @Override
+                    public Object[] toRow(Customer customer)
+                    {
+                        return new String[]
+                        {
+                            customer.getCustomerId(),
+                            customer.getName(),
+                            customer.getAddress(),
+                            customer.getCountry(),
+                            customer.getEmailAddress(),
+                            customer.getPhoneNumber()
+                        };
+                    }
+                });
+        customerTable.setModel(model);
+        customerTable.setRowSorter(new QueryRowSorter<>(model,
+                DatabaseTables.CUSTOMERS.getColumns()));
         
         loadCustomers();
         registerListeners();
@@ -86,60 +118,33 @@ public class CustomerManager
         editButton.addActionListener(this);
         registerCustomerButton.addActionListener(this);
         registerLuggageButton.addActionListener(this);
-        searchField.getDocument().addDocumentListener(this);
+        searchField.getDocument().addDocumentListener(searchDebouncer);
     }
 
     /**
-     * Sets a filter for the table
+     * Shows only the customers whose phone number or name starts with the
+     * search text, as found in the customer index, or else the customers
+     * containing it in any column. Either search only reads matching rows
      */
     private void search()
     {
-        try
-        {
-            //(?i) is for case-insensitivity
-            RowFilter<NonEditableTableModel, Object> filter
-                    = RowFilter.regexFilter("(?i)" + searchField.getText());
-
-            sorter.setRowFilter(filter);    
-        } catch (Exception ex)
-        {
-            //Intentionally left blank
-        }
+        model.setQuery(CustomerIndex.search(new PageQuery<>(
+                DatabaseTables.CUSTOMERS, Customer.ROW_MAPPER),
+                searchField.getText()));
     }
 
     /**
-     * Removes any entries from the table and reloads it with customers
+     * Reloads the table with the current customers. Rows are read from the
+     * database as they are scrolled into view
      */
     private void loadCustomers()
     {
-        List<Customer> customers = Customer.getAllCustomers();
-        resetCustomers();
-
-        for (Customer customer : customers)
-        {
-            model.addRow(new String[]
-            {
-                customer.getCustomerId(),
-                customer.getName(),
-                customer.getAddress(),
-                customer.getCountry(),
-                customer.getEmailAddress(),
-                customer.getPhoneNumber()
-            });
-        }
-    }
-
-    /**
-     * Removes any entries from the table
-     */
-    private void resetCustomers()
-    {
-        model.setRowCount(0);
+        model.reload();
     }
     
     /**
      * Gets the selected customer's ID. Returns null and shows warning message 
-     * if no customer is selected
+     * if no customer is selected, or the selected row has not been read yet
      *
      * @return Value of the selected customer ID. Null if not applicable
      */
@@ -147,34 +152,42 @@ public class CustomerManager
     {
         int selectedRow = customerTable.getSelectedRow();
 
-        if (selectedRow == -1)
+        //A row whose window has not been read yet has no ID to act on
+        String selectedId = selectedRow == -1 ? null
+                : (String) customerTable.getValueAt(selectedRow, 0);
+
+        if (selectedId == null)
         {
             MiscUtil.showMessage(LanguageController.getString("selectCustomer"));
-            return null;
         }
 
-        return (String) customerTable.getValueAt(selectedRow, 0);
+        return selectedId;
     }
     
     /**
-     * Deletes the selected customer from the database
+     * Deletes the selected customer and their luggage from the database, in
+     * a single transaction
      */
     private void deleteSelected()
     {
         String selectedId = getSelectedCustomerId();
-        String customerIdColumn = Customer.TABLE.getColumnAt(
-                Customer.TableColumns.CUSTOMER_ID);
         
         if (selectedId != null)
         {
-            String update = String.format("DELETE FROM %s WHERE %s=%s",
-                    Customer.TABLE.getDatabaseIdentifier(),
-                    customerIdColumn, selectedId);
-            
-            DbManager.executeUpdate(update);
-            
-            new ActionLog(UserAccount.getCurrent(), 
-                String.format("Deleted customer " + selectedId)).insert();
+            try (UnitOfWork work = DbManager.beginUnitOfWork())
+            {
+                Customer.delete(work, selectedId);
+                work.log(new ActionLog(UserAccount.getCurrent(), 
+                        "Deleted customer " + selectedId));
+                work.commit();
+            } catch (SQLException ex)
+            {
+                System.err.println("SQL exception: " + ex.getMessage());
+                
+                MiscUtil.showMessage(String.format(LanguageController
+                        .getString("deleteCustomerFailed"), selectedId));
+                return;
+            }
             
             MiscUtil.showMessage(LanguageController.getString("customerDeleted"));
             loadCustomers();
@@ -188,6 +201,8 @@ public class CustomerManager
         
         if (source == backButton)
         {
+            searchDebouncer.cancel();
+            loader.cancelAll();
             CorendonLMSv2.MAIN_FRAME.displayPanel(parent);
         } else if (source == editButton)
         {
@@ -212,24 +227,6 @@ public class CustomerManager
         }
     }
 
-    @Override
-    public void insertUpdate(DocumentEvent de)
-    {
-        search();
-    }
-
-    @Override
-    public void removeUpdate(DocumentEvent de)
-    {
-        search();
-    }
-
-    @Override
-    public void changedUpdate(DocumentEvent de)
-    {
-        search();
-    }
-
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -6,6 +6,7 @@ import corendonlmsv2.main.util.GraphUtil;
 import corendonlmsv2.main.util.MiscUtil;
 import corendonlmsv2.model.ActionLog;
 import corendonlmsv2.model.UserAccount;
+import corendonlmsv2.view.BackgroundLoader;
 import corendonlmsv2.view.panels.DateRangeInput.Months;
 import java.awt.Component;
 import java.io.File;
@@ -73,6 +74,7 @@ public class DateRangeInput extends JPanel
     };
 
     private final Component parent;
+    private final BackgroundLoader loader = new BackgroundLoader(this);
     
     /**
      * Creates new form DateRangeInput
@@ -240,9 +242,42 @@ public class DateRangeInput extends JPanel
             return;
         }
         
-        DefaultCategoryDataset dataSet = GraphUtil.getLuggageDataSet(
-                fromMonth, fromYear, toMonth, toYear);
-        
+        graphButton.setEnabled(false);
+
+        loader.execute(new BackgroundLoader.Task<DefaultCategoryDataset>()
+        {
+            @Override
+            protected DefaultCategoryDataset load()
+            {
+                return GraphUtil.getLuggageDataSet(fromMonth, fromYear,
+                        toMonth, toYear);
+            }
+
+            @Override
+            protected void loaded(DefaultCategoryDataset dataSet)
+            {
+                graphButton.setEnabled(true);
+
+                showGraph(dataSet);
+            }
+
+            @Override
+            protected void failed(Exception ex)
+            {
+                super.failed(ex);
+
+                graphButton.setEnabled(true);
+            }
+        });
+    }//GEN-LAST:event_graphButtonActionPerformed
+
+    /**
+     * Shows a chart of a data set, saving it to a file first if requested
+     *
+     * @param dataSet Data set to chart
+     */
+    private void showGraph(DefaultCategoryDataset dataSet)
+    {
         JFreeChart chart = ChartFactory.createLineChart(
                 LanguageController.getString("luggageStatus"), 
                 LanguageController.getString("month"), 
@@ -272,8 +307,8 @@ public class DateRangeInput extends JPanel
         frame.setLocationRelativeTo(parent);
         frame.setVisible(true);
         
-        new ActionLog(UserAccount.getCurrent(), "Created graph").insert();
-    }//GEN-LAST:event_graphButtonActionPerformed
+        new ActionLog(UserAccount.getCurrent(), "Created graph").queue();
+    }
 
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
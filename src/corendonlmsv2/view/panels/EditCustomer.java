@@ -2,15 +2,15 @@ package corendonlmsv2.view.panels;
 
 import corendonlmsv2.connectivity.DbManager;
 import corendonlmsv2.connectivity.LanguageController;
+import corendonlmsv2.connectivity.UnitOfWork;
 import corendonlmsv2.main.util.MiscUtil;
 import corendonlmsv2.main.util.StringUtil;
 import corendonlmsv2.model.ActionLog;
 import corendonlmsv2.model.Customer;
-import corendonlmsv2.model.DatabaseTables;
 import corendonlmsv2.model.UserAccount;
+import corendonlmsv2.view.BackgroundLoader;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import javax.swing.JFrame;
 import javax.swing.event.DocumentEvent;
@@ -30,15 +30,9 @@ public class EditCustomer
             countryInput, emailInput, phoneInput;
 
     private final String nameColumn = Customer.TABLE.getColumnAt(
-            Customer.TableColumns.NAME),
-            addressColumn = Customer.TABLE.getColumnAt(
-                    Customer.TableColumns.ADDRESS),
-            countryColumn = Customer.TABLE.getColumnAt(
-                    Customer.TableColumns.COUNTRY),
-            emailColumn = Customer.TABLE.getColumnAt(
-                    Customer.TableColumns.EMAIL_ADDRESS),
-            phoneColumn = Customer.TABLE.getColumnAt(
-                    Customer.TableColumns.PHONE_NUMBER);
+            Customer.TableColumns.NAME);
+
+    private final BackgroundLoader loader = new BackgroundLoader(this);
 
     /**
      * Creates new form EditCustomer for creating a new customer
@@ -112,30 +106,62 @@ public class EditCustomer
     }
 
     /**
-     * Loads an existing customer's details into the text fields for editing
+     * Loads an existing customer's details into the text fields for editing in
+     * the background. Saving is disabled until they are loaded
      */
     private void loadExistingCustomer()
     {
         if (customerId != null)
         {
-            DatabaseTables table = Customer.TABLE;
-            ResultSet results = DbManager.getResultSet(table, customerId,
-                    table.getColumnAt(Customer.TableColumns.CUSTOMER_ID), true);
+            saveButton.setEnabled(false);
 
-            try
+            loader.execute(new BackgroundLoader.Task<String[]>()
             {
-                if (results.next())
+                @Override
+                protected String[] load() throws SQLException
                 {
-                    nameField.setText(results.getString(nameColumn));
-                    addressField.setText(results.getString(addressColumn));
-                    countryField.setText(results.getString(countryColumn));
-                    emailField.setText(results.getString(emailColumn));
-                    phoneField.setText(results.getString(phoneColumn));
+                    //The cached customer is removed whenever it is edited,
+                    //so edits still start from the stored customer
+                    Customer customer = Customer.getById(customerId);
+
+                    if (customer == null)
+                    {
+                        return null;
+                    }
+
+                    return new String[]
+                    {
+                        customer.getName(),
+                        customer.getAddress(),
+                        customer.getCountry(),
+                        customer.getEmailAddress(),
+                        customer.getPhoneNumber()
+                    };
                 }
-            } catch (SQLException ex)
-            {
-                System.err.println("SQL exception: " + ex.getMessage());
-            }
+
+                @Override
+                protected void loaded(String[] customer)
+                {
+                    if (customer != null)
+                    {
+                        nameField.setText(customer[0]);
+                        addressField.setText(customer[1]);
+                        countryField.setText(customer[2]);
+                        emailField.setText(customer[3]);
+                        phoneField.setText(customer[4]);
+                    }
+
+                    validateEmail();
+                }
+
+                @Override
+                protected void failed(Exception ex)
+                {
+                    super.failed(ex);
+
+                    validateEmail();
+                }
+            });
         }
     }
 
@@ -143,18 +169,27 @@ public class EditCustomer
     {
         boolean success;
 
-        try
+        try (UnitOfWork work = DbManager.beginUnitOfWork())
         {
-            success = new Customer(addressInput, countryInput,
-                    emailInput, nameInput, phoneInput).insert();
+            Customer customer = new Customer(addressInput, countryInput,
+                    emailInput, nameInput, phoneInput);
+
+            customer.insert(work);
+            work.log(new ActionLog(UserAccount.getCurrent(), 
+                    "Registered customer " + nameInput));
+            work.commit();
+
+            success = true;
         } catch (IllegalArgumentException ex)
         {
             MiscUtil.showMessage(this, ex.getMessage());
             return;
-        }
+        } catch (SQLException ex)
+        {
+            System.err.println("SQL exception: " + ex.getMessage());
 
-        new ActionLog(UserAccount.getCurrent(), 
-                "Registered customer " + nameInput).insert();
+            success = false;
+        }
         
         MiscUtil.showMessage(this, LanguageController.getString(success 
                 ? "registerSuccess" 
@@ -170,22 +205,25 @@ public class EditCustomer
         if (customerId != null && !nameInput.isEmpty()
                 && !addressInput.isEmpty() && !phoneInput.isEmpty())
         {
-            String update = String.format("UPDATE %s SET %s='%s', %s='%s', "
-                    + "%s='%s', %s='%s', %s='%s' WHERE %s=%s",
-                    Customer.TABLE.getDatabaseIdentifier(),
-                    nameColumn, nameInput,
-                    addressColumn, addressInput,
-                    countryColumn, countryInput,
-                    emailColumn, emailInput,
-                    phoneColumn, phoneInput,
-                    Customer.TABLE.getColumnAt(
-                            Customer.TableColumns.CUSTOMER_ID), customerId
-            );
-            
-            DbManager.executeUpdate(update);
-            
-            new ActionLog(UserAccount.getCurrent(), 
-                "Edited customer " + customerId).insert();
+            try (UnitOfWork work = DbManager.beginUnitOfWork())
+            {
+                Customer.update(work, customerId, nameInput, addressInput,
+                        countryInput, emailInput, phoneInput);
+                work.log(new ActionLog(UserAccount.getCurrent(), 
+                        "Edited customer " + customerId));
+                work.commit();
+            } catch (IllegalArgumentException ex)
+            {
+                MiscUtil.showMessage(this, ex.getMessage());
+                return;
+            } catch (SQLException ex)
+            {
+                System.err.println("SQL exception: " + ex.getMessage());
+                
+                MiscUtil.showMessage(this, String.format(LanguageController
+                        .getString("editCustomerFailed"), customerId));
+                return;
+            }
             
             MiscUtil.showMessage(this, String.format(
                     LanguageController.getString("editedCustomer"), nameColumn));
@@ -202,6 +240,7 @@ public class EditCustomer
 
         if (source == cancelButton)
         {
+            loader.cancelAll();
             setVisible(false);
         } else if (source == saveButton)
         {
@@ -2,16 +2,16 @@ package corendonlmsv2.view.panels;
 
 import corendonlmsv2.connectivity.DbManager;
 import corendonlmsv2.connectivity.LanguageController;
+import corendonlmsv2.connectivity.UnitOfWork;
 import corendonlmsv2.main.util.DateUtil;
 import corendonlmsv2.main.util.MiscUtil;
 import corendonlmsv2.model.ActionLog;
-import corendonlmsv2.model.DatabaseTables;
 import corendonlmsv2.model.Luggage;
 import corendonlmsv2.model.Luggage.LuggageStatuses;
 import corendonlmsv2.model.UserAccount;
+import corendonlmsv2.view.BackgroundLoader;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import javax.swing.JFrame;
 
@@ -26,26 +26,16 @@ public class EditLuggage extends JFrame implements ActionListener
     private final String id;
     private final boolean isExistingEntry;
 
-    private final String brandColumn = Luggage.TABLE.getColumnAt(
-            Luggage.TableColumns.BRAND_NAME),
-            colorColumn = Luggage.TABLE.getColumnAt(
-                    Luggage.TableColumns.COLOR),
-            customerIdColumn = Luggage.TABLE.getColumnAt(
-                    Luggage.TableColumns.CUSTOMER_ID),
-            detailsColumn = Luggage.TABLE.getColumnAt(
-                    Luggage.TableColumns.DETAILS),
-            locationColumn = Luggage.TABLE.getColumnAt(
-                    Luggage.TableColumns.LOCATION),
-            statusColumn = Luggage.TABLE.getColumnAt(
-                    Luggage.TableColumns.STATUS),
-            dateEnteredColumn = Luggage.TABLE.getColumnAt(
-                    Luggage.TableColumns.DATE_ENTERED);
+    private final String dateEnteredColumn = Luggage.TABLE.getColumnAt(
+            Luggage.TableColumns.DATE_ENTERED);
     
     private String brandInput, colorInput, 
             detailsInput, locationInput, dateEnteredInput;
 
     private LuggageStatuses initialStatus, newStatus;
 
+    private final BackgroundLoader loader = new BackgroundLoader(this);
+
     /**
      * Creates new form EditLuggaeg for registering new luggage. If this
      * constructor is called, the customer should be unknown
@@ -109,34 +99,67 @@ public class EditLuggage extends JFrame implements ActionListener
     }
 
     /**
-     * Loads an existing luggage entry's details into the fields
+     * Loads an existing luggage entry's details into the fields in the
+     * background. Saving is disabled until they are loaded
      */
     private void loadExistingLuggage()
     {
         if (isExistingEntry && id != null)
         {
-            DatabaseTables table = Luggage.TABLE;
-            ResultSet results = DbManager.getResultSet(table, id,
-                    table.getColumnAt(Luggage.TableColumns.LUGGAGE_ID), true);
+            saveButton.setEnabled(false);
 
-            try
+            loader.execute(new BackgroundLoader.Task<String[]>()
             {
-                if (results.next())
+                @Override
+                protected String[] load() throws SQLException
                 {
-                    customerIdField.setText(results.getString(customerIdColumn));
-                    brandField.setText(results.getString(brandColumn));
-                    colorField.setText(results.getString(colorColumn));
-                    locationField.setText(results.getString(locationColumn));
-                    detailsField.setText(results.getString(detailsColumn));
-
-                    initialStatus = LuggageStatuses.valueOf(
-                            results.getString(statusColumn).toUpperCase());
-                    statusComboBox.setSelectedItem(initialStatus);
+                    //The cached luggage is removed whenever it is edited,
+                    //so the form is filled in with what is stored
+                    Luggage luggage = Luggage.getById(id);
+
+                    if (luggage == null)
+                    {
+                        return null;
+                    }
+
+                    return new String[]
+                    {
+                        luggage.getCustomerId(),
+                        luggage.getBrandName(),
+                        luggage.getColor(),
+                        luggage.getLocation(),
+                        luggage.getDetails(),
+                        luggage.getStatus().name()
+                    };
                 }
-            } catch (SQLException ex)
-            {
-                System.err.println("SQL exception: " + ex.getMessage());
-            }
+
+                @Override
+                protected void loaded(String[] luggage)
+                {
+                    if (luggage != null)
+                    {
+                        customerIdField.setText(luggage[0]);
+                        brandField.setText(luggage[1]);
+                        colorField.setText(luggage[2]);
+                        locationField.setText(luggage[3]);
+                        detailsField.setText(luggage[4]);
+
+                        initialStatus = LuggageStatuses.valueOf(
+                                luggage[5].toUpperCase());
+                        statusComboBox.setSelectedItem(initialStatus);
+                    }
+
+                    saveButton.setEnabled(true);
+                }
+
+                @Override
+                protected void failed(Exception ex)
+                {
+                    super.failed(ex);
+
+                    saveButton.setEnabled(true);
+                }
+            });
         }
     }
 
@@ -145,20 +168,21 @@ public class EditLuggage extends JFrame implements ActionListener
      */
     private void editExisting()
     {
-        String update = String.format("UPDATE %s SET %s='%s', %s='%s',"
-                + " %s='%s', %s='%s', %s='%s' WHERE %s=%s",
-                Luggage.TABLE.getDatabaseIdentifier(),
-                brandColumn, brandInput,
-                colorColumn, colorInput,
-                detailsColumn, detailsInput,
-                locationColumn, locationInput,
-                statusColumn, newStatus.getDatabaseIdentifier(),
-                Luggage.TABLE.getColumnAt(Luggage.TableColumns.LUGGAGE_ID), id
-        );
-        
-        DbManager.executeUpdate(update);
-        
-        new ActionLog(UserAccount.getCurrent(), "Edited luggage " + id).insert();
+        try (UnitOfWork work = DbManager.beginUnitOfWork())
+        {
+            Luggage.update(work, id, brandInput, colorInput, detailsInput,
+                    locationInput, newStatus);
+            work.log(new ActionLog(UserAccount.getCurrent(),
+                    "Edited luggage " + id));
+            work.commit();
+        } catch (SQLException ex)
+        {
+            System.err.println("SQL exception: " + ex.getMessage());
+            
+            MiscUtil.showMessage(this, String.format(LanguageController
+                    .getString("editLuggageFailed"), id));
+            return;
+        }
         
         MiscUtil.showMessage(this, "Updated details for luggage " + id);
         
@@ -170,24 +194,30 @@ public class EditLuggage extends JFrame implements ActionListener
     {
         boolean success;
         
-        try
+        try (UnitOfWork work = DbManager.beginUnitOfWork())
         {
             Luggage luggage = new Luggage(brandInput, colorInput, id, 
                     detailsInput, locationInput, newStatus);
             
             luggage.setDateEntered(DateUtil.getDateString());
             
-            success = luggage.insert();
+            luggage.insert(work);
+            work.log(new ActionLog(UserAccount.getCurrent(), "Registered"
+                    + " luggage for customer " + id));
+            work.commit();
             
+            success = true;
         } catch (IllegalArgumentException ex)
         {
             MiscUtil.showMessage(this, ex.getMessage());
             return;
+        } catch (SQLException ex)
+        {
+            System.err.println("SQL exception: " + ex.getMessage());
+            
+            success = false;
         }
         
-        new ActionLog(UserAccount.getCurrent(), "Registered luggage for"
-                + " customer " + id).insert();
-        
         MiscUtil.showMessage(this, String.format("Registering the luggage was"
                 + "%s succesful!", success ? "" : " not"));
         
@@ -202,6 +232,7 @@ public class EditLuggage extends JFrame implements ActionListener
 
         if (source == cancelButton)
         {
+            loader.cancelAll();
             setVisible(false);
         } else if (source == saveButton)
         {
@@ -1,13 +1,17 @@
 package corendonlmsv2.view.panels;
 
-import corendonlmsv2.connectivity.DbManager;
 import corendonlmsv2.connectivity.LanguageController;
+import corendonlmsv2.connectivity.PageQuery;
+import corendonlmsv2.connectivity.RowMapper;
 import corendonlmsv2.main.CorendonLMSv2;
 import corendonlmsv2.main.util.StringUtil;
 import corendonlmsv2.model.ActionLog;
 import corendonlmsv2.model.DatabaseTables;
 import corendonlmsv2.model.UserAccount;
 import corendonlmsv2.view.NonEditableTableModel;
+import corendonlmsv2.view.BackgroundLoader;
+import corendonlmsv2.view.LazyTableModel;
+import corendonlmsv2.view.RowConverter;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.sql.ResultSet;
@@ -15,7 +19,6 @@ import java.sql.SQLException;
 import java.util.List;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JPanel;
-import javax.swing.table.DefaultTableModel;
 
 /**
  *
@@ -24,7 +27,33 @@ import javax.swing.table.DefaultTableModel;
 public class LogViewer extends JPanel implements ActionListener
 {
 
-    private final DefaultTableModel model;
+    /**
+     * Converts a log row into the cells of a table row
+     */
+    private static final RowMapper<Object[]> ROW_MAPPER
+            = new RowMapper<Object[]>()
+            {
+                @Override
+                public Object[] mapRow(ResultSet results) throws SQLException
+                {
+                    return new Object[]
+                    {
+                        results.getString(DatabaseTables.LOGS.getColumnAt(
+                        ActionLog.TableColumns.LOG_ID)),
+                        results.getString(DatabaseTables.LOGS.getColumnAt(
+                        ActionLog.TableColumns.USERNAME)),
+                        results.getString(DatabaseTables.LOGS.getColumnAt(
+                        ActionLog.TableColumns.USER_ROLE)),
+                        results.getString(DatabaseTables.LOGS.getColumnAt(
+                        ActionLog.TableColumns.DATE_TIME)),
+                        results.getString(DatabaseTables.LOGS.getColumnAt(
+                        ActionLog.TableColumns.LOG_MESSAGE))
+                    };
+                }
+            };
+
+    private final BackgroundLoader loader = new BackgroundLoader(this);
+    private final LazyTableModel<Object[]> model;
     private final JPanel parent;
 
     /**
@@ -34,7 +63,7 @@ public class LogViewer extends JPanel implements ActionListener
      */
     public LogViewer(JPanel parent)
     {
-        new ActionLog(UserAccount.getCurrent(), "Accessed log viewer").insert();
+        new ActionLog(UserAccount.getCurrent(), "Accessed log viewer").queue();
         
         this.parent = parent;
         initComponents();
@@ -42,7 +71,18 @@ public class LogViewer extends JPanel implements ActionListener
         jLabel1.setForeground(CorendonLMSv2.DEFAULT_FORECOLOR);
         setBackground(CorendonLMSv2.DEFAULT_BACKCOLOR);
 
-        model = (DefaultTableModel) logTable.getModel();
+        model = new LazyTableModel<>(loader,
+                DatabaseTables.LOGS.getColumns(),
+                new PageQuery<>(DatabaseTables.LOGS, ROW_MAPPER),
+                new RowConverter<Object[]>()
+                {
+                    @Override
+                    public Object[] toRow(Object[] row)
+                    {
+                        return row;
+                    }
+                });
+        logTable.setModel(model);
         
         loadLogs(null);
         loadUsers();
@@ -62,79 +102,59 @@ public class LogViewer extends JPanel implements ActionListener
     }
 
     /**
-     * Loads logs into the table for the specified username
+     * Loads logs into the table for the specified username. Rows are read from
+     * the database as they are scrolled into view
      *
      * @param username Username to load logs for. If null, all logs are
      * displayed
      */
     private void loadLogs(String username)
     {
-        ResultSet results;
+        PageQuery<Object[]> query = new PageQuery<>(DatabaseTables.LOGS,
+                ROW_MAPPER);
 
-        if (StringUtil.isStringNullOrWhiteSpace(username))
-        {
-            results = DbManager.getResultSet(DatabaseTables.LOGS);
-        } else
+        if (!StringUtil.isStringNullOrWhiteSpace(username))
         {
             //Get the column index for USERNAME
             String usernameColumn = DatabaseTables.LOGS.getColumnAt(
                     ActionLog.TableColumns.USERNAME);
 
-            results = DbManager.getResultSet(DatabaseTables.LOGS, username,
-                    usernameColumn, true);
+            query = query.where(usernameColumn, username);
         }
 
-        resetLogs();
-        
-        try
-        {
-            while (results.next())
-            {
-                model.addRow(new Object[]
-                {
-                    results.getString(DatabaseTables.LOGS.getColumnAt(
-                    ActionLog.TableColumns.LOG_ID)),
-                    results.getString(DatabaseTables.LOGS.getColumnAt(
-                    ActionLog.TableColumns.USERNAME)),
-                    results.getString(DatabaseTables.LOGS.getColumnAt(
-                    ActionLog.TableColumns.USER_ROLE)),
-                    results.getString(DatabaseTables.LOGS.getColumnAt(
-                    ActionLog.TableColumns.DATE_TIME)),
-                    results.getString(DatabaseTables.LOGS.getColumnAt(
-                    ActionLog.TableColumns.LOG_MESSAGE))
-                });
-            }
-        } catch (SQLException ex)
-        {
-            System.err.println("SQL exception: " + ex.getMessage());
-        }
+        model.setQuery(query);
     }
     
     /**
-     * Adds all usernames to the combobox
+     * Adds all usernames to the combobox. The usernames are read in the
+     * background and added after "All"
      */
     private void loadUsers()
     {
-        List<UserAccount> users = UserAccount.getAllUsers();
-        DefaultComboBoxModel comboBoxModel = (
+        final DefaultComboBoxModel comboBoxModel = (
                 DefaultComboBoxModel) filterComboBox.getModel();
         
         comboBoxModel.addElement(LanguageController.getString("all"));
         
-        for (UserAccount user : users)
+        loader.execute(new BackgroundLoader.Task<List<String>>()
         {
-            comboBoxModel.addElement(user.getUsername());
-        }
-    }
+            @Override
+            protected List<String> load()
+            {
+                return UserAccount.getAllUsernames();
+            }
 
-    /**
-     * Removes all rows from the table
-     */
-    private void resetLogs()
-    {
-        model.setRowCount(0);
+            @Override
+            protected void loaded(List<String> usernames)
+            {
+                for (String username : usernames)
+                {
+                    comboBoxModel.addElement(username);
+                }
+            }
+        });
     }
-    
+
     @Override
     public void actionPerformed(ActionEvent ae)
     {
@@ -142,6 +162,7 @@ public class LogViewer extends JPanel implements ActionListener
         
         if (source == backButton)
         {
+            loader.cancelAll();
             CorendonLMSv2.MAIN_FRAME.displayPanel(parent);
         } else if (source == filterComboBox)
         {
@@ -77,7 +77,7 @@ public class Login extends JPanel implements ActionListener, MouseListener
             
             if (role != UserRoles.UNAUTHORIZED)
             {
-                new ActionLog(UserAccount.getCurrent(), "Signed in").insert();
+                new ActionLog(UserAccount.getCurrent(), "Signed in").queue();
                 
                 JPanel panel;
                 
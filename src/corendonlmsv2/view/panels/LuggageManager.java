@@ -2,37 +2,50 @@ package corendonlmsv2.view.panels;
 
 import corendonlmsv2.connectivity.DbManager;
 import corendonlmsv2.connectivity.LanguageController;
+import corendonlmsv2.connectivity.PageQuery;
+import corendonlmsv2.connectivity.UnitOfWork;
 import corendonlmsv2.main.CorendonLMSv2;
 import corendonlmsv2.main.util.MiscUtil;
 import corendonlmsv2.main.util.PdfUtil;
 import corendonlmsv2.model.ActionLog;
 import corendonlmsv2.model.DatabaseTables;
 import corendonlmsv2.model.Luggage;
+import corendonlmsv2.model.LuggageSearchIndex;
 import corendonlmsv2.model.UserAccount;
+import corendonlmsv2.view.BackgroundLoader;
+import corendonlmsv2.view.LazyTableModel;
 import corendonlmsv2.view.NonEditableTableModel;
+import corendonlmsv2.view.QueryRowSorter;
+import corendonlmsv2.view.RowConverter;
+import corendonlmsv2.view.SearchDebouncer;
 import java.awt.Cursor;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
-import java.util.List;
+import java.sql.SQLException;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
-import javax.swing.RowFilter;
-import javax.swing.event.DocumentEvent;
-import javax.swing.event.DocumentListener;
-import javax.swing.table.TableRowSorter;
 
 /**
  *
  * @author Stijn Veken
  */
 public class LuggageManager
-        extends JPanel implements ActionListener, DocumentListener
+        extends JPanel implements ActionListener
 {
 
     private final JPanel parent;
-    private final NonEditableTableModel model;
-    private final TableRowSorter<NonEditableTableModel> sorter;
+    private final BackgroundLoader loader = new BackgroundLoader(this);
+    private final SearchDebouncer searchDebouncer = new SearchDebouncer(
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    search();
+                }
+            });
+    private final LazyTableModel<Luggage> model;
 
     /**
      * Creates new form LuggageManager
@@ -42,14 +55,35 @@ public class LuggageManager
     public LuggageManager(JPanel parent)
     {
         new ActionLog(UserAccount.getCurrent(),
-                "Accessed luggage manager").insert();
+                "Accessed luggage manager").queue();
 
         this.parent = parent;
         initComponents();
         
-        model = (NonEditableTableModel) luggageTable.getModel();
-        sorter = new TableRowSorter<>(model);
-        luggageTable.setRowSorter(sorter);
+        model = new LazyTableModel<>(loader,
+                DatabaseTables.LUGGAGE.getColumns(),
+                new PageQuery<>(DatabaseTables.LUGGAGE, Luggage.ROW_MAPPER),
+                new RowConverter<Luggage>()
+                {
+                    @Override
+                    public Object[] toRow(Luggage luggage)
+                    {
+                        return new Object[]
+                        {
+                            luggage.getLuggageId(),
+                            luggage.getBrandName(),
+                            luggage.getColor(),
+                            luggage.getCustomerId(),
+                            luggage.getDetails(),
+                            luggage.getLocation(),
+                            luggage.getStatus(),
+                            luggage.getDateEntered()
+                        };
+                    }
+                });
+        luggageTable.setModel(model);
+        luggageTable.setRowSorter(new QueryRowSorter<>(model,
+                DatabaseTables.LUGGAGE.getColumns()));
 
         loadLuggage();
         registerListeners();
@@ -86,59 +120,33 @@ public class LuggageManager
         editButton.addActionListener(this);
         generatePdfButton.addActionListener(this);
         registerButton.addActionListener(this);
-        searchField.getDocument().addDocumentListener(this);
+        searchField.getDocument().addDocumentListener(searchDebouncer);
     }
 
     /**
-     * Sets a filter for the table
+     * Shows only the luggage containing the search text in any column. The
+     * search runs in the database, and only compares the luggage the search
+     * index returns for the text, so only matching rows are read
      */
     private void search()
     {
-        try
-        {
-            //(?i) is for case-insensitivity
-            RowFilter<NonEditableTableModel, Object> filter
-                    = RowFilter.regexFilter("(?i)" + searchField.getText());
-
-            sorter.setRowFilter(filter);
-        } catch (Exception ex)
-        {
-            //Leave filter as it is
-        }
+        model.setQuery(LuggageSearchIndex.search(new PageQuery<>(
+                DatabaseTables.LUGGAGE, Luggage.ROW_MAPPER),
+                searchField.getText()));
     }
 
     /**
-     * Removes any entries from the table and reloads it with all luggage
+     * Reloads the table with the current luggage. Rows are read from the
+     * database as they are scrolled into view
      */
     private void loadLuggage()
     {
-        List<Luggage> allLuggage = Luggage.getAllLuggage();
-        resetLuggage();
-
-        for (Luggage luggage : allLuggage)
-        {
-            model.addRow(new Object[]
-            {
-                luggage.getLuggageId(),
-                luggage.getBrandName(),
-                luggage.getColor(),
-                luggage.getCustomerId(),
-                luggage.getDetails(),
-                luggage.getLocation(),
-                luggage.getStatus(),
-                luggage.getDateEntered()
-            });
-        }
-    }
-
-    private void resetLuggage()
-    {
-        model.setRowCount(0);
+        model.reload();
     }
 
     /**
      * Gets the selected luggage's ID. Returns null and shows warning message if
-     * no luggage is selected
+     * no luggage is selected, or the selected row has not been read yet
      *
      * @return Value of the selected luggage ID. Null if not applicable
      */
@@ -146,15 +154,21 @@ public class LuggageManager
     {
         int selectedRow = luggageTable.getSelectedRow();
 
-        if (selectedRow == -1)
+        //A row whose window has not been read yet has no ID to act on
+        String selectedId = selectedRow == -1 ? null
+                : (String) luggageTable.getValueAt(selectedRow, 0);
+
+        if (selectedId == null)
         {
             MiscUtil.showMessage(LanguageController.getString("selectLuggage"));
-            return null;
         }
 
-        return (String) luggageTable.getValueAt(selectedRow, 0);
+        return selectedId;
     }
 
+    /**
+     * Deletes the selected luggage from the database
+     */
     private void deleteSelected()
     {
         String selectedId = getSelectedLuggageId();
@@ -163,14 +177,20 @@ public class LuggageManager
 
         if (selectedId != null)
         {
-            String update = String.format("DELETE FROM %s WHERE %s=%s",
-                    Luggage.TABLE.getDatabaseIdentifier(),
-                    luggageIdColumn, selectedId);
-
-            DbManager.executeUpdate(update);
+            try (UnitOfWork work = DbManager.beginUnitOfWork())
+            {
+                Luggage.delete(work, luggageIdColumn, selectedId);
+                work.log(new ActionLog(UserAccount.getCurrent(),
+                        "Deleted luggage " + selectedId));
+                work.commit();
+            } catch (SQLException ex)
+            {
+                System.err.println("SQL exception: " + ex.getMessage());
 
-            new ActionLog(UserAccount.getCurrent(),
-                    "Deleted luggage " + selectedId).insert();
+                MiscUtil.showMessage(String.format(LanguageController
+                        .getString("deleteLuggageFailed"), selectedId));
+                return;
+            }
 
             MiscUtil.showMessage(
                     LanguageController.getString("selectedLuggageDeleted"));
@@ -185,6 +205,8 @@ public class LuggageManager
 
         if (source == backButton)
         {
+            searchDebouncer.cancel();
+            loader.cancelAll();
             CorendonLMSv2.MAIN_FRAME.displayPanel(parent);
         } else if (source == deleteButton)
         {
@@ -225,7 +247,7 @@ public class LuggageManager
                 }
                 
                 new ActionLog(UserAccount.getCurrent(), "Generated report for"
-                        + " luggage " + selectedId).insert();
+                        + " luggage " + selectedId).queue();
                 PdfUtil.launchPdf(result);
             }
         } else if (source == registerButton)
@@ -235,6 +257,8 @@ public class LuggageManager
             
             if (result == JOptionPane.YES_OPTION)
             {
+                searchDebouncer.cancel();
+                loader.cancelAll();
                 CorendonLMSv2.MAIN_FRAME.displayPanel(new CustomerManager(this));
             } else if (result == JOptionPane.NO_OPTION)
             {
@@ -243,24 +267,6 @@ public class LuggageManager
         }
     }
 
-    @Override
-    public void insertUpdate(DocumentEvent de)
-    {
-        search();
-    }
-
-    @Override
-    public void removeUpdate(DocumentEvent de)
-    {
-        search();
-    }
-
-    @Override
-    public void changedUpdate(DocumentEvent de)
-    {
-        search();
-    }
-
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
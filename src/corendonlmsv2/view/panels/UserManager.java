@@ -2,16 +2,20 @@ package corendonlmsv2.view.panels;
 
 import corendonlmsv2.connectivity.DbManager;
 import corendonlmsv2.connectivity.LanguageController;
+import corendonlmsv2.connectivity.PageQuery;
 import corendonlmsv2.main.CorendonLMSv2;
 import corendonlmsv2.main.util.MiscUtil;
 import corendonlmsv2.main.util.StringUtil;
 import corendonlmsv2.model.ActionLog;
 import corendonlmsv2.model.UserAccount;
 import corendonlmsv2.model.UserAccount.UserRoles;
+import corendonlmsv2.view.BackgroundLoader;
+import corendonlmsv2.view.LazyTableModel;
 import corendonlmsv2.view.NonEditableTableModel;
+import corendonlmsv2.view.QueryRowSorter;
+import corendonlmsv2.view.RowConverter;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.List;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 
@@ -38,7 +42,8 @@ public class UserManager extends JPanel implements ActionListener
     };
 
     private final JPanel parent;
-    private final NonEditableTableModel model;
+    private final BackgroundLoader loader = new BackgroundLoader(this);
+    private final LazyTableModel<UserAccount> model;
 
     /**
      * Creates new form LogViewer
@@ -48,13 +53,34 @@ public class UserManager extends JPanel implements ActionListener
     public UserManager(JPanel parent)
     {
         new ActionLog(UserAccount.getCurrent(),
-                "Accessed user manager").insert();
+                "Accessed user manager").queue();
 
         this.parent = parent;
         initComponents();
         setComponentProperties();
 
-        model = (NonEditableTableModel) userTable.getModel();
+        model = new LazyTableModel<>(loader, COLUMN_NAMES,
+                new PageQuery<>(UserAccount.TABLE, UserAccount.ROW_MAPPER),
+                new RowConverter<UserAccount>()
+                {
+                    @Override
+                    public Object[] toRow(UserAccount user)
+                    {
+                        return new String[]
+                        {
+                            user.getUserId(),
+                            user.getUsername(),
+                            user.getUserRole().toString()
+                        };
+                    }
+                });
+        userTable.setModel(model);
+        userTable.setRowSorter(new QueryRowSorter<>(model, new String[]
+        {
+            UserAccount.TABLE.getColumnAt(UserAccount.TableColumns.USER_ID),
+            UserAccount.TABLE.getColumnAt(UserAccount.TableColumns.USERNAME),
+            UserAccount.TABLE.getColumnAt(UserAccount.TableColumns.USER_ROLE)
+        }));
 
         //Remove UserRoles.UNAUTHORIZED from combobox
         if (roleComboBox.getComponentCount() > 0)
@@ -115,30 +141,12 @@ public class UserManager extends JPanel implements ActionListener
     }
 
     /**
-     * Removes any entries from the table and reloads it with all current users
+     * Reloads the table with all current users. Rows are read from the
+     * database as they are scrolled into view
      */
     private void loadUsers()
     {
-        List<UserAccount> users = UserAccount.getAllUsers();
-        resetUsers();
-
-        for (UserAccount user : users)
-        {
-            model.addRow(new String[]
-            {
-                user.getUserId(),
-                user.getUsername(),
-                user.getUserRole().toString()
-            });
-        }
-    }
-
-    /**
-     * Removes all rows from the table
-     */
-    private void resetUsers()
-    {
-        model.setRowCount(0);
+        model.reload();
     }
 
     /**
@@ -167,6 +175,7 @@ public class UserManager extends JPanel implements ActionListener
 
         if (source == backButton)
         {
+            loader.cancelAll();
             CorendonLMSv2.MAIN_FRAME.displayPanel(parent);
         } else if (source == deleteButton)
         {
@@ -196,14 +205,13 @@ public class UserManager extends JPanel implements ActionListener
 
         if (selectedId != null)
         {
-            String update = String.format("DELETE FROM %s WHERE %s=%s",
-                    UserAccount.TABLE.getDatabaseIdentifier(), userIdColumn,
-                    selectedId);
+            String update = String.format("DELETE FROM %s WHERE %s=?",
+                    UserAccount.TABLE.getDatabaseIdentifier(), userIdColumn);
 
-            DbManager.executeUpdate(update);
+            DbManager.executeUpdate(update, selectedId);
 
             new ActionLog(UserAccount.getCurrent(), 
-                    "Deleted user no. " + selectedId).insert();
+                    "Deleted user no. " + selectedId).queue();
             
             loadUsers();
             MiscUtil.showMessage(LanguageController.getString("accountDeleted"));
@@ -237,19 +245,19 @@ public class UserManager extends JPanel implements ActionListener
 
                 if (firstEntry.equals(secondEntry))
                 {
-                    String update = String.format("UPDATE %s SET %s='%s' "
-                            + "WHERE %s=%s",
+                    String update = String.format("UPDATE %s SET %s=? "
+                            + "WHERE %s=?",
                             UserAccount.TABLE.getDatabaseIdentifier(),
                             passwordColumn,
-                            StringUtil.hashString(firstEntry, true),
-                            userIdColumn,
-                            selectedId
+                            userIdColumn
                     );
 
-                    DbManager.executeUpdate(update);
+                    DbManager.executeUpdate(update,
+                            StringUtil.hashString(firstEntry, true),
+                            selectedId);
                     
                     new ActionLog(UserAccount.getCurrent(), "Edited password "
-                            + "for user no. " + selectedId).insert();
+                            + "for user no. " + selectedId).queue();
 
                     MiscUtil.showMessage(
                         LanguageController.getString("passwordChanged"));
@@ -295,18 +303,17 @@ public class UserManager extends JPanel implements ActionListener
         {
             UserRoles result = UserRoles.valueOf(input);
 
-            String update = String.format("UPDATE %s SET %s='%s' WHERE %s=%s",
+            String update = String.format("UPDATE %s SET %s=? WHERE %s=?",
                     UserAccount.TABLE.getDatabaseIdentifier(),
                     userRoleColumn,
-                    result.getDatabaseIdentifier(),
-                    userIdColumn,
-                    selectedId
+                    userIdColumn
             );
             
-            DbManager.executeUpdate(update);
+            DbManager.executeUpdate(update, result.getDatabaseIdentifier(),
+                    selectedId);
             
             new ActionLog(UserAccount.getCurrent(), String.format("Changed role"
-                    + " for user no. %s to %s", selectedId, result)).insert();
+                    + " for user no. %s to %s", selectedId, result)).queue();
             
             loadUsers();
             MiscUtil.showMessage(LanguageController.getString("roleChanged"));
@@ -342,7 +349,8 @@ public class UserManager extends JPanel implements ActionListener
         
         try
         {
-            result = new UserAccount(username, password, userRole).insert();
+            result = new UserAccount(username, password, userRole)
+                    .insert() != null;
         } catch (IllegalArgumentException ex)
         {
             MiscUtil.showMessage(ex.getMessage());
@@ -350,7 +358,7 @@ public class UserManager extends JPanel implements ActionListener
         }
         
         new ActionLog(UserAccount.getCurrent(), "Registered account with"
-                + " username " + username).insert();
+                + " username " + username).queue();
         
         loadUsers();
         